@@ -0,0 +1,174 @@
+package com.ivannagara.xcelerator.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserRecord;
+
+/**
+ * In-process stand-ins for [FirebaseAuth] and [Firestore] so the benchmarks run without network access.
+ * Every call answers after the configured latency: blocking calls park the caller,
+ * ApiFuture calls complete from a scheduler like the real transport would.
+ */
+public final class FirebaseStubs {
+
+    public static final String UID = "bench-user-0000000000000001";
+    public static final String EMAIL = "bench@example.com";
+
+    private static final ScheduledExecutorService TRANSPORT = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "stub-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FirebaseStubs() {
+    }
+
+    /**
+     * Every token verifies as [UID], valid for the next hour. Every uid exists.
+     */
+    public static FirebaseAuth firebaseAuth(long latencyMicros) throws FirebaseAuthException {
+        FirebaseToken token = mock(FirebaseToken.class);
+        when(token.getUid()).thenReturn(UID);
+        when(token.getEmail()).thenReturn(EMAIL);
+        when(token.getClaims()).thenReturn(Map.of("exp", System.currentTimeMillis() / 1000 + 3600));
+
+        UserRecord userRecord = userRecord(UID);
+        Map<String, UserRecord> userRecords = new ConcurrentHashMap<>();
+
+        FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+        when(firebaseAuth.verifyIdToken(anyString())).thenAnswer(invocation -> {
+            pause(latencyMicros);
+            return token;
+        });
+        when(firebaseAuth.getUser(anyString())).thenAnswer(invocation -> {
+            pause(latencyMicros);
+            return userRecord;
+        });
+        when(firebaseAuth.getUserAsync(anyString())).thenAnswer(invocation -> delayed(userRecord, latencyMicros));
+        when(firebaseAuth.getUsersAsync(any())).thenAnswer(invocation -> {
+            Collection<UserIdentifier> identifiers = invocation.getArgument(0);
+            Set<UserRecord> users = new HashSet<>();
+            for (UserIdentifier identifier : identifiers) {
+                users.add(userRecords.computeIfAbsent(uidOf(identifier), FirebaseStubs::userRecord));
+            }
+            GetUsersResult result = mock(GetUsersResult.class);
+            when(result.getUsers()).thenReturn(users);
+            when(result.getNotFound()).thenReturn(Set.of());
+            return delayed(result, latencyMicros);
+        });
+        return firebaseAuth;
+    }
+
+    /**
+     * [UID] followed by a number, so batch lookups can ask for many distinct users
+     */
+    public static String uid(int index) {
+        return String.format("%s-%04d", UID, index);
+    }
+
+    /**
+     * Every document in every collection exists and belongs to a user with the given role
+     */
+    public static Firestore firestore(long latencyMicros, String role) {
+        Map<String, DocumentSnapshot> snapshots = new ConcurrentHashMap<>();
+        Map<String, DocumentReference> documents = new ConcurrentHashMap<>();
+
+        CollectionReference collection = mock(CollectionReference.class);
+        when(collection.document(anyString())).thenAnswer(invocation ->
+            documents.computeIfAbsent(invocation.getArgument(0), uid -> {
+                DocumentSnapshot snapshot = snapshots.computeIfAbsent(uid, key -> snapshot(key, role));
+                DocumentReference document = mock(DocumentReference.class);
+                when(document.getId()).thenReturn(uid);
+                when(document.get()).thenAnswer(get -> delayed(snapshot, latencyMicros));
+                return document;
+            }));
+        when(collection.addSnapshotListener(any())).thenReturn(mock(ListenerRegistration.class));
+
+        Firestore firestore = mock(Firestore.class);
+        when(firestore.collection(anyString())).thenReturn(collection);
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> found = new ArrayList<>();
+            for (Object document : invocation.getArguments()) {
+                String uid = ((DocumentReference) document).getId();
+                found.add(snapshots.computeIfAbsent(uid, key -> snapshot(key, role)));
+            }
+            return delayed(found, latencyMicros);
+        });
+        return firestore;
+    }
+
+    private static DocumentSnapshot snapshot(String uid, String role) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", uid);
+        data.put("email", EMAIL);
+        data.put("role", role);
+        data.put("createdAt", 1_718_000_000_000L);
+
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getId()).thenReturn(uid);
+        when(snapshot.contains("role")).thenReturn(true);
+        when(snapshot.getString("role")).thenReturn(role);
+        when(snapshot.getData()).thenAnswer(invocation -> new HashMap<>(data));
+        return snapshot;
+    }
+
+    private static UserRecord userRecord(String uid) {
+        UserRecord userRecord = mock(UserRecord.class);
+        when(userRecord.getUid()).thenReturn(uid);
+        when(userRecord.getEmail()).thenReturn(EMAIL);
+        when(userRecord.getDisplayName()).thenReturn("Bench User");
+        when(userRecord.getCustomClaims()).thenReturn(Map.of());
+        return userRecord;
+    }
+
+    // UidIdentifier has no getter, its toString is "UidIdentifier(<uid>)"
+    private static String uidOf(UserIdentifier identifier) {
+        String text = identifier.toString();
+        return text.substring(text.indexOf('(') + 1, text.lastIndexOf(')'));
+    }
+
+    private static <T> ApiFuture<T> delayed(T value, long latencyMicros) {
+        if (latencyMicros <= 0) {
+            return ApiFutures.immediateFuture(value);
+        }
+        SettableApiFuture<T> future = SettableApiFuture.create();
+        TRANSPORT.schedule(() -> future.set(value), latencyMicros, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    private static void pause(long latencyMicros) {
+        if (latencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ivannagara.xcelerator.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ivannagara.xcelerator.model.UserProfile;
+import com.ivannagara.xcelerator.model.UserProfileResponse;
+
+/**
+ * Compares the old Map-based GET /api/profile/{userId} response with the typed
+ * [UserProfile] path, from the document data to the serialized bytes.
+ * Run with "-prof gc" and compare gc.alloc.rate.norm (bytes allocated per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserProfileSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    // Shaped like DocumentSnapshot.getData() for a typical profile
+    private Map<String, Object> document;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+
+        document = new HashMap<>();
+        document.put("uid", "9Qx2mYc0bVhRk3LwTz8aNf41sPd2");
+        document.put("email", "jane.doe@example.com");
+        document.put("displayName", "Jane Doe");
+        document.put("role", "ADMIN");
+        document.put("createdAt", 1_718_000_000_000L);
+        document.put("company", "Example Corp");
+        document.put("phone", "+62 812 0000 0000");
+    }
+
+    @Benchmark
+    public byte[] mapProfile() throws JsonProcessingException {
+        Map<String, Object> userProfile = new HashMap<>(document);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("uid", userProfile.get("uid"));
+        response.put("email", userProfile.get("email"));
+        response.put("displayName", userProfile.get("displayName"));
+        response.put("profile", userProfile);
+        response.put("partial", false);
+
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] typedProfile() throws JsonProcessingException {
+        UserProfile userProfile = UserProfile.from("9Qx2mYc0bVhRk3LwTz8aNf41sPd2", document);
+
+        return objectMapper.writeValueAsBytes(new UserProfileResponse(
+            userProfile.uid(),
+            userProfile.email(),
+            userProfile.displayName(),
+            userProfile,
+            false));
+    }
+}
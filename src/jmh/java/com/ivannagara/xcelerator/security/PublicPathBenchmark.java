@@ -0,0 +1,81 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * [PublicPathMatcher] against the previous per-request scan of the pattern list,
+ * for a matching and a non-matching path, with 1 and 64 configured patterns
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublicPathBenchmark {
+
+    private static final String PUBLIC_PATH = "/api/public/register";
+    private static final String PRIVATE_PATH = "/api/admin/user/9Qx2mYc0bVhRk3LwTz8aNf41sPd2/role";
+
+    @Param({"1", "64"})
+    public int patternCount;
+
+    private List<String> patterns;
+    private PublicPathMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        patterns = new ArrayList<>();
+        for (int i = 1; i < patternCount; i++) {
+            patterns.add(i % 2 == 0 ? "/webhooks/provider-" + i + "/**" : "/static/asset-" + i + ".js");
+        }
+        // Last, so the list scan has to go through all the others first
+        patterns.add("/api/public/**");
+        matcher = new PublicPathMatcher(patterns);
+    }
+
+    @Benchmark
+    public boolean triePublic() {
+        return matcher.matches(PUBLIC_PATH);
+    }
+
+    @Benchmark
+    public boolean triePrivate() {
+        return matcher.matches(PRIVATE_PATH);
+    }
+
+    @Benchmark
+    public boolean listScanPublic() {
+        return listScan(PUBLIC_PATH);
+    }
+
+    @Benchmark
+    public boolean listScanPrivate() {
+        return listScan(PRIVATE_PATH);
+    }
+
+    // What FirebaseAuthFilter.isPublicPath used to do
+    private boolean listScan(String path) {
+        return patterns.stream().anyMatch(pattern -> {
+            if (pattern.endsWith("/**")) {
+                String prefix = pattern.substring(0, pattern.length() - 3);
+                return path.startsWith(prefix);
+            }
+            return path.equals(pattern);
+        });
+    }
+}
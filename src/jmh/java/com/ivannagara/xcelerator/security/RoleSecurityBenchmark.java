@@ -0,0 +1,138 @@
+package com.ivannagara.xcelerator.security;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+
+/**
+ * Cost of the @RequiredRole check per request:
+ * - aspect: the [RoleSecurityAspect] proxy, how controllers used to be checked
+ * - interceptor: [RequiredRoleInterceptor] then a plain call, how controllers are checked now
+ * - reflectiveLookup / registryLookup: how the required role used to be found against the startup table
+ * Thread scoped because the aspect reads the request from a thread local.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleSecurityBenchmark {
+
+    private AdminEndpoints direct;
+    private AdminEndpoints proxied;
+    private HandlerMethod listUsersHandler;
+    private Method listUsersMethod;
+    private RequiredRoleRegistry registry;
+    private RequiredRoleInterceptor interceptor;
+    private MockHttpServletRequest request;
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        direct = new AdminEndpoints();
+        listUsersHandler = new HandlerMethod(direct, "listUsers");
+        listUsersMethod = listUsersHandler.getMethod();
+
+        AuthMetrics authMetrics = new AuthMetrics(new SimpleMeterRegistry());
+        registry = new RequiredRoleRegistry(new DefaultListableBeanFactory());
+        registry.scan(List.of(listUsersHandler, new HandlerMethod(direct, "createUser")));
+        interceptor = new RequiredRoleInterceptor(registry, authMetrics, new AuthTracing(Tracer.NOOP));
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(direct);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new RoleSecurityAspect(registry, authMetrics, new AuthTracing(Tracer.NOOP)));
+        proxied = factory.getProxy();
+
+        request = new MockHttpServletRequest("GET", "/api/admin/users");
+        request.setAttribute("userRole", Role.ADMIN);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public Object handlerWithoutCheck() {
+        return direct.listUsers();
+    }
+
+    @Benchmark
+    public Object aspect() {
+        return proxied.listUsers();
+    }
+
+    @Benchmark
+    public Object interceptor() throws Exception {
+        if (!interceptor.preHandle(request, response, listUsersHandler)) {
+            return null;
+        }
+        return direct.listUsers();
+    }
+
+    @Benchmark
+    public Role reflectiveLookup() {
+        RequiredRole annotation = listUsersMethod.getAnnotation(RequiredRole.class);
+        if (annotation == null) {
+            annotation = listUsersMethod.getDeclaringClass().getAnnotation(RequiredRole.class);
+        }
+        return annotation.value();
+    }
+
+    @Benchmark
+    public Role registryLookup() {
+        return registry.getRequiredRole(listUsersHandler);
+    }
+
+    @Benchmark
+    public void hasPermissionLevel(Blackhole blackhole) {
+        for (Role userRole : Role.values()) {
+            for (Role requiredRole : Role.values()) {
+                blackhole.consume(userRole.hasPermissionLevel(requiredRole));
+            }
+        }
+    }
+
+    public static class AdminEndpoints {
+
+        private static final ResponseEntity<String> OK = ResponseEntity.ok("ok");
+
+        @RequiredRole(Role.ADMIN)
+        public ResponseEntity<?> listUsers() {
+            return OK;
+        }
+
+        @RequiredRole(Role.SUPER_ADMIN)
+        public ResponseEntity<?> createUser() {
+            return OK;
+        }
+    }
+}
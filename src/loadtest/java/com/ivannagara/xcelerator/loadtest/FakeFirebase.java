@@ -0,0 +1,397 @@
+package com.ivannagara.xcelerator.loadtest;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mockito.invocation.InvocationOnMock;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.ErrorCode;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserRecord;
+import com.ivannagara.xcelerator.model.Role;
+
+import io.grpc.Status;
+
+/**
+ * In-memory stand-ins for [FirebaseAuth] and [Firestore] that keep state, unlike the
+ * benchmark stubs: registered users can log in, profile writes show up in later reads
+ * and role changes are enforced on the next request.
+ *
+ * Every call waits for the configured latency (blocking calls park the caller, ApiFuture
+ * calls complete from a scheduler like the real transport would) and fails with the
+ * configured probability, as UNAVAILABLE.
+ *
+ * Tokens are "loadtest:<uid>". Only the users collection and the calls the request paths
+ * make are modelled: queries, batches and bulk writes throw [UnsupportedOperationException].
+ */
+public final class FakeFirebase {
+
+    public static final String TOKEN_PREFIX = "loadtest:";
+    public static final String ADMIN_UID = "loadtest-admin";
+    public static final String SUPER_ADMIN_UID = "loadtest-super-admin";
+
+    private static final String EMAIL_DOMAIN = "@loadtest.local";
+    private static final long TOKEN_LIFETIME_SECONDS = 3600;
+
+    private final long latencyNanos;
+    private final double failureRate;
+
+    private final ScheduledExecutorService transport = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "fake-firebase-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Auth users: uid -> custom claims
+    private final Map<String, Map<String, Object>> users = new ConcurrentHashMap<>();
+    private final Map<String, String> emails = new ConcurrentHashMap<>();
+    private final Map<String, FirebaseToken> tokens = new ConcurrentHashMap<>();
+    private final Map<String, UserRecord> records = new ConcurrentHashMap<>();
+    private final AtomicLong nextUid = new AtomicLong();
+
+    // Firestore users collection: uid -> the snapshot of the latest write
+    private final Map<String, DocumentSnapshot> documents = new ConcurrentHashMap<>();
+    private final Map<String, DocumentReference> references = new ConcurrentHashMap<>();
+
+    private final FirebaseAuth firebaseAuth;
+    private final Firestore firestore;
+
+    public FakeFirebase(Duration latency, double failureRate) {
+        this.latencyNanos = latency.toNanos();
+        this.failureRate = failureRate;
+        try {
+            this.firebaseAuth = newFirebaseAuth();
+        } catch (FirebaseAuthException e) {
+            throw new IllegalStateException(e);
+        }
+        this.firestore = newFirestore();
+    }
+
+    public FirebaseAuth firebaseAuth() {
+        return firebaseAuth;
+    }
+
+    public Firestore firestore() {
+        return firestore;
+    }
+
+    public static String token(String uid) {
+        return TOKEN_PREFIX + uid;
+    }
+
+    public static String seededUid(int index) {
+        return String.format("loadtest-user-%06d", index);
+    }
+
+    /**
+     * Creates [seededUid] 0 until count as STAFF, plus [ADMIN_UID] and [SUPER_ADMIN_UID]
+     */
+    public void seed(int count) {
+        for (int i = 0; i < count; i++) {
+            putUser(seededUid(i), Role.STAFF);
+        }
+        putUser(ADMIN_UID, Role.ADMIN);
+        putUser(SUPER_ADMIN_UID, Role.SUPER_ADMIN);
+    }
+
+    public void shutdown() {
+        transport.shutdownNow();
+    }
+
+    private void putUser(String uid, Role role) {
+        String email = uid + EMAIL_DOMAIN;
+        users.put(uid, Map.of());
+        emails.put(uid, email);
+
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("uid", uid);
+        profile.put("email", email);
+        profile.put("role", role.name());
+        profile.put("createdAt", System.currentTimeMillis());
+        documents.put(uid, snapshot(uid, profile));
+    }
+
+    private FirebaseAuth newFirebaseAuth() throws FirebaseAuthException {
+        FirebaseAuth auth = mock(FirebaseAuth.class);
+
+        when(auth.verifyIdToken(anyString())).thenAnswer(invocation -> blocking(() -> verify(invocation.getArgument(0))));
+        when(auth.createUser(any())).thenAnswer(invocation -> blocking(this::createUser));
+        when(auth.createUserAsync(any())).thenAnswer(invocation -> async(this::createUser));
+        when(auth.getUser(anyString())).thenAnswer(invocation -> blocking(() -> userRecord(invocation.getArgument(0))));
+        when(auth.getUserAsync(anyString())).thenAnswer(invocation -> async(() -> userRecord(invocation.getArgument(0))));
+        when(auth.getUsers(any())).thenAnswer(invocation -> blocking(() -> usersResult(invocation.getArgument(0))));
+        when(auth.getUsersAsync(any())).thenAnswer(invocation -> async(() -> usersResult(invocation.getArgument(0))));
+        doAnswer(invocation -> blocking(() -> setClaims(invocation.getArgument(0), invocation.getArgument(1))))
+            .when(auth).setCustomUserClaims(anyString(), anyMap());
+        when(auth.setCustomUserClaimsAsync(anyString(), anyMap())).thenAnswer(invocation ->
+            async(() -> setClaims(invocation.getArgument(0), invocation.getArgument(1))));
+        return auth;
+    }
+
+    private FirebaseToken verify(String idToken) throws FirebaseAuthException {
+        String uid = idToken.startsWith(TOKEN_PREFIX) ? idToken.substring(TOKEN_PREFIX.length()) : null;
+        if (uid == null || !users.containsKey(uid)) {
+            throw new FirebaseAuthException(ErrorCode.INVALID_ARGUMENT, "Unknown load test token", null, null,
+                AuthErrorCode.INVALID_ID_TOKEN);
+        }
+        return tokens.computeIfAbsent(uid, this::newToken);
+    }
+
+    private FirebaseToken newToken(String uid) {
+        Map<String, Object> claims = new HashMap<>(users.getOrDefault(uid, Map.of()));
+        claims.put("exp", System.currentTimeMillis() / 1000 + TOKEN_LIFETIME_SECONDS);
+
+        FirebaseToken token = mock(FirebaseToken.class);
+        when(token.getUid()).thenReturn(uid);
+        when(token.getEmail()).thenReturn(emails.get(uid));
+        when(token.getClaims()).thenReturn(claims);
+        return token;
+    }
+
+    // CreateRequest has no getters, so registered users get a generated email
+    private UserRecord createUser() {
+        String uid = String.format("loadtest-new-%08d", nextUid.incrementAndGet());
+        users.put(uid, Map.of());
+        emails.put(uid, uid + EMAIL_DOMAIN);
+        return cachedUserRecord(uid);
+    }
+
+    private UserRecord userRecord(String uid) throws FirebaseAuthException {
+        if (!users.containsKey(uid)) {
+            throw new FirebaseAuthException(ErrorCode.NOT_FOUND, "No user record for " + uid, null, null,
+                AuthErrorCode.USER_NOT_FOUND);
+        }
+        return cachedUserRecord(uid);
+    }
+
+    // Mocks are slow to create, so each user gets one that reads the current claims
+    private UserRecord cachedUserRecord(String uid) {
+        return records.computeIfAbsent(uid, key -> {
+            UserRecord userRecord = mock(UserRecord.class);
+            when(userRecord.getUid()).thenReturn(key);
+            when(userRecord.getEmail()).thenReturn(emails.get(key));
+            when(userRecord.getCustomClaims()).thenAnswer(invocation -> users.getOrDefault(key, Map.of()));
+            return userRecord;
+        });
+    }
+
+    private GetUsersResult usersResult(Collection<UserIdentifier> identifiers) {
+        Set<UserRecord> found = new HashSet<>();
+        Set<UserIdentifier> notFound = new HashSet<>();
+        for (UserIdentifier identifier : identifiers) {
+            String uid = uidOf(identifier);
+            if (users.containsKey(uid)) {
+                found.add(cachedUserRecord(uid));
+            } else {
+                notFound.add(identifier);
+            }
+        }
+        GetUsersResult result = mock(GetUsersResult.class);
+        when(result.getUsers()).thenReturn(found);
+        when(result.getNotFound()).thenReturn(notFound);
+        return result;
+    }
+
+    private Void setClaims(String uid, Map<String, Object> claims) throws FirebaseAuthException {
+        if (users.replace(uid, Map.copyOf(claims)) == null) {
+            throw new FirebaseAuthException(ErrorCode.NOT_FOUND, "No user record for " + uid, null, null,
+                AuthErrorCode.USER_NOT_FOUND);
+        }
+        // Like a token refresh on the client, the next verification sees the new claims
+        tokens.remove(uid);
+        return null;
+    }
+
+    // UidIdentifier has no getter, its toString is "UidIdentifier(<uid>)"
+    private static String uidOf(UserIdentifier identifier) {
+        String text = identifier.toString();
+        return text.substring(text.indexOf('(') + 1, text.lastIndexOf(')'));
+    }
+
+    private Firestore newFirestore() {
+        CollectionReference collection = mock(CollectionReference.class);
+        when(collection.document(anyString())).thenAnswer(invocation ->
+            references.computeIfAbsent(invocation.getArgument(0), this::newReference));
+        when(collection.addSnapshotListener(any())).thenReturn(mock(ListenerRegistration.class));
+
+        return mock(Firestore.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "collection" -> collection;
+            case "getAll" -> async(() -> getAll(invocation));
+            default -> unsupported(invocation);
+        });
+    }
+
+    private List<DocumentSnapshot> getAll(InvocationOnMock invocation) {
+        List<DocumentSnapshot> found = new ArrayList<>();
+        for (Object reference : invocation.getArguments()) {
+            found.add(read(((DocumentReference) reference).getId()));
+        }
+        return found;
+    }
+
+    private DocumentReference newReference(String uid) {
+        return mock(DocumentReference.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "getId" -> uid;
+            case "get" -> async(() -> read(uid));
+            case "set" -> async(() -> set(uid, invocation.getArgument(0),
+                invocation.getArguments().length > 1 && invocation.getArgument(1) instanceof SetOptions));
+            case "create" -> async(() -> create(uid, invocation.getArgument(0)));
+            case "update" -> async(() -> update(uid, updates(invocation)));
+            default -> unsupported(invocation);
+        });
+    }
+
+    // Object methods and close() (Spring calls it on shutdown) do nothing, anything else is a gap in the fake
+    private static Object unsupported(InvocationOnMock invocation) {
+        return switch (invocation.getMethod().getName()) {
+            case "toString" -> "FakeFirebase." + invocation.getMock().getClass().getSimpleName();
+            case "hashCode" -> System.identityHashCode(invocation.getMock());
+            case "equals" -> invocation.getMock() == invocation.getArgument(0);
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException(
+                "Not modelled by the load test Firestore: " + invocation.getMethod());
+        };
+    }
+
+    // update(Map) or update(field, value, moreFieldsAndValues...), the varargs arrive expanded
+    private static Map<String, Object> updates(InvocationOnMock invocation) {
+        Object[] arguments = invocation.getArguments();
+        if (arguments[0] instanceof Map<?, ?> map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) map;
+            return fields;
+        }
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i + 1 < arguments.length; i += 2) {
+            fields.put(arguments[i].toString(), arguments[i + 1]);
+        }
+        return fields;
+    }
+
+    private DocumentSnapshot read(String uid) {
+        DocumentSnapshot snapshot = documents.get(uid);
+        return snapshot != null ? snapshot : missing(uid);
+    }
+
+    private WriteResult set(String uid, Map<String, Object> data, boolean merge) {
+        documents.compute(uid, (key, current) -> {
+            Map<String, Object> fields = merge && current != null ? current.getData() : new HashMap<>();
+            fields.putAll(data);
+            return snapshot(uid, fields);
+        });
+        return mock(WriteResult.class);
+    }
+
+    private WriteResult create(String uid, Map<String, Object> data) {
+        if (documents.putIfAbsent(uid, snapshot(uid, new HashMap<>(data))) != null) {
+            throw FirestoreException.forServerRejection(Status.ALREADY_EXISTS, "Document already exists: users/" + uid);
+        }
+        return mock(WriteResult.class);
+    }
+
+    private WriteResult update(String uid, Map<String, Object> data) {
+        DocumentSnapshot updated = documents.computeIfPresent(uid, (key, current) -> {
+            Map<String, Object> fields = current.getData();
+            fields.putAll(data);
+            return snapshot(uid, fields);
+        });
+        if (updated == null) {
+            throw FirestoreException.forServerRejection(Status.NOT_FOUND, "No document to update: users/" + uid);
+        }
+        return mock(WriteResult.class);
+    }
+
+    // One answer instead of stubbing every method, a snapshot is created on every write
+    private static DocumentSnapshot snapshot(String uid, Map<String, Object> data) {
+        Map<String, Object> fields = Map.copyOf(data);
+        return mock(DocumentSnapshot.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "exists" -> true;
+            case "getId" -> uid;
+            case "getData" -> new HashMap<>(fields);
+            case "contains" -> fields.containsKey(invocation.getArgument(0).toString());
+            case "get" -> fields.get(invocation.getArgument(0).toString());
+            case "getString" -> fields.get(invocation.getArgument(0).toString()) instanceof String value ? value : null;
+            default -> unsupported(invocation);
+        });
+    }
+
+    private static DocumentSnapshot missing(String uid) {
+        return mock(DocumentSnapshot.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "exists" -> false;
+            case "getId" -> uid;
+            case "getData" -> null;
+            default -> unsupported(invocation);
+        });
+    }
+
+    private <T> T blocking(Callable<T> call) throws Exception {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        if (injectFailure()) {
+            throw new FirebaseAuthException(ErrorCode.UNAVAILABLE, "Injected failure", null, null, null);
+        }
+        return call.call();
+    }
+
+    private <T> ApiFuture<T> async(Callable<T> call) {
+        SettableApiFuture<T> future = SettableApiFuture.create();
+        Runnable answer = () -> {
+            if (injectFailure()) {
+                future.setException(FirestoreException.forServerRejection(Status.UNAVAILABLE, "Injected failure"));
+                return;
+            }
+            try {
+                future.set(call.call());
+            } catch (Exception e) {
+                future.setException(e);
+            }
+        };
+        if (latencyNanos > 0) {
+            transport.schedule(answer, latencyNanos, TimeUnit.NANOSECONDS);
+        } else {
+            answer.run();
+        }
+        return future;
+    }
+
+    private boolean injectFailure() {
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+}
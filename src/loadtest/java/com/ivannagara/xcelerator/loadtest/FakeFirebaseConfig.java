@@ -0,0 +1,55 @@
+package com.ivannagara.xcelerator.loadtest;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.auth.FirebaseAuth;
+
+import lombok.Data;
+
+/**
+ * Replaces [FirebaseConfig] under the "loadtest" profile (which also sets
+ * xcelerator.firebase.enabled=false) with the in-memory [FakeFirebase]
+ */
+@Configuration
+@Profile("loadtest")
+@EnableConfigurationProperties(FakeFirebaseConfig.FakeFirebaseProperties.class)
+public class FakeFirebaseConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public FakeFirebase fakeFirebase(FakeFirebaseProperties properties) {
+        FakeFirebase fakeFirebase = new FakeFirebase(properties.getLatency(), properties.getFailureRate());
+        fakeFirebase.seed(properties.getSeedUsers());
+        return fakeFirebase;
+    }
+
+    @Bean
+    public FirebaseAuth firebaseAuth(FakeFirebase fakeFirebase) {
+        return fakeFirebase.firebaseAuth();
+    }
+
+    @Bean
+    public Firestore firestore(FakeFirebase fakeFirebase) {
+        return fakeFirebase.firestore();
+    }
+
+    @Data
+    @ConfigurationProperties(prefix = "xcelerator.loadtest.firebase")
+    public static class FakeFirebaseProperties {
+
+        // Simulated round trip of every Auth and Firestore call
+        private Duration latency = Duration.ofMillis(5);
+
+        // Share of calls failing with UNAVAILABLE, 0 to 1
+        private double failureRate = 0;
+
+        // STAFF users created up front, the scenarios log in as them
+        private int seedUsers = 1000;
+    }
+}
@@ -0,0 +1,138 @@
+package com.ivannagara.xcelerator.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Latency and status counts per scenario, kept in Micrometer timers with client-side percentiles
+ */
+final class LoadReport {
+
+    // Status recorded when the request failed without a response (refused, reset, timed out)
+    static final int NO_RESPONSE = 0;
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<Scenario, Timer> timers = new LinkedHashMap<>();
+    private final URI target;
+    private final int users;
+    private final Duration duration;
+    private final Map<Scenario, Integer> mix;
+    private final LocalDateTime started = LocalDateTime.now();
+
+    LoadReport(URI target, int users, Duration duration, Map<Scenario, Integer> mix) {
+        this.target = target;
+        this.users = users;
+        this.duration = duration;
+        this.mix = mix;
+        for (Scenario scenario : mix.keySet()) {
+            timers.put(scenario, Timer.builder("loadtest.latency")
+                .tag("scenario", scenario.id())
+                .publishPercentiles(PERCENTILES)
+                .percentilePrecision(3)
+                // One window for the whole run, the percentiles cover every measured request
+                .distributionStatisticExpiry(duration.multipliedBy(2).plusMinutes(1))
+                .distributionStatisticBufferLength(1)
+                .register(registry));
+        }
+    }
+
+    void record(Scenario scenario, int status, long nanos) {
+        timers.get(scenario).record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("loadtest.responses", "scenario", scenario.id(), "status", Integer.toString(status)).increment();
+    }
+
+    List<Map<String, Object>> results() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map.Entry<Scenario, Timer> entry : timers.entrySet()) {
+            Scenario scenario = entry.getKey();
+            HistogramSnapshot snapshot = entry.getValue().takeSnapshot();
+
+            Map<String, Long> statuses = new TreeMap<>();
+            long errors = 0;
+            for (Counter counter : registry.find("loadtest.responses").tag("scenario", scenario.id()).counters()) {
+                String status = counter.getId().getTag("status");
+                long count = (long) counter.count();
+                statuses.put(status, count);
+                int code = Integer.parseInt(status);
+                if (code == NO_RESPONSE || code >= 400) {
+                    errors += count;
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("scenario", scenario.id());
+            result.put("requests", snapshot.count());
+            result.put("errors", errors);
+            result.put("throughput", snapshot.count() / (duration.toNanos() / 1e9));
+            result.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                result.put(percentileName(percentile.percentile()) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+            }
+            result.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            result.put("statuses", statuses);
+            results.add(result);
+        }
+        return results;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%n%-16s %9s %7s %9s %9s %9s %9s %9s %9s %9s%n",
+            "scenario", "requests", "errors", "req/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long requests = 0;
+        long errors = 0;
+        for (Map<String, Object> result : results()) {
+            out.printf("%-16s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                result.get("scenario"), result.get("requests"), result.get("errors"), result.get("throughput"),
+                result.get("meanMs"), result.get("p50Ms"), result.get("p90Ms"), result.get("p99Ms"),
+                result.get("p99.9Ms"), result.get("maxMs"));
+            requests += (long) result.get("requests");
+            errors += (long) result.get("errors");
+        }
+        out.printf("%-16s %9d %7d %9.1f%n", "total", requests, errors, requests / (duration.toNanos() / 1e9));
+    }
+
+    Path write(Path directory) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("started", started.toString());
+        report.put("target", target.toString());
+        report.put("users", users);
+        report.put("durationSeconds", duration.toSeconds());
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        mix.forEach((scenario, weight) -> weights.put(scenario.id(), weight));
+        report.put("mix", weights);
+        report.put("scenarios", results());
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve("report-" + started.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        return file;
+    }
+
+    private static String percentileName(double percentile) {
+        String name = Double.toString(percentile * 100);
+        return "p" + (name.endsWith(".0") ? name.substring(0, name.length() - 2) : name);
+    }
+}
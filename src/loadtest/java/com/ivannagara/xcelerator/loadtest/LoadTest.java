@@ -0,0 +1,165 @@
+package com.ivannagara.xcelerator.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.ivannagara.xcelerator.XceleratorApplication;
+
+/**
+ * Closed-model load test: a fixed number of virtual users send requests back to back for
+ * a fixed time, each request a scenario picked by weight, and the throughput and latency
+ * per scenario are printed and written to target/loadtest.
+ *
+ * Without --target the application is started in-process with the "loadtest" profile,
+ * i.e. against [FakeFirebase]. Run it with: mvn -Ploadtest test-compile exec:exec
+ * and pass options through -Dloadtest.args, e.g.
+ * -Dloadtest.args="--users=64 --duration=60s --xcelerator.loadtest.firebase.latency=20ms"
+ *
+ * - --users: concurrent virtual users (default 32)
+ * - --warmup, --duration: unmeasured and measured time (default 10s, 30s)
+ * - --mix: scenario weights, e.g. profile-get:50,profile-update:20,register:10,admin-role:15,admin-create:5
+ * - --seed-users: seeded users the scenarios act as, must match the server's (default 1000)
+ * - --target: base URL of an already running instance with the loadtest profile
+ * - --report-dir: where the JSON report goes (default target/loadtest)
+ * Any other --xcelerator.*, --spring.*, --server.* or --management.* option is passed to the application.
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "profile-get:50,profile-update:20,register:10,admin-role:15,admin-create:5";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> applicationArgs = new ArrayList<>(List.of("--spring.profiles.active=loadtest", "--server.port=0"));
+        for (String arg : args) {
+            if (arg.startsWith("--xcelerator.") || arg.startsWith("--spring.") || arg.startsWith("--server.")
+                    || arg.startsWith("--management.")) {
+                applicationArgs.add(arg);
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (!arg.isBlank()) {
+                throw new IllegalArgumentException("Unrecognized argument " + arg);
+            }
+        }
+
+        int users = Integer.parseInt(options.getOrDefault("users", "32"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        int seedUsers = Integer.parseInt(options.getOrDefault("seed-users", "1000"));
+        Map<Scenario, Integer> mix = parseMix(options.getOrDefault("mix", DEFAULT_MIX));
+        Path reportDir = Path.of(options.getOrDefault("report-dir", "target/loadtest"));
+
+        ConfigurableApplicationContext application = null;
+        URI target;
+        if (options.containsKey("target")) {
+            target = URI.create(options.get("target"));
+        } else {
+            applicationArgs.add("--xcelerator.loadtest.firebase.seed-users=" + seedUsers);
+            // A devtools restart would run this main method a second time
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            application = new SpringApplicationBuilder(XceleratorApplication.class).run(applicationArgs.toArray(String[]::new));
+            int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+            target = URI.create("http://localhost:" + port);
+        }
+
+        try {
+            LoadReport report = run(target, users, warmup, duration, seedUsers, mix);
+            report.print(System.out);
+            System.out.println("Report written to " + report.write(reportDir));
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private static LoadReport run(URI target, int users, Duration warmup, Duration duration, int seedUsers,
+            Map<Scenario, Integer> mix) throws InterruptedException {
+        Scenario[] weighted = mix.entrySet().stream()
+            .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+            .toArray(Scenario[]::new);
+
+        LoadReport report = new LoadReport(target, users, duration, mix);
+        System.out.printf("%d users against %s: %s warm-up, %s measured%n", users, target, warmup, duration);
+
+        try (ExecutorService virtualUsers = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(virtualUsers)
+                    .build()) {
+            long measureFrom = System.nanoTime() + warmup.toNanos();
+            long end = measureFrom + duration.toNanos();
+
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                running.add(virtualUsers.submit(() -> {
+                    while (true) {
+                        long start = System.nanoTime();
+                        if (start >= end) {
+                            return;
+                        }
+                        Scenario scenario = weighted[ThreadLocalRandom.current().nextInt(weighted.length)];
+                        int status;
+                        try {
+                            status = client.send(scenario.request(target, seedUsers), HttpResponse.BodyHandlers.discarding())
+                                .statusCode();
+                        } catch (IOException e) {
+                            status = LoadReport.NO_RESPONSE;
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        long finished = System.nanoTime();
+                        if (start >= measureFrom && finished <= end) {
+                            report.record(scenario, status, finished - start);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> user : running) {
+                try {
+                    user.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Virtual user failed", e.getCause());
+                }
+            }
+        }
+        return report;
+    }
+
+    private static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            if (weight > 0) {
+                weights.put(Scenario.fromId(parts[0]), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("No scenario in --mix=" + mix);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ivannagara.xcelerator.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The request flows the load test mixes, each one HTTP request against the API.
+ * Authenticated scenarios act as a random seeded user, or as the seeded admins.
+ */
+enum Scenario {
+
+    REGISTER("register") {
+        @Override
+        HttpRequest request(URI base, int seedUsers) {
+            String email = "loadtest-" + UUID.randomUUID() + "@example.com";
+            return post(base, "/api/public/register", null,
+                "{\"email\":\"" + email + "\",\"password\":\"" + PASSWORD + "\"}");
+        }
+    },
+
+    PROFILE_GET("profile-get") {
+        @Override
+        HttpRequest request(URI base, int seedUsers) {
+            String uid = randomUser(seedUsers);
+            return builder(base, "/api/profile/" + uid, uid).GET().build();
+        }
+    },
+
+    // Keeps uid, email and role, the endpoint replaces the whole document
+    PROFILE_UPDATE("profile-update") {
+        @Override
+        HttpRequest request(URI base, int seedUsers) {
+            String uid = randomUser(seedUsers);
+            return post(base, "/api/profile/" + uid, uid,
+                "{\"uid\":\"" + uid + "\",\"email\":\"" + uid + "@loadtest.local\",\"role\":\"STAFF\","
+                    + "\"displayName\":\"Load Test " + ThreadLocalRandom.current().nextInt(1_000_000) + "\"}");
+        }
+    },
+
+    // ADMIN may only assign STAFF, so the seeded users keep their role
+    ADMIN_ROLE("admin-role") {
+        @Override
+        HttpRequest request(URI base, int seedUsers) {
+            return builder(base, "/api/admin/user/" + randomUser(seedUsers) + "/role", FakeFirebase.ADMIN_UID)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"role\":\"STAFF\"}"))
+                .build();
+        }
+    },
+
+    ADMIN_CREATE_USER("admin-create") {
+        @Override
+        HttpRequest request(URI base, int seedUsers) {
+            String email = "loadtest-" + UUID.randomUUID() + "@example.com";
+            return post(base, "/api/admin/user", FakeFirebase.SUPER_ADMIN_UID,
+                "{\"email\":\"" + email + "\",\"password\":\"" + PASSWORD + "\",\"role\":\"STAFF\"}");
+        }
+    };
+
+    private static final String PASSWORD = "loadtest-password";
+
+    private final String id;
+
+    Scenario(String id) {
+        this.id = id;
+    }
+
+    String id() {
+        return id;
+    }
+
+    abstract HttpRequest request(URI base, int seedUsers);
+
+    static Scenario fromId(String id) {
+        for (Scenario scenario : values()) {
+            if (scenario.id.equals(id)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scenario " + id);
+    }
+
+    private static String randomUser(int seedUsers) {
+        return FakeFirebase.seededUid(ThreadLocalRandom.current().nextInt(seedUsers));
+    }
+
+    private static HttpRequest.Builder builder(URI base, String path, String uid) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(path));
+        if (uid != null) {
+            builder.header("Authorization", "Bearer " + FakeFirebase.token(uid));
+        }
+        return builder;
+    }
+
+    private static HttpRequest post(URI base, String path, String uid, String json) {
+        return builder(base, path, uid)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+}
@@ -2,8 +2,17 @@ package com.ivannagara.xcelerator;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
-@SpringBootApplication
+import com.ivannagara.xcelerator.config.NativeImageHints;
+
+// Requests are authenticated with Firebase ID tokens, the default in-memory user
+// (and its generated password) would never be used
+@SpringBootApplication(exclude = UserDetailsServiceAutoConfiguration.class)
+@ConfigurationPropertiesScan
+@ImportRuntimeHints(NativeImageHints.class)
 public class XceleratorApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,20 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * How [AuthFailureLog] rate-limits the log lines of rejected tokens and failed role lookups.
+ * Bound from the "xcelerator.logging.auth-failures.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.logging.auth-failures")
+public class AuthFailureLogProperties {
+
+    // At most one line per failure reason per interval, the rest are counted and
+    // summarized in one line at the end of the interval
+    private Duration interval = Duration.ofMinutes(1);
+}
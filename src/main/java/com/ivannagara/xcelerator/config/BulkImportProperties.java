@@ -0,0 +1,40 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Throughput settings for the bulk user import (POST /api/admin/users/import).
+ * Bound from the "xcelerator.admin.import.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.admin.import")
+public class BulkImportProperties {
+
+    // Users sent per FirebaseAuth.importUsers call, at most 1000
+    private int batchSize = 1000;
+
+    // importUsers calls allowed in flight at the same time
+    private int maxConcurrentBatches = 2;
+
+    // importUsers calls started per second, keeps us under the Auth quota
+    private double batchesPerSecond = 1.0;
+
+    // Profile writes per second the Firestore BulkWriter ramps up to
+    private int maxFirestoreOpsPerSecond = 500;
+
+    // Cost factor used to bcrypt plain-text passwords before they are sent to Firebase
+    private int bcryptStrength = 10;
+
+    // Threads hashing the passwords of an upload, started by the job and stopped once it is done
+    private int hashingThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Per-row errors kept for the status report, the rest are only counted
+    private int maxReportedErrors = 1000;
+
+    // How long a completed or failed job stays around for its status report (and for resuming)
+    private Duration finishedJobRetention = Duration.ofHours(1);
+}
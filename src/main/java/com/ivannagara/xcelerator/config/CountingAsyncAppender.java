@@ -0,0 +1,35 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Logback's [AsyncAppender] (see logback-spring.xml) that counts the events it drops.
+ *
+ * Request threads only put the event on a bounded queue, one worker thread formats and writes it.
+ * With neverBlock the appender drops an event instead of waiting when the queue is full, and once
+ * the queue is past its discarding threshold it drops TRACE, DEBUG and INFO events to keep room
+ * for warnings and errors. The count is reported as "xcelerator.logging.dropped" (see [MetricsConfig]),
+ * approximate since it checks the queue just before the appender does.
+ */
+public class CountingAsyncAppender extends AsyncAppender {
+
+    // Static, logback creates the appender before the application context exists
+    private static final LongAdder DROPPED = new LongAdder();
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int remaining = getRemainingCapacity();
+        if (remaining == 0 && isNeverBlock()
+                || remaining < getDiscardingThreshold() && isDiscardable(event)) {
+            DROPPED.increment();
+        }
+        super.append(event);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.target.AbstractLazyCreationTargetSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.cloud.FirestoreClient;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the Firestore client off the startup path.
+ *
+ * Building the client loads gRPC, Netty and the protobuf classes, which takes seconds on a
+ * cold JVM. With lazy-init the [Firestore] bean is a proxy that builds the real client on
+ * first use, and with warm-up a background thread builds it as soon as the application is
+ * ready, so /actuator/health answers while that happens. A request that needs Firestore
+ * before the client is ready waits for it.
+ */
+@Slf4j
+public class FirebaseClients implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private final boolean warmUp;
+    private final LazyFirestore lazyFirestore;
+    private final Firestore firestore;
+
+    // Why the last attempt at building the client failed, reported by the health check
+    private volatile Exception failure;
+
+    public FirebaseClients(FirebaseApp firebaseApp, FirebaseProperties properties) {
+        this.warmUp = properties.isLazyInit() && properties.isWarmUp();
+        this.lazyFirestore = new LazyFirestore(firebaseApp);
+        this.firestore = properties.isLazyInit()
+            ? ProxyFactory.getProxy(Firestore.class, lazyFirestore)
+            : lazyFirestore.getFirestore();
+    }
+
+    /**
+     * The Firestore bean: the client itself, or the proxy building it on first use
+     */
+    public Firestore getFirestore() {
+        return firestore;
+    }
+
+    public boolean isFirestoreReady() {
+        return lazyFirestore.created != null;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!warmUp || isFirestoreReady()) {
+            return;
+        }
+        Thread warmUpThread = new Thread(() -> {
+            long started = System.currentTimeMillis();
+            try {
+                lazyFirestore.getFirestore();
+                log.info("Firestore client ready in {} ms", System.currentTimeMillis() - started);
+            } catch (RuntimeException e) {
+                // The next call that needs the client tries again
+                log.error("Failed to build the Firestore client in the background", e);
+            }
+        }, "firebase-warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    /**
+     * UNKNOWN while the client is being built, so the application reports UP in the meantime
+     */
+    public Health health() {
+        if (isFirestoreReady()) {
+            return Health.up().withDetail("firestore", "ready").build();
+        }
+        Exception lastFailure = failure;
+        if (lastFailure != null) {
+            return Health.down(lastFailure).withDetail("firestore", "failed").build();
+        }
+        return Health.unknown().withDetail("firestore", "initializing").build();
+    }
+
+    // Closes the client only if it was built, instead of building it to close it
+    @Override
+    public void destroy() throws Exception {
+        if (isFirestoreReady()) {
+            lazyFirestore.created.close();
+        }
+    }
+
+    private final class LazyFirestore extends AbstractLazyCreationTargetSource {
+
+        private final FirebaseApp firebaseApp;
+
+        // Set once built. Read without the target source's lock, which is held while building.
+        private volatile Firestore created;
+
+        LazyFirestore(FirebaseApp firebaseApp) {
+            this.firebaseApp = firebaseApp;
+        }
+
+        Firestore getFirestore() {
+            try {
+                return (Firestore) getTarget();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Class<?> getTargetClass() {
+            return Firestore.class;
+        }
+
+        @Override
+        protected Object createObject() {
+            try {
+                created = FirestoreClient.getFirestore(firebaseApp);
+                failure = null;
+                return created;
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+}
@@ -4,8 +4,10 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.cloud.FirestoreClient;
 import com.google.cloud.firestore.Firestore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -13,19 +15,39 @@ import org.springframework.core.io.ClassPathResource;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Connects to the real Firebase project with the bundled service account.
+ * Set "xcelerator.firebase.enabled=false" to provide [FirebaseAuth] and [Firestore]
+ * beans some other way (benchmarks, local stand-ins).
+ *
+ * The Firestore client is built on first use or in the background (see [FirebaseClients]),
+ * and its state is reported as the "firebase" health component.
+ */
 @Configuration
+@ConditionalOnProperty(name = "xcelerator.firebase.enabled", havingValue = "true", matchIfMissing = true)
 public class FirebaseConfig {
 
     @Bean
-    public FirebaseApp firebaseApp() throws IOException {
+    public FirebaseApp firebaseApp(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            ResilienceProperties resilience) throws IOException {
         if (FirebaseApp.getApps().isEmpty()) {
             InputStream serviceAccount = new ClassPathResource("firebase-service-account.json").getInputStream();
             
-            FirebaseOptions options = FirebaseOptions.builder()
-                    .setCredentials(GoogleCredentials.fromStream(serviceAccount))
-                    .build();
+            FirebaseOptions.Builder options = FirebaseOptions.builder()
+                    .setCredentials(GoogleCredentials.fromStream(serviceAccount));
+
+            // Same switch as the servlet container, the SDK callbacks run on virtual threads too
+            if (virtualThreads) {
+                options.setThreadManager(new VirtualThreadManager());
+            }
+
+            // The SDK waits forever by default, this bounds the blocking Auth calls (see CallGuard.callBlocking)
+            if (resilience.isEnabled()) {
+                int timeoutMillis = (int) resilience.getAuth().getTimeout().toMillis();
+                options.setConnectTimeout(timeoutMillis).setReadTimeout(timeoutMillis);
+            }
             
-            return FirebaseApp.initializeApp(options);
+            return FirebaseApp.initializeApp(options.build());
         }
         return FirebaseApp.getInstance();
     }
@@ -36,7 +58,18 @@ public class FirebaseConfig {
     }
     
     @Bean
-    public Firestore firestore(FirebaseApp firebaseApp) {
-        return FirestoreClient.getFirestore(firebaseApp);
+    public FirebaseClients firebaseClients(FirebaseApp firebaseApp, FirebaseProperties properties) {
+        return new FirebaseClients(firebaseApp, properties);
+    }
+
+    // Closed by FirebaseClients, only if it was built
+    @Bean(destroyMethod = "")
+    public Firestore firestore(FirebaseClients firebaseClients) {
+        return firebaseClients.getFirestore();
+    }
+
+    @Bean
+    public HealthIndicator firebaseHealthIndicator(FirebaseClients firebaseClients) {
+        return firebaseClients::health;
     }
 }
\ No newline at end of file
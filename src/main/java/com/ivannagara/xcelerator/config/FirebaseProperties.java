@@ -0,0 +1,23 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * How [FirebaseConfig] connects to Firebase.
+ * Bound from the "xcelerator.firebase.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.firebase")
+public class FirebaseProperties {
+
+    // Off to provide the FirebaseAuth and Firestore beans some other way (benchmarks, local stand-ins)
+    private boolean enabled = true;
+
+    // Build the Firestore client on first use instead of while the context starts
+    private boolean lazyInit = true;
+
+    // Build it on a background thread once the application is ready, so the first request doesn't wait for it
+    private boolean warmUp = true;
+}
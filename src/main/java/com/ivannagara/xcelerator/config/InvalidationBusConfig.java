@@ -0,0 +1,47 @@
+package com.ivannagara.xcelerator.config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.ivannagara.xcelerator.service.InProcessInvalidationBus;
+import com.ivannagara.xcelerator.service.InvalidationBus;
+import com.ivannagara.xcelerator.service.UdpInvalidationBus;
+
+/**
+ * Picks the [InvalidationBus] used by [UserRoleCache] from "xcelerator.cluster.invalidation.transport"
+ */
+@Configuration
+public class InvalidationBusConfig {
+
+    @Bean
+    public InvalidationBus invalidationBus(InvalidationBusProperties properties) throws IOException {
+        return switch (properties.getTransport()) {
+            case NONE -> new InProcessInvalidationBus();
+            case IN_PROCESS -> new InProcessInvalidationBus(properties.getGroup());
+            case UDP -> new UdpInvalidationBus(new InetSocketAddress(properties.getBindAddress(), properties.getPort()),
+                peers(properties.getPeers()), secret(properties.getSecret()), properties.getHeartbeatInterval());
+        };
+    }
+
+    private static byte[] secret(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("xcelerator.cluster.invalidation.secret must be set for the UDP transport");
+        }
+        return secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<InetSocketAddress> peers(List<String> peers) {
+        return peers.stream().map(String::trim).filter(peer -> !peer.isEmpty()).map(peer -> {
+            int colon = peer.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalStateException("xcelerator.cluster.invalidation.peers needs host:port, got " + peer);
+            }
+            return new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+        }).toList();
+    }
+}
@@ -0,0 +1,42 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * How instances tell each other about role and profile changes, see [InvalidationBus].
+ * Bound from the "xcelerator.cluster.invalidation.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.cluster.invalidation")
+public class InvalidationBusProperties {
+
+    public enum Transport {
+        NONE,
+        IN_PROCESS,
+        UDP
+    }
+
+    private Transport transport = Transport.NONE;
+
+    // IN_PROCESS: instances in the same JVM and group hear each other
+    private String group = "xcelerator";
+
+    // UDP: where this instance receives messages
+    private String bindAddress = "0.0.0.0";
+    private int port = 7600;
+
+    // UDP: "host:port" of every instance, may include this one so all instances share the list
+    private List<String> peers = new ArrayList<>();
+
+    // UDP: shared by every instance (at least 16 bytes), messages carry an HMAC under it
+    private String secret;
+
+    // UDP: how often the last message number is repeated, a lost message is noticed within this
+    private Duration heartbeatInterval = Duration.ofSeconds(1);
+}
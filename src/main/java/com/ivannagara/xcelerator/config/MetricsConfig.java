@@ -0,0 +1,206 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.ivannagara.xcelerator.security.AuthFailureLog;
+import com.ivannagara.xcelerator.security.RateLimiter;
+import com.ivannagara.xcelerator.security.VerifiedTokenCache;
+import com.ivannagara.xcelerator.service.CallGuard;
+import com.ivannagara.xcelerator.service.FirebaseCallGuards;
+import com.ivannagara.xcelerator.service.InvalidationBus;
+import com.ivannagara.xcelerator.service.ProfileCache;
+import com.ivannagara.xcelerator.service.UserDocumentReader;
+import com.ivannagara.xcelerator.service.UserRoleCache;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Metrics that aren't recorded inline: @Timed support and the cache statistics.
+ *
+ * Caches are reported under Micrometer's usual names ("cache.gets" with result=hit|miss,
+ * "cache.evictions", "cache.size") tagged with the cache name, plus a "cache.hit.ratio" gauge.
+ * The rate limiter's bucket table only reports evictions, and [UserDocumentReader] reports
+ * how many user document lookups shared a read already in flight. The profile cache also reports
+ * its stale hits and its loads ("cache.load" by result, "cache.load.duration").
+ *
+ * Each Firebase backend's [CallGuard] reports its calls by outcome, the calls in flight and the
+ * state of its circuit breaker (1 on the gauge of the current state, 0 on the others).
+ *
+ * Logging reports the events the async appender dropped and the auth failures [AuthFailureLog]
+ * only counted instead of logging.
+ *
+ * The [InvalidationBus] reports the messages it sent and received, and how often it dropped
+ * every cached role and profile because messages were missed.
+ */
+@Configuration
+public class MetricsConfig {
+
+    // Makes @Timed work on any bean, see [UserService]
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics(VerifiedTokenCache tokenCache, UserRoleCache roleCache, RateLimiter rateLimiter,
+            UserDocumentReader userDocumentReader, ProfileCache profileCache) {
+        return registry -> {
+            bindCache(registry, "token", tokenCache, VerifiedTokenCache::getHitCount, VerifiedTokenCache::getMissCount);
+            FunctionCounter.builder("cache.evictions", tokenCache, VerifiedTokenCache::getEvictionCount)
+                .tag("cache", "token")
+                .register(registry);
+
+            bindCache(registry, "role", roleCache, UserRoleCache::getHitCount, UserRoleCache::getMissCount);
+            Gauge.builder("cache.size", roleCache, UserRoleCache::size)
+                .tag("cache", "role")
+                .register(registry);
+
+            bindCache(registry, "profile", profileCache, ProfileCache::getHitCount, ProfileCache::getMissCount);
+            Gauge.builder("cache.size", profileCache, ProfileCache::size)
+                .tag("cache", "profile")
+                .register(registry);
+            FunctionCounter.builder("cache.evictions", profileCache, ProfileCache::getEvictionCount)
+                .tag("cache", "profile")
+                .register(registry);
+            FunctionCounter.builder("cache.stale.hits", profileCache, ProfileCache::getStaleHitCount)
+                .description("Lookups answered with a stale entry while it was reloaded in the background")
+                .tag("cache", "profile")
+                .register(registry);
+            FunctionTimer.builder("cache.load.duration", profileCache,
+                    c -> c.getLoadSuccessCount() + c.getLoadFailureCount(), ProfileCache::getTotalLoadTime, TimeUnit.NANOSECONDS)
+                .description("Time spent loading entries into the cache")
+                .tag("cache", "profile")
+                .register(registry);
+            FunctionCounter.builder("cache.load", profileCache, ProfileCache::getLoadSuccessCount)
+                .tag("cache", "profile")
+                .tag("result", "success")
+                .register(registry);
+            FunctionCounter.builder("cache.load", profileCache, ProfileCache::getLoadFailureCount)
+                .tag("cache", "profile")
+                .tag("result", "failure")
+                .register(registry);
+
+            FunctionCounter.builder("cache.evictions", rateLimiter, RateLimiter::getEvictionCount)
+                .tag("cache", "rate-limit")
+                .register(registry);
+
+            FunctionCounter.builder("xcelerator.user.document.reads", userDocumentReader, UserDocumentReader::getReadCount)
+                .description("User document lookups, result=coalesced were answered by a read already in flight")
+                .tag("result", "read")
+                .register(registry);
+            FunctionCounter.builder("xcelerator.user.document.reads", userDocumentReader, UserDocumentReader::getCoalescedCount)
+                .description("User document lookups, result=coalesced were answered by a read already in flight")
+                .tag("result", "coalesced")
+                .register(registry);
+
+            FunctionCounter.builder("xcelerator.roles.stale.served", roleCache, UserRoleCache::getStaleServedCount)
+                .description("Role lookups answered with the last role read because Firestore couldn't be read")
+                .register(registry);
+            Gauge.builder("xcelerator.roles.listener.active", roleCache, c -> c.isListening() ? 1 : 0)
+                .description("1 while the role cache listens to the users collection, 0 while it is bypassed for lack of a listener")
+                .register(registry);
+            FunctionCounter.builder("xcelerator.roles.listener.failures", roleCache, UserRoleCache::getListenerFailureCount)
+                .description("Times the role listener failed and had to be subscribed again")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder firebaseCallMetrics(FirebaseCallGuards callGuards) {
+        return registry -> {
+            bindCallGuard(registry, callGuards.getAuth());
+            bindCallGuard(registry, callGuards.getFirestore());
+        };
+    }
+
+    @Bean
+    public MeterBinder loggingMetrics(AuthFailureLog authFailureLog) {
+        return registry -> {
+            FunctionCounter.builder("xcelerator.logging.dropped", CountingAsyncAppender.class, c -> CountingAsyncAppender.getDroppedCount())
+                .description("Log events dropped because the async appender's queue was full or past its discarding threshold")
+                .register(registry);
+
+            FunctionCounter.builder("xcelerator.auth.failures.suppressed", authFailureLog, AuthFailureLog::getSuppressedCount)
+                .description("Rejected tokens and failed role lookups counted in a summary line instead of logged")
+                .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder invalidationBusMetrics(InvalidationBus invalidationBus) {
+        return registry -> {
+            FunctionCounter.builder("xcelerator.cluster.invalidations", invalidationBus, InvalidationBus::getPublishedCount)
+                .description("Role and profile invalidations exchanged with the other instances")
+                .tag("direction", "sent")
+                .register(registry);
+            FunctionCounter.builder("xcelerator.cluster.invalidations", invalidationBus, InvalidationBus::getReceivedCount)
+                .description("Role and profile invalidations exchanged with the other instances")
+                .tag("direction", "received")
+                .register(registry);
+
+            FunctionCounter.builder("xcelerator.cluster.invalidations.missed", invalidationBus, InvalidationBus::getMissedCount)
+                .description("Times every cached role and profile was dropped because invalidations were missed")
+                .register(registry);
+        };
+    }
+
+    private static void bindCallGuard(MeterRegistry registry, CallGuard guard) {
+        bindCalls(registry, guard, "success", CallGuard::getSuccessCount);
+        bindCalls(registry, guard, "failure", CallGuard::getFailureCount);
+        bindCalls(registry, guard, "timeout", CallGuard::getTimeoutCount);
+        bindCalls(registry, guard, "circuit_open", CallGuard::getRejectedOpenCount);
+        bindCalls(registry, guard, "bulkhead_full", CallGuard::getRejectedFullCount);
+
+        Gauge.builder("xcelerator.firebase.calls.in.flight", guard, CallGuard::getCallsInFlight)
+            .tag("backend", guard.getBackend())
+            .register(registry);
+
+        for (CallGuard.State state : CallGuard.State.values()) {
+            Gauge.builder("xcelerator.firebase.circuit.state", guard, g -> g.getState() == state ? 1 : 0)
+                .description("1 for the current state of the backend's circuit breaker")
+                .tag("backend", guard.getBackend())
+                .tag("state", state.name().toLowerCase())
+                .register(registry);
+        }
+    }
+
+    private static void bindCalls(MeterRegistry registry, CallGuard guard, String outcome, ToLongFunction<CallGuard> count) {
+        FunctionCounter.builder("xcelerator.firebase.calls", guard, g -> count.applyAsLong(g))
+            .description("Firebase calls by outcome, circuit_open and bulkhead_full were rejected without being made")
+            .tag("backend", guard.getBackend())
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    private static <C> void bindCache(MeterRegistry registry, String name, C cache,
+            ToLongFunction<C> hits, ToLongFunction<C> misses) {
+        FunctionCounter.builder("cache.gets", cache, c -> hits.applyAsLong(c))
+            .tag("cache", name)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", cache, c -> misses.applyAsLong(c))
+            .tag("cache", name)
+            .tag("result", "miss")
+            .register(registry);
+
+        ToDoubleFunction<C> hitRatio = c -> {
+            long hitCount = hits.applyAsLong(c);
+            long total = hitCount + misses.applyAsLong(c);
+            return total == 0 ? Double.NaN : (double) hitCount / total;
+        };
+        Gauge.builder("cache.hit.ratio", cache, hitRatio)
+            .description("Share of lookups answered from the cache since startup")
+            .tag("cache", name)
+            .register(registry);
+    }
+}
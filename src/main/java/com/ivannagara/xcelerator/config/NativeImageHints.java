@@ -0,0 +1,65 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.List;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aop.framework.AopProxyUtils;
+
+import com.google.cloud.firestore.Firestore;
+import com.ivannagara.xcelerator.model.UserProfileSerializer;
+import com.ivannagara.xcelerator.security.RequiredRole;
+
+/**
+ * What a GraalVM native image needs beyond what Spring AOT works out from the beans
+ * (mvn -Pnative native:compile, see the fast-startup profile in the pom).
+ *
+ * - the Firebase Admin SDK maps its Auth REST responses onto @Key fields by reflection,
+ *   and reads its version and our service account from the classpath
+ * - the lazy [Firestore] bean is a JDK proxy created at runtime (see [FirebaseClients])
+ * - [RequiredRoleRegistry] reads @RequiredRole off handler methods and classes
+ */
+public class NativeImageHints implements RuntimeHintsRegistrar {
+
+    // Firebase Auth and google-http-client types parsed from JSON, by name since most are package-private
+    private static final List<String> FIREBASE_JSON_TYPES = List.of(
+        "com.google.firebase.auth.internal.GetAccountInfoRequest",
+        "com.google.firebase.auth.internal.GetAccountInfoRequest$FederatedUserId",
+        "com.google.firebase.auth.internal.GetAccountInfoResponse",
+        "com.google.firebase.auth.internal.GetAccountInfoResponse$User",
+        "com.google.firebase.auth.internal.GetAccountInfoResponse$Provider",
+        "com.google.firebase.auth.internal.DownloadAccountResponse",
+        "com.google.firebase.auth.internal.DownloadAccountResponse$User",
+        "com.google.firebase.auth.internal.UploadAccountResponse",
+        "com.google.firebase.auth.internal.UploadAccountResponse$ErrorInfo",
+        "com.google.firebase.auth.internal.BatchDeleteResponse",
+        "com.google.firebase.auth.internal.BatchDeleteResponse$ErrorInfo",
+        "com.google.firebase.auth.internal.AuthErrorHandler$AuthServiceErrorResponse",
+        "com.google.firebase.auth.internal.FirebaseCustomAuthToken$Payload",
+        "com.google.api.client.json.GenericJson",
+        "com.google.api.client.util.GenericData",
+        "com.google.api.client.json.webtoken.JsonWebSignature$Header",
+        "com.google.api.client.json.webtoken.JsonWebToken$Header",
+        "com.google.api.client.json.webtoken.JsonWebToken$Payload",
+        "com.google.api.client.auth.openidconnect.IdToken$Payload",
+        "com.google.api.client.googleapis.json.GoogleJsonError",
+        "com.google.api.client.googleapis.json.GoogleJsonError$ErrorInfo",
+        "com.google.api.client.googleapis.json.GoogleJsonError$Details");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String type : FIREBASE_JSON_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type),
+                MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+        hints.resources().registerPattern("admin_sdk.properties");
+        hints.resources().registerPattern("firebase-service-account.json");
+
+        hints.proxies().registerJdkProxy(AopProxyUtils.completeJdkProxyInterfaces(Firestore.class));
+
+        hints.reflection().registerType(RequiredRole.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(UserProfileSerializer.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+    }
+}
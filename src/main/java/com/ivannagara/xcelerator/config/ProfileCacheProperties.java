@@ -0,0 +1,32 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the local profile cache in front of GET /api/profile/{userId}.
+ * Bound from the "xcelerator.profile.cache.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.profile.cache")
+public class ProfileCacheProperties {
+
+    // Turn the cache off to read the profile from Firestore on every request
+    private boolean enabled = true;
+
+    // Maximum number of profiles kept in memory, the least valuable ones are evicted beyond that
+    private int maxEntries = 10_000;
+
+    // How long a profile is served without asking Firestore again
+    private Duration ttl = Duration.ofSeconds(30);
+
+    // How long after the ttl a profile is still served while it is reloaded in the background.
+    // Older profiles are reloaded before answering.
+    private Duration staleWhileRevalidate = Duration.ofMinutes(5);
+
+    // How long "this user has no profile" is remembered, zero to always read missing profiles again
+    private Duration negativeTtl = Duration.ofSeconds(10);
+}
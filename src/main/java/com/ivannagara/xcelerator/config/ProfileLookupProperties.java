@@ -0,0 +1,29 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Per-source timeouts for GET /api/profile/{userId} and POST /api/profiles/batch,
+ * which read Firebase Auth and Firestore at the same time.
+ * Bound from the "xcelerator.profile.lookup.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.profile.lookup")
+public class ProfileLookupProperties {
+
+    // Without the Auth record there is nothing to return, so this one fails the request
+    private Duration authTimeout = Duration.ofSeconds(3);
+
+    // A slow Firestore read only makes the response partial
+    private Duration firestoreTimeout = Duration.ofMillis(800);
+
+    // Most uids accepted by one batch request
+    private int batchMaxIds = 500;
+
+    // Uids per getUsers / getAll call, every chunk is sent at once (Auth accepts at most 100)
+    private int batchChunkSize = 100;
+}
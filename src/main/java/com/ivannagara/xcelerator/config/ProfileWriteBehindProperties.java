@@ -0,0 +1,35 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the write-behind buffer in front of profile writes.
+ * Bound from the "xcelerator.profile.write-behind.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.profile.write-behind")
+public class ProfileWriteBehindProperties {
+
+    // Off by default: every profile save goes straight to Firestore
+    private boolean enabled = false;
+
+    // Pending updates are written at least this often
+    private Duration flushInterval = Duration.ofMillis(500);
+
+    // Flush early once this many users have pending updates
+    private int flushThreshold = 500;
+
+    // A commit is given up on (and retried) after this long, also with the Firestore call guard off
+    private Duration commitTimeout = Duration.ofSeconds(10);
+
+    // Writes of one user's update before its callers get the error
+    private int maxAttempts = 5;
+
+    // Wait before retrying a failed update, doubled on every attempt up to max-retry-backoff
+    private Duration retryBackoff = Duration.ofSeconds(1);
+    private Duration maxRetryBackoff = Duration.ofMinutes(1);
+}
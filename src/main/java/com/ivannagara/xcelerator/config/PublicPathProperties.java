@@ -0,0 +1,24 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Paths reachable without a Firebase token.
+ * Bound from "xcelerator.security.public-paths" and "xcelerator.security.management-public-paths",
+ * see [PublicPathMatcher] for the pattern syntax.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.security")
+public class PublicPathProperties {
+
+    private List<String> publicPaths = new ArrayList<>(List.of("/api/public/**"));
+
+    // Public only on the management port (management.server.port), e.g. the Prometheus scrape;
+    // ignored while the actuator is served on the application port
+    private List<String> managementPublicPaths = new ArrayList<>();
+}
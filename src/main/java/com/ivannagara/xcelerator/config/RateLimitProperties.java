@@ -0,0 +1,67 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import lombok.Data;
+
+/**
+ * Request rate limits, see [RateLimiter].
+ * Callers of public paths are limited per client IP, authenticated callers per uid.
+ * Bound from the "xcelerator.rate-limit.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Callers tracked at the same time, the most idle ones are forgotten first
+    private int maxKeys = 65_536;
+
+    // Public paths, per client IP
+    private Limit anonymous = new Limit(20, 2);
+
+    // Authenticated requests, per uid, unless the role has its own limit below
+    private Limit authenticated = new Limit(60, 10);
+
+    private Map<Role, Limit> roles = new EnumMap<>(Role.class);
+
+    // Checked in order, the first route whose pattern matches replaces the limits above
+    private List<Route> routes = new ArrayList<>();
+
+    @Data
+    public static class Limit {
+
+        // Requests allowed in a burst
+        private int capacity;
+
+        // Rate at which the burst allowance comes back
+        private double permitsPerSecond;
+
+        public Limit() {
+        }
+
+        public Limit(int capacity, double permitsPerSecond) {
+            this.capacity = capacity;
+            this.permitsPerSecond = permitsPerSecond;
+        }
+    }
+
+    @Data
+    public static class Route {
+
+        // Spring path pattern, e.g. /api/public/register or /api/admin/**
+        private String pattern;
+
+        private int capacity;
+
+        private double permitsPerSecond;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the queue that creates the Firestore profile of a newly registered user,
+ * see [RegistrationPipeline]. Bound from the "xcelerator.registration.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.registration")
+public class RegistrationProperties {
+
+    // Threads writing profiles
+    private int workers = 4;
+
+    // Profiles waiting for a worker. When it is full the registering request writes its own profile.
+    private int queueCapacity = 10_000;
+
+    // Attempts per profile before it goes to the dead-letter log
+    private int maxAttempts = 5;
+
+    // Wait before the first retry, doubled after every failed attempt up to the maximum
+    private Duration initialBackoff = Duration.ofMillis(200);
+    private Duration maxBackoff = Duration.ofSeconds(10);
+
+    // Longest a single write may take before it counts as failed
+    private Duration writeTimeout = Duration.ofSeconds(5);
+}
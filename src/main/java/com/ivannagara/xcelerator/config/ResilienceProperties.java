@@ -0,0 +1,54 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Deadlines, bulkheads and circuit breakers around the Firebase calls, one set per
+ * backend, see [CallGuard]. Bound from the "xcelerator.resilience.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.resilience")
+public class ResilienceProperties {
+
+    // Off, calls go straight to the SDK without a deadline, limit or breaker
+    private boolean enabled = true;
+
+    private Backend auth = new Backend(Duration.ofSeconds(3), 100);
+
+    private Backend firestore = new Backend(Duration.ofSeconds(2), 200);
+
+    @Data
+    public static class Backend {
+
+        // Longest a single call may take, it is cancelled and counts as failed after that
+        private Duration timeout;
+
+        // Calls in flight at the same time, further calls are rejected right away
+        private int maxConcurrentCalls;
+
+        // The breaker opens once this share of the last window-size calls failed...
+        private double failureRateThreshold = 0.5;
+        private int windowSize = 50;
+
+        // ...provided at least this many calls were made since it last closed
+        private int minimumCalls = 20;
+
+        // Time the breaker stays open (every call rejected) before letting trial calls through
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        // Trial calls that must all succeed for the breaker to close again
+        private int halfOpenCalls = 3;
+
+        public Backend() {
+        }
+
+        public Backend(Duration timeout, int maxConcurrentCalls) {
+            this.timeout = timeout;
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+    }
+}
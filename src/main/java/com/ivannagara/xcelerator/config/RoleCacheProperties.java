@@ -0,0 +1,46 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the uid -> [Role] cache used when authenticating requests.
+ * Bound from the "xcelerator.roles.cache.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.roles.cache")
+public class RoleCacheProperties {
+
+    // Turn the cache off to read the role from Firestore on every request
+    private boolean enabled = true;
+
+    // Maximum number of uids kept in memory
+    private int maxEntries = 100_000;
+
+    // Subscribe to the "users" collection so role changes made anywhere are picked up.
+    // Without the listener only writes made through this instance, or announced by another
+    // one over the invalidation bus (see InvalidationBusProperties), invalidate the cache.
+    // The cost: the listener's first snapshot (at startup, and again after every re-subscribe)
+    // downloads every user document, one billed read each, and every later change of any user
+    // is streamed to every instance. Turn it off for large collections when all writers go
+    // through this service and the invalidation bus connects the instances.
+    private boolean listen = true;
+
+    // A failed listener is subscribed again after this long, doubled per failure in a row up to
+    // the max; the cache is bypassed meanwhile
+    private Duration listenRetryBackoff = Duration.ofSeconds(1);
+    private Duration maxListenRetryBackoff = Duration.ofMinutes(5);
+
+    // Bulk-load the roles of existing users in the background at startup
+    private boolean warmUp = false;
+
+    // Number of documents read per warm-up query
+    private int warmUpPageSize = 1000;
+
+    // How old a role read may be to still be served when Firestore can't be read (errors,
+    // timeouts, open breaker). After that the request falls back to STAFF.
+    private Duration staleIfError = Duration.ofMinutes(5);
+}
@@ -0,0 +1,30 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.ivannagara.xcelerator.model.RoleSource;
+
+import lombok.Data;
+
+/**
+ * Settings for where user roles are stored and read.
+ * Bound from the "xcelerator.roles.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.roles")
+public class RoleSourceProperties {
+
+    // Any mode other than FIRESTORE also writes the role as a custom claim
+    private RoleSource source = RoleSource.FIRESTORE;
+
+    private Backfill backfill = new Backfill();
+
+    @Data
+    public static class Backfill {
+        // Users read and updated per round, at most 100 (the getUsers limit)
+        private int batchSize = 100;
+
+        // Maximum number of setCustomUserClaims calls per second
+        private double permitsPerSecond = 20;
+    }
+}
@@ -8,7 +8,13 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import com.ivannagara.xcelerator.security.AuthMetrics;
 import com.ivannagara.xcelerator.security.FirebaseAuthFilter;
+import com.ivannagara.xcelerator.security.PublicPathMatcher;
+import com.ivannagara.xcelerator.security.RateLimitFilter;
+import com.ivannagara.xcelerator.security.RateLimiter;
+
+import jakarta.servlet.DispatcherType;
 
 import lombok.RequiredArgsConstructor;
 
@@ -18,6 +24,9 @@ import lombok.RequiredArgsConstructor;
 public class SecurityConfig {
 
     private final FirebaseAuthFilter firebaseAuthFilter;
+    private final PublicPathMatcher publicPathMatcher;
+    private final RateLimiter rateLimiter;
+    private final AuthMetrics authMetrics;
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -32,14 +41,25 @@ public class SecurityConfig {
         
         // Set permissions on endpoints
         http.authorizeHttpRequests(auth -> {
-            // Public endpoints
-            auth.requestMatchers("/api/public/**").permitAll();
-            // Private endpoints
+            // Public endpoints ("xcelerator.security.public-paths", same matcher as the filter)
+            auth.requestMatchers(request -> publicPathMatcher.matches(request)).permitAll();
+            // The dispatch that finishes a streamed response (e.g. /api/admin/users/stream)
+            // was already authorized when the request came in
+            auth.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll();
+            // Private endpoints, authenticated by FirebaseAuthFilter putting the uid
+            // and ROLE_<role> of a verified token in the SecurityContext
             auth.anyRequest().authenticated();
         });
         
         // Add Firebase JWT filter
         http.addFilterBefore(firebaseAuthFilter, UsernamePasswordAuthenticationFilter.class);
+
+        // Rate limits: public paths per client IP before the token is looked at,
+        // everything else per uid once FirebaseAuthFilter has set it
+        http.addFilterBefore(new RateLimitFilter(RateLimitFilter.Stage.PUBLIC, rateLimiter, publicPathMatcher, authMetrics),
+            FirebaseAuthFilter.class);
+        http.addFilterAfter(new RateLimitFilter(RateLimitFilter.Stage.AUTHENTICATED, rateLimiter, publicPathMatcher, authMetrics),
+            FirebaseAuthFilter.class);
         
         return http.build();
     }
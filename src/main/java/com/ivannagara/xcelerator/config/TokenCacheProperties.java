@@ -0,0 +1,26 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the verified ID token cache used by [FirebaseAuthFilter].
+ * Bound from the "xcelerator.auth.token-cache.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.auth.token-cache")
+public class TokenCacheProperties {
+
+    // Turn the cache off to verify every token against Firebase again
+    private boolean enabled = true;
+
+    // Maximum number of verified tokens kept in memory
+    private int maxEntries = 10_000;
+
+    // Upper bound on how long a verified token is trusted, even when its
+    // "exp" claim is further away. Zero means "until the token expires".
+    private Duration safetyTtl = Duration.ofMinutes(10);
+}
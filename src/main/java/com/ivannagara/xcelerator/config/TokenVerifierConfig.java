@@ -0,0 +1,51 @@
+package com.ivannagara.xcelerator.config;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.auth.FirebaseAuth;
+import com.ivannagara.xcelerator.security.FilePublicKeySource;
+import com.ivannagara.xcelerator.security.FirebaseSdkTokenVerifier;
+import com.ivannagara.xcelerator.security.HttpPublicKeySource;
+import com.ivannagara.xcelerator.security.LocalTokenVerifier;
+import com.ivannagara.xcelerator.security.PublicKeySource;
+import com.ivannagara.xcelerator.security.PublicKeyStore;
+import com.ivannagara.xcelerator.security.TokenVerifier;
+
+/**
+ * Picks the [TokenVerifier] used by [FirebaseAuthFilter] from "xcelerator.auth.verifier.mode"
+ */
+@Configuration
+public class TokenVerifierConfig {
+
+    private static final String MODE = "xcelerator.auth.verifier.mode";
+
+    @Bean
+    @ConditionalOnProperty(name = MODE, havingValue = "SDK", matchIfMissing = true)
+    public TokenVerifier firebaseSdkTokenVerifier(FirebaseAuth firebaseAuth) {
+        return new FirebaseSdkTokenVerifier(firebaseAuth);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = MODE, havingValue = "LOCAL")
+    public PublicKeyStore publicKeyStore(TokenVerifierProperties properties, ObjectMapper objectMapper) {
+        PublicKeySource source = properties.getKeysFile() != null && !properties.getKeysFile().isBlank()
+            ? new FilePublicKeySource(Path.of(properties.getKeysFile()), properties.getMinRefreshInterval(), objectMapper)
+            : new HttpPublicKeySource(properties.getKeysUrl(), properties.getMinRefreshInterval(), objectMapper);
+        return new PublicKeyStore(source, properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = MODE, havingValue = "LOCAL")
+    public TokenVerifier localTokenVerifier(PublicKeyStore publicKeyStore, TokenVerifierProperties properties,
+            ObjectMapper objectMapper) {
+        if (properties.getProjectId() == null || properties.getProjectId().isBlank()) {
+            throw new IllegalStateException("xcelerator.auth.verifier.project-id is required in LOCAL mode");
+        }
+        return new LocalTokenVerifier(publicKeyStore, properties.getProjectId(), properties.getClockSkew(), objectMapper);
+    }
+}
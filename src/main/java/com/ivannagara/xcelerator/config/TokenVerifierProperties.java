@@ -0,0 +1,44 @@
+package com.ivannagara.xcelerator.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for how [FirebaseAuthFilter] verifies ID tokens.
+ * Bound from the "xcelerator.auth.verifier.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.auth.verifier")
+public class TokenVerifierProperties {
+
+    // SDK: FirebaseAuth.verifyIdToken, LOCAL: signature and claims checked here with prefetched keys
+    private Mode mode = Mode.SDK;
+
+    // Firebase project the tokens must be issued for (required in LOCAL mode)
+    private String projectId;
+
+    // Google's signing certificates for Firebase ID tokens
+    private String keysUrl = "https://www.googleapis.com/robot/v1/metadata/x509/securetoken@system.gserviceaccount.com";
+
+    // Read the keys from this JSON file ({"kid": "PEM certificate or public key"}) instead of keysUrl,
+    // for tests and environments without internet access
+    private String keysFile;
+
+    // Keys are fetched again this long before they expire
+    private Duration refreshAhead = Duration.ofMinutes(5);
+
+    // Refresh interval for the keys file, and the least time between two fetches
+    // (failed fetches and tokens signed with an unknown key)
+    private Duration minRefreshInterval = Duration.ofSeconds(30);
+
+    // Tolerated difference between our clock and the token issuer's
+    private Duration clockSkew = Duration.ofSeconds(30);
+
+    public enum Mode {
+        SDK,
+        LOCAL
+    }
+}
@@ -0,0 +1,35 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.contextpropagation.ObservationAwareSpanThreadLocalAccessor;
+
+/**
+ * Carries the trace context over to other threads.
+ *
+ * Only observations are propagated out of the box. Registering the span accessor also carries
+ * spans opened directly on the [Tracer] (see [AuthTracing] and [UserService]), so work handed
+ * to the application task executor or completed from an SDK callback (see [FirebaseFutures])
+ * stays in the trace of the request that started it.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public ObservationAwareSpanThreadLocalAccessor spanThreadLocalAccessor(Tracer tracer) {
+        ObservationAwareSpanThreadLocalAccessor accessor = new ObservationAwareSpanThreadLocalAccessor(tracer);
+        ContextRegistry.getInstance().registerThreadLocalAccessor(accessor);
+        return accessor;
+    }
+
+    // Picked up by the auto-configured application task executor
+    @Bean
+    public TaskDecorator contextPropagatingTaskDecorator() {
+        return new ContextPropagatingTaskDecorator();
+    }
+}
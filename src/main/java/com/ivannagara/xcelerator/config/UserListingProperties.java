@@ -0,0 +1,23 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Page sizes for listing the users collection through GET /api/admin/users.
+ * Bound from the "xcelerator.admin.users.*" properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xcelerator.admin.users")
+public class UserListingProperties {
+
+    // Used when the caller doesn't pass a pageSize
+    private int defaultPageSize = 50;
+
+    // Upper bound for the pageSize a caller may ask for
+    private int maxPageSize = 500;
+
+    // Documents read per query while streaming, only one such page is held in memory
+    private int streamPageSize = 500;
+}
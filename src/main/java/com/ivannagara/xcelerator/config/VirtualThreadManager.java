@@ -0,0 +1,32 @@
+package com.ivannagara.xcelerator.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.ThreadManager;
+
+/**
+ * Runs the Firebase Admin SDK's background work and callbacks on virtual threads
+ * instead of its default pool of platform threads
+ */
+class VirtualThreadManager extends ThreadManager {
+
+    private final ThreadFactory threadFactory = Thread.ofVirtual().name("firebase-", 0).factory();
+
+    @Override
+    protected ExecutorService getExecutor(FirebaseApp app) {
+        return Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
+    @Override
+    protected void releaseExecutor(FirebaseApp app, ExecutorService executor) {
+        executor.shutdownNow();
+    }
+
+    @Override
+    protected ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+}
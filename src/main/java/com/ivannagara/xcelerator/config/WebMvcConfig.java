@@ -0,0 +1,22 @@
+package com.ivannagara.xcelerator.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.ivannagara.xcelerator.security.RequiredRoleInterceptor;
+
+import lombok.RequiredArgsConstructor;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final RequiredRoleInterceptor requiredRoleInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Checks @RequiredRole on the controllers, see [RoleSecurityAspect] for other beans
+        registry.addInterceptor(requiredRoleInterceptor);
+    }
+}
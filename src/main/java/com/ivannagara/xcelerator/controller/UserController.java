@@ -2,36 +2,68 @@ package com.ivannagara.xcelerator.controller;
 
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.auth.AuthErrorCode;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.UserRecord;
+import com.ivannagara.xcelerator.config.ProfileLookupProperties;
+import com.ivannagara.xcelerator.config.UserListingProperties;
 import com.ivannagara.xcelerator.model.Role;
+import com.ivannagara.xcelerator.model.UserProfile;
+import com.ivannagara.xcelerator.model.UserProfileResponse;
 import com.ivannagara.xcelerator.security.RequiredRole;
+import com.ivannagara.xcelerator.service.BulkUserImportService;
+import com.ivannagara.xcelerator.service.BulkUserImportService.ImportFormat;
+import com.ivannagara.xcelerator.service.CallRejectedException;
+import com.ivannagara.xcelerator.service.RoleClaimBackfillJob;
 import com.ivannagara.xcelerator.service.UserService;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
+@Slf4j
 public class UserController {
 
     private final UserService userService;
+    private final RoleClaimBackfillJob roleClaimBackfillJob;
+    private final BulkUserImportService bulkUserImportService;
+    private final ProfileLookupProperties profileLookupProperties;
+    private final UserListingProperties userListingProperties;
+    private final ObjectMapper objectMapper;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     @GetMapping("/public/health")
     public ResponseEntity<Map<String, String>> checkHealth() {
@@ -50,14 +82,9 @@ public class UserController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Email and password are required"));
             }
 
+            // Returns once the Auth user exists, the profile is queued (see RegistrationPipeline)
             UserRecord userRecord = userService.createUser(email, password);
 
-            Map<String, Object> userData = new HashMap<String, Object>();
-            userData.put("email", email);
-            userData.put("createdAt", System.currentTimeMillis());
-
-            // userService.saveUserProfile(userRecord.getUid(), userData);
-
             Map<String, String> response = new HashMap<String, String>();
             response.put("message", "Successfully registered user");
             response.put("userId", userRecord.getUid());
@@ -69,19 +96,80 @@ public class UserController {
 
     @GetMapping("/profile/{userId}")
     public ResponseEntity<?> getUserProfile(@PathVariable String userId) {
+        // Start both lookups right away, the endpoint then waits for the slower one only
+        CompletableFuture<UserRecord> userFuture = userService.getUserByIdAsync(userId)
+            .orTimeout(profileLookupProperties.getAuthTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        CompletableFuture<UserProfile> profileFuture = userService.getUserProfileFromFirestoreAsync(userId)
+            .orTimeout(profileLookupProperties.getFirestoreTimeout().toMillis(), TimeUnit.MILLISECONDS);
+
+        UserRecord userRecord;
         try {
-            UserRecord userRecord = userService.getUserById(userId);
-            Map<String, Object> userProfile = userService.getUserProfileSafe(userId);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("uid", userRecord.getUid());
-            response.put("email", userRecord.getEmail());
-            response.put("displayName", userRecord.getDisplayName());
-            response.put("profile", userProfile);
-            
-            return ResponseEntity.ok(response);
-        } catch (FirebaseAuthException e) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            userRecord = userFuture.join();
+        } catch (CompletionException e) {
+            profileFuture.cancel(true);
+            if (e.getCause() instanceof TimeoutException) {
+                return ResponseEntity.status(504).body(Map.of("error", "Timed out looking up user"));
+            }
+            if (e.getCause() instanceof CallRejectedException rejected) {
+                return unavailable(rejected);
+            }
+            if (e.getCause() instanceof FirebaseAuthException authException
+                    && authException.getAuthErrorCode() == AuthErrorCode.USER_NOT_FOUND) {
+                return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            }
+            // Auth is down, out of quota or failing otherwise, the user may well exist
+            log.error("User lookup failed for {}", userId, e.getCause());
+            return ResponseEntity.status(502).body(Map.of("error", "Failed to look up user"));
+        }
+
+        // A slow or failing Firestore read still returns the Auth data, marked as partial
+        UserProfile userProfile;
+        boolean partial = false;
+        try {
+            userProfile = profileFuture.join();
+        } catch (CompletionException e) {
+            log.warn("Returning partial profile for user {}: {}", userId, e.getCause().toString());
+            userProfile = UserProfile.EMPTY;
+            partial = true;
+        }
+
+        return ResponseEntity.ok(new UserProfileResponse(
+            userRecord.getUid(),
+            userRecord.getEmail(),
+            userRecord.getDisplayName(),
+            userProfile,
+            partial));
+    }
+
+    /**
+     * Profiles of many users in one call, e.g. for rendering a user list.
+     * Body: {"uids": ["uid1", "uid2", ...]}
+     */
+    @PostMapping("/profiles/batch")
+    public ResponseEntity<?> getUserProfiles(@RequestBody Map<String, List<String>> body) {
+        List<String> uids = body.get("uids");
+        if (uids == null || uids.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "uids is required"));
+        }
+        if (uids.size() > profileLookupProperties.getBatchMaxIds()) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                "At most " + profileLookupProperties.getBatchMaxIds() + " uids per request"));
+        }
+        if (uids.stream().anyMatch(uid -> uid == null || uid.isBlank() || uid.length() > 128 || uid.contains("/"))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid uid"));
+        }
+
+        try {
+            return ResponseEntity.ok(userService.getUserProfilesAsync(uids).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return ResponseEntity.status(504).body(Map.of("error", "Timed out looking up users"));
+            }
+            if (e.getCause() instanceof CallRejectedException rejected) {
+                return unavailable(rejected);
+            }
+            log.error("Batch profile lookup failed", e.getCause());
+            return ResponseEntity.status(502).body(Map.of("error", "Failed to look up users"));
         }
     }
 
@@ -169,10 +257,122 @@ public class UserController {
 
     @RequiredRole(Role.ADMIN)
     @GetMapping("/admin/users")
-    public ResponseEntity<?> getAllUsers() {
-        // This would be implemented to query all users from Firestore
-        // For now, we'll return a placeholder
-        return ResponseEntity.ok(Map.of("message", "This endpoint would return all users"));
+    public ResponseEntity<?> getAllUsers(
+        @RequestParam(required = false) String role,
+        @RequestParam(required = false) Integer pageSize,
+        @RequestParam(required = false) String pageToken
+    ) {
+        Role roleFilter;
+        try {
+            roleFilter = role == null ? null : Role.valueOf(role.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            return invalidRoleResponse();
+        }
+
+        int size = pageSize == null
+            ? userListingProperties.getDefaultPageSize()
+            : Math.max(1, Math.min(pageSize, userListingProperties.getMaxPageSize()));
+
+        try {
+            return ResponseEntity.ok(userService.listUserProfiles(roleFilter, size, pageToken));
+        } catch(IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid page token"));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(503).body(Map.of("error", "Interrupted while listing users"));
+        } catch(ExecutionException e) {
+            log.error("Error listing users", e);
+            return ResponseEntity.status(502).body(Map.of("error", "Failed to list users"));
+        }
+    }
+
+    /**
+     * Streams every user (optionally of one role) as newline-delimited JSON,
+     * writing each page of documents to the response as soon as Firestore returns it
+     */
+    @RequiredRole(Role.ADMIN)
+    @GetMapping(value = "/admin/users/stream", produces = "application/x-ndjson")
+    public ResponseEntity<?> streamAllUsers(@RequestParam(required = false) String role) {
+        Role roleFilter;
+        try {
+            roleFilter = role == null ? null : Role.valueOf(role.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            return invalidRoleResponse();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            // One document per line, no separator between root values
+            generator.setRootValueSeparator(null);
+            try (generator) {
+                userService.streamUserProfiles(roleFilter, userListingProperties.getStreamPageSize(), users -> {
+                    for (UserProfile user : users) {
+                        generator.writeObject(user);
+                        generator.writeRaw('\n');
+                    }
+                    // Flush once per page instead of after every document
+                    generator.flush();
+                });
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while streaming users", e);
+            } catch(ExecutionException e) {
+                throw new IOException("Failed to stream users", e);
+            }
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private static ResponseEntity<?> invalidRoleResponse() {
+        return ResponseEntity.badRequest().body(Map.of(
+            "error", "Invalid role. Must be one of: " +
+                Arrays.stream(Role.values())
+                    .map(Role::name)
+                    .collect(Collectors.joining(", "))));
+    }
+
+    /**
+     * Imports users from a CSV (with header) or NDJSON file.
+     * Returns right away with a job id to poll for progress and per-row errors.
+     */
+    @RequiredRole(Role.SUPER_ADMIN)
+    @PostMapping(value = "/admin/users/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importUsers(@RequestParam("file") MultipartFile file) {
+        ImportFormat format = ImportFormat.of(file.getOriginalFilename(), file.getContentType());
+        try (InputStream input = file.getInputStream()) {
+            return ResponseEntity.accepted().body(bulkUserImportService.start(input, format));
+        } catch(IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read upload: " + e.getMessage()));
+        }
+    }
+
+    @RequiredRole(Role.SUPER_ADMIN)
+    @GetMapping("/admin/users/import/{jobId}")
+    public ResponseEntity<?> getImportStatus(@PathVariable String jobId) {
+        return bulkUserImportService.getStatus(jobId)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error", "Import not found")));
+    }
+
+    @RequiredRole(Role.SUPER_ADMIN)
+    @PostMapping("/admin/users/import/{jobId}/resume")
+    public ResponseEntity<?> resumeImport(@PathVariable String jobId) {
+        return bulkUserImportService.resume(jobId)
+            .<ResponseEntity<?>>map(status -> ResponseEntity.accepted().body(status))
+            .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error", "Import not found")));
+    }
+
+    @RequiredRole(Role.SUPER_ADMIN)
+    @PostMapping("/admin/roles/backfill")
+    public ResponseEntity<?> startRoleClaimBackfill() {
+        return ResponseEntity.accepted().body(roleClaimBackfillJob.start());
+    }
+
+    @RequiredRole(Role.SUPER_ADMIN)
+    @GetMapping("/admin/roles/backfill")
+    public ResponseEntity<?> getRoleClaimBackfillStatus() {
+        return ResponseEntity.ok(roleClaimBackfillJob.getStatus());
     }
 
     @GetMapping("/roles")
@@ -183,4 +383,15 @@ public class UserController {
         
         return ResponseEntity.ok(Map.of("roles", roles));
     }
+
+    /**
+     * A Firebase backend's breaker is open or its bulkhead full (see [CallGuard]), e.g. when registering
+     */
+    @ExceptionHandler(CallRejectedException.class)
+    public ResponseEntity<?> unavailable(CallRejectedException e) {
+        log.warn("Responding 503: {}", e.getMessage());
+        return ResponseEntity.status(503)
+            .header("Retry-After", "1")
+            .body(Map.of("error", "Service temporarily unavailable, please retry"));
+    }
 }
@@ -0,0 +1,17 @@
+package com.ivannagara.xcelerator.model;
+
+/**
+ * Where [FirebaseAuthFilter] takes the role of an authenticated user from
+ */
+public enum RoleSource {
+    // Read the "role" field of the Firestore users document (through the role cache)
+    FIRESTORE,
+    // Read the "role" custom claim of the ID token, users without the claim are STAFF
+    CLAIM,
+    // Read the custom claim, and fall back to Firestore for users that don't have it yet
+    CLAIM_WITH_FIRESTORE_FALLBACK;
+
+    public boolean usesClaims() {
+        return this != FIRESTORE;
+    }
+}
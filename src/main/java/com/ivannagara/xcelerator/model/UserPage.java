@@ -0,0 +1,10 @@
+package com.ivannagara.xcelerator.model;
+
+import java.util.List;
+
+/**
+ * One page of user profiles. Pass [nextPageToken] back to get the following page,
+ * it is null on the last page.
+ */
+public record UserPage(List<UserProfile> users, String nextPageToken) {
+}
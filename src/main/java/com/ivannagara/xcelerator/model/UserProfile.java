@@ -0,0 +1,156 @@
+package com.ivannagara.xcelerator.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.cloud.firestore.DocumentSnapshot;
+
+/**
+ * Profile stored in the Firestore "users" collection.
+ *
+ * The fields every profile has are typed, anything else a client saved is kept in
+ * [attributes] and written back flat next to them, so the JSON shape is unchanged.
+ * A profile can't be changed once built, the [ProfileCache] hands the same one to every caller.
+ */
+@JsonSerialize(using = UserProfileSerializer.class)
+public record UserProfile(
+    String uid,
+    String email,
+    String displayName,
+    Role role,
+    Long createdAt,
+    Map<String, Object> attributes
+) {
+
+    // Returned for users that have no profile document, serializes as {}
+    public static final UserProfile EMPTY = new UserProfile(null, null, null, null, null, Map.of());
+
+    public UserProfile {
+        attributes = attributes == null ? Map.of() : frozen(attributes);
+    }
+
+    /**
+     * [DocumentSnapshot.toObject] can't build records with this Firestore version,
+     * so the snapshot data is mapped by hand (which also skips the reflective bean mapper)
+     */
+    public static UserProfile from(DocumentSnapshot document) {
+        if (!document.exists()) {
+            return EMPTY;
+        }
+        return from(document.getId(), document.getData());
+    }
+
+    public static UserProfile from(String documentId, Map<String, Object> data) {
+        String uid = documentId;
+        String email = null;
+        String displayName = null;
+        Role role = null;
+        Long createdAt = null;
+        Map<String, Object> attributes = null;
+
+        // A typed field holding a value of another type (e.g. a Firestore Timestamp as createdAt)
+        // is kept in the attributes instead of being dropped
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            Object value = field.getValue();
+            boolean understood = value == null;
+            switch (field.getKey()) {
+                case "uid" -> {
+                    // The document id stands in for a uid that isn't a string, both would be written as "uid"
+                    uid = value instanceof String s ? s : uid;
+                    understood = true;
+                }
+                case "email" -> {
+                    if (value instanceof String s) {
+                        email = s;
+                        understood = true;
+                    }
+                }
+                case "displayName" -> {
+                    if (value instanceof String s) {
+                        displayName = s;
+                        understood = true;
+                    }
+                }
+                case "createdAt" -> {
+                    if (value instanceof Number n) {
+                        createdAt = n.longValue();
+                        understood = true;
+                    }
+                }
+                case "role" -> {
+                    role = parseRole(value);
+                    understood |= role != null;
+                }
+                default -> {
+                    attributes = put(attributes, field.getKey(), value);
+                    understood = true;
+                }
+            }
+            if (!understood) {
+                attributes = put(attributes, field.getKey(), value);
+            }
+        }
+
+        return new UserProfile(uid, email, displayName, role, createdAt, attributes == null ? Map.of() : attributes);
+    }
+
+    /**
+     * Returns this profile with the given fields laid over it
+     */
+    public UserProfile withUpdates(Map<String, Object> updates) {
+        Map<String, Object> merged = toMap();
+        merged.putAll(updates);
+        return from(uid, merged);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>(attributes);
+        if (uid != null) map.put("uid", uid);
+        if (email != null) map.put("email", email);
+        if (displayName != null) map.put("displayName", displayName);
+        if (role != null) map.put("role", role.name());
+        if (createdAt != null) map.put("createdAt", createdAt);
+        return map;
+    }
+
+    private static Role parseRole(Object value) {
+        if (!(value instanceof String roleStr)) {
+            return null;
+        }
+        try {
+            return Role.valueOf(roleStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Unmodifiable copies all the way down (Firestore maps and arrays nest), null values are kept
+    private static Map<String, Object> frozen(Map<?, ?> map) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        map.forEach((key, value) -> copy.put(String.valueOf(key), frozen(value)));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static Object frozen(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return frozen(map);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(element -> copy.add(frozen(element)));
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    private static Map<String, Object> put(Map<String, Object> attributes, String key, Object value) {
+        Map<String, Object> map = attributes == null ? new LinkedHashMap<>() : attributes;
+        map.put(key, value);
+        return map;
+    }
+}
@@ -0,0 +1,11 @@
+package com.ivannagara.xcelerator.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of POST /api/profiles/batch: one [UserProfileResponse] per uid found in Firebase Auth,
+ * keyed by uid in request order, and the uids that don't exist in [missing].
+ */
+public record UserProfileBatch(Map<String, UserProfileResponse> profiles, List<String> missing) {
+}
@@ -0,0 +1,8 @@
+package com.ivannagara.xcelerator.model;
+
+/**
+ * Body of GET /api/profile/{userId}: the Firebase Auth record joined with the Firestore profile.
+ * [partial] is true when the profile could not be read in time and is left empty.
+ */
+public record UserProfileResponse(String uid, String email, String displayName, UserProfile profile, boolean partial) {
+}
@@ -0,0 +1,70 @@
+package com.ivannagara.xcelerator.model;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes a [UserProfile] field by field with pre-encoded names and role values,
+ * instead of letting Jackson introspect the record (or hash through a map) on every response.
+ * Null fields are left out, the attributes are written flat after the typed fields.
+ */
+public class UserProfileSerializer extends StdSerializer<UserProfile> {
+
+    private static final SerializableString UID = new SerializedString("uid");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString DISPLAY_NAME = new SerializedString("displayName");
+    private static final SerializableString ROLE = new SerializedString("role");
+    private static final SerializableString CREATED_AT = new SerializedString("createdAt");
+
+    // Indexed by Role.ordinal()
+    private static final SerializableString[] ROLE_NAMES = new SerializableString[Role.values().length];
+
+    static {
+        for (Role role : Role.values()) {
+            ROLE_NAMES[role.ordinal()] = new SerializedString(role.name());
+        }
+    }
+
+    public UserProfileSerializer() {
+        super(UserProfile.class);
+    }
+
+    @Override
+    public void serialize(UserProfile profile, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(profile);
+
+        if (profile.uid() != null) {
+            generator.writeFieldName(UID);
+            generator.writeString(profile.uid());
+        }
+        if (profile.email() != null) {
+            generator.writeFieldName(EMAIL);
+            generator.writeString(profile.email());
+        }
+        if (profile.displayName() != null) {
+            generator.writeFieldName(DISPLAY_NAME);
+            generator.writeString(profile.displayName());
+        }
+        if (profile.role() != null) {
+            generator.writeFieldName(ROLE);
+            generator.writeString(ROLE_NAMES[profile.role().ordinal()]);
+        }
+        if (profile.createdAt() != null) {
+            generator.writeFieldName(CREATED_AT);
+            generator.writeNumber(profile.createdAt());
+        }
+
+        for (Map.Entry<String, Object> attribute : profile.attributes().entrySet()) {
+            generator.writeFieldName(attribute.getKey());
+            provider.defaultSerializeValue(attribute.getValue(), generator);
+        }
+
+        generator.writeEndObject();
+    }
+}
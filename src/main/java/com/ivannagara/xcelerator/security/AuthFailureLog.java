@@ -0,0 +1,143 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.firebase.auth.FirebaseAuthException;
+import com.ivannagara.xcelerator.config.AuthFailureLogProperties;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Logs rejected tokens and failed role lookups without flooding the log.
+ *
+ * The first failure of each reason (the Firebase error code) in an interval is logged as one
+ * WARN line, without the stack trace unless the "xcelerator.auth.failures" logger is at DEBUG.
+ * The rest are only counted, and at the end of the interval one line sums them up, e.g.
+ * "Suppressed 1520 authentication failures (one logged per reason every 60 s): INVALID_ID_TOKEN=1520".
+ * So a scan of bad tokens costs a counter increment per request instead of a stack trace.
+ */
+@Component
+public class AuthFailureLog {
+
+    private static final Logger FAILURE_LOG = LoggerFactory.getLogger("xcelerator.auth.failures");
+
+    // Reasons come from Firebase's error code enums, this only guards against surprises
+    private static final int MAX_REASONS = 64;
+    private static final String OTHER = "OTHER";
+    static final String ROLE_LOOKUP_FAILED = "ROLE_LOOKUP_FAILED";
+
+    private final long intervalNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, Reason> reasons = new ConcurrentHashMap<>();
+    private final LongAdder suppressedTotal = new LongAdder();
+
+    private ScheduledExecutorService summaryScheduler;
+
+    @Autowired
+    public AuthFailureLog(AuthFailureLogProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    AuthFailureLog(AuthFailureLogProperties properties, LongSupplier clock) {
+        this.intervalNanos = properties.getInterval().toNanos();
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void start() {
+        summaryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auth-failure-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        summaryScheduler.scheduleAtFixedRate(this::summarize, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        summaryScheduler.shutdownNow();
+        summarize();
+    }
+
+    public void invalidToken(FirebaseAuthException e) {
+        String reason = e.getAuthErrorCode() != null ? e.getAuthErrorCode().name()
+            : e.getErrorCode() != null ? e.getErrorCode().name() : OTHER;
+        record(reason, "Authentication failed", e);
+    }
+
+    public void roleLookupFailed(Throwable e) {
+        record(ROLE_LOOKUP_FAILED, "Role lookup failed, defaulting to STAFF", e);
+    }
+
+    // Failures only counted instead of logged, since startup
+    public long getSuppressedCount() {
+        return suppressedTotal.sum();
+    }
+
+    private void record(String key, String message, Throwable e) {
+        Reason reason = reason(key);
+        long now = clock.getAsLong();
+        long loggedAt = reason.loggedAt.get();
+        if (now - loggedAt < intervalNanos || !reason.loggedAt.compareAndSet(loggedAt, now)) {
+            reason.suppressed.increment();
+            suppressedTotal.increment();
+            return;
+        }
+
+        if (FAILURE_LOG.isDebugEnabled()) {
+            FAILURE_LOG.debug("{} ({})", message, key, e);
+        } else {
+            FAILURE_LOG.warn("{} ({}): {}", message, key, e.toString());
+        }
+    }
+
+    private Reason reason(String key) {
+        Reason reason = reasons.get(key);
+        if (reason != null) {
+            return reason;
+        }
+        String bounded = reasons.size() < MAX_REASONS ? key : OTHER;
+        return reasons.computeIfAbsent(bounded, ignored -> new Reason(clock.getAsLong() - intervalNanos));
+    }
+
+    void summarize() {
+        long total = 0;
+        StringJoiner counts = new StringJoiner(", ");
+        for (Map.Entry<String, Reason> entry : reasons.entrySet()) {
+            long suppressed = entry.getValue().suppressed.sumThenReset();
+            if (suppressed > 0) {
+                total += suppressed;
+                counts.add(entry.getKey() + "=" + suppressed);
+            }
+        }
+        if (total > 0) {
+            FAILURE_LOG.warn("Suppressed {} authentication failures (one logged per reason every {} s): {}",
+                total, TimeUnit.NANOSECONDS.toSeconds(intervalNanos), counts);
+        }
+    }
+
+    private static final class Reason {
+
+        final AtomicLong loggedAt;
+        final LongAdder suppressed = new LongAdder();
+
+        Reason(long loggedAt) {
+            this.loggedAt = new AtomicLong(loggedAt);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters recorded while authenticating and authorizing requests.
+ * The per-request timers are registered once here, rejections are rare enough to be looked up when they happen.
+ *
+ * - xcelerator.auth.verify: token verification on a token cache miss, tagged outcome=success|failure
+ * - xcelerator.auth.role: resolving the caller's role (claim, role cache or Firestore read)
+ * - xcelerator.auth.rejections: 401/403/429 answers, tagged status, reason and source
+ */
+@Component
+public class AuthMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer verifySuccess;
+    private final Timer verifyFailure;
+    private final Timer roleResolve;
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.verifySuccess = verifyTimer(registry, "success");
+        this.verifyFailure = verifyTimer(registry, "failure");
+        this.roleResolve = Timer.builder("xcelerator.auth.role")
+            .description("Time to resolve the role of the caller")
+            .register(registry);
+    }
+
+    public void recordVerify(long startNanos, boolean success) {
+        (success ? verifySuccess : verifyFailure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRoleResolve(long startNanos) {
+        roleResolve.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rejected(String source, Rejection rejection) {
+        Counter.builder("xcelerator.auth.rejections")
+            .description("Requests refused by authentication or authorization")
+            .tag("source", source)
+            .tag("status", String.valueOf(rejection.status))
+            .tag("reason", rejection.name().toLowerCase())
+            .register(registry)
+            .increment();
+    }
+
+    private static Timer verifyTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("xcelerator.auth.verify")
+            .description("Time to verify a Firebase ID token that wasn't cached")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    public enum Rejection {
+        MISSING_HEADER(401),
+        INVALID_TOKEN(401),
+        NO_ROLE(403),
+        INSUFFICIENT_ROLE(403),
+        RATE_LIMITED(429);
+
+        private final int status;
+
+        Rejection(int status) {
+            this.status = status;
+        }
+    }
+}
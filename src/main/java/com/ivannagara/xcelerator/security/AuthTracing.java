@@ -0,0 +1,72 @@
+package com.ivannagara.xcelerator.security;
+
+import org.springframework.stereotype.Component;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+
+/**
+ * Spans recorded while authenticating and authorizing requests, children of the HTTP server span.
+ * Uids never leave the process in clear, spans carry [uidHash] instead.
+ *
+ * - auth.verify: token verification on a token cache miss
+ * - auth.role: resolving the caller's role (claim, role cache or Firestore read)
+ * - auth.authorize: the @RequiredRole check, tagged source, endpoint, required role and outcome
+ */
+@Component
+public class AuthTracing {
+
+    public static final String UID_HASH = "xcelerator.uid.hash";
+    public static final String ROLE = "xcelerator.role";
+
+    private final Tracer tracer;
+
+    public AuthTracing(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public Span startVerify() {
+        return tracer.nextSpan().name("auth.verify").start();
+    }
+
+    public Span startRoleResolve(String uid) {
+        Span span = tracer.nextSpan().name("auth.role");
+        if (!span.isNoop()) {
+            span.tag(UID_HASH, uidHash(uid));
+        }
+        return span.start();
+    }
+
+    public Span startAuthorize(String source, String endpoint, Role requiredRole, Role userRole) {
+        return tracer.nextSpan().name("auth.authorize")
+            .tag("source", source)
+            .tag("endpoint", endpoint == null ? "unknown" : endpoint)
+            .tag("required.role", requiredRole.name())
+            .tag(ROLE, userRole == null ? "none" : userRole.name())
+            .start();
+    }
+
+    public Tracer.SpanInScope withSpan(Span span) {
+        return tracer.withSpan(span);
+    }
+
+    /**
+     * Tags the span of the current request with who made it, once it is known
+     */
+    public void tagCaller(String uid, Role role) {
+        Span current = tracer.currentSpan();
+        if (current != null && !current.isNoop()) {
+            current.tag(UID_HASH, uidHash(uid));
+            current.tag(ROLE, role.name());
+        }
+    }
+
+    /**
+     * Same uid, same hash, so a user's requests can still be found across traces
+     */
+    public static String uidHash(String uid) {
+        return Long.toHexString(VerifiedTokenCache.hash(uid));
+    }
+}
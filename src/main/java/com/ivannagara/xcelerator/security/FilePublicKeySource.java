@@ -0,0 +1,33 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the keys from a local JSON file in the same {"kid": "PEM"} format Google serves,
+ * re-read every refresh interval so the file can be replaced while running
+ */
+public class FilePublicKeySource implements PublicKeySource {
+
+    private final Path file;
+    private final Duration refreshInterval;
+    private final ObjectMapper objectMapper;
+
+    public FilePublicKeySource(Path file, Duration refreshInterval, ObjectMapper objectMapper) {
+        this.file = file;
+        this.refreshInterval = refreshInterval;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public KeySet fetch() throws IOException {
+        Map<String, String> pemByKeyId = objectMapper.readValue(file.toFile(), new TypeReference<>() { });
+        return new KeySet(PublicKeySource.parseKeys(pemByKeyId), Instant.now().plus(refreshInterval));
+    }
+}
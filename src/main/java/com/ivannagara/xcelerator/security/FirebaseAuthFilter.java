@@ -1,14 +1,12 @@
 package com.ivannagara.xcelerator.security;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.DocumentReference;
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
-import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
 import com.ivannagara.xcelerator.model.Role;
+import com.ivannagara.xcelerator.service.RoleResolver;
 
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,11 +14,13 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -29,11 +29,16 @@ import java.util.concurrent.ExecutionException;
 @Slf4j
 public class FirebaseAuthFilter extends OncePerRequestFilter {
 
-    private final FirebaseAuth firebaseAuth;
-    private final Firestore firestore;
-    
+    // See [TokenVerifierConfig], the SDK or the local verifier
+    private final TokenVerifier tokenVerifier;
+    private final VerifiedTokenCache tokenCache;
+    private final RoleResolver roleResolver;
     // Paths that don't require authentication
-    private final List<String> publicPaths = new ArrayList<>(List.of("/api/public/**"));
+    private final PublicPathMatcher publicPathMatcher;
+    private final AuthMetrics authMetrics;
+    private final AuthTracing authTracing;
+    // Rate-limited, a flood of bad tokens shouldn't mean a stack trace per request
+    private final AuthFailureLog authFailureLog;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -43,7 +48,7 @@ public class FirebaseAuthFilter extends OncePerRequestFilter {
         log.debug("Processing request for path: {}", path);
         
         // Skip authentication for public paths
-        if (isPublicPath(path)) {
+        if (publicPathMatcher.matches(request)) {
             log.debug("Public path detected, skipping authentication: {}", path);
             filterChain.doFilter(request, response);
             return;
@@ -53,6 +58,7 @@ public class FirebaseAuthFilter extends OncePerRequestFilter {
         
         if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
             log.debug("Missing or invalid Authorization header");
+            authMetrics.rejected("filter", AuthMetrics.Rejection.MISSING_HEADER);
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.getWriter().write("Missing or invalid Authorization header");
             return;
@@ -61,7 +67,23 @@ public class FirebaseAuthFilter extends OncePerRequestFilter {
         String token = authorizationHeader.substring(7);
         
         try {
-            FirebaseToken decodedToken = firebaseAuth.verifyIdToken(token);
+            // Only the first request with a token pays for the full verification
+            FirebaseToken decodedToken = tokenCache.get(token);
+            if (decodedToken == null) {
+                long verifyStart = System.nanoTime();
+                Span span = authTracing.startVerify();
+                try (Tracer.SpanInScope ignored = authTracing.withSpan(span)) {
+                    decodedToken = tokenVerifier.verify(token);
+                } catch (FirebaseAuthException e) {
+                    authMetrics.recordVerify(verifyStart, false);
+                    span.error(e);
+                    throw e;
+                } finally {
+                    span.end();
+                }
+                authMetrics.recordVerify(verifyStart, true);
+                tokenCache.put(token, decodedToken);
+            }
             String uid = decodedToken.getUid();
             
             // Can set user details in request attributes for controllers to access
@@ -69,59 +91,47 @@ public class FirebaseAuthFilter extends OncePerRequestFilter {
             request.setAttribute("userEmail", decodedToken.getEmail());
 
             // Set basic user details in request attributes
-            setUserRole(request, uid);
+            Role role = setUserRole(request, decodedToken);
+            authTracing.tagCaller(uid, role);
+
+            // Let Spring Security know the request is authenticated, otherwise
+            // anyRequest().authenticated() rejects it with 403
+            SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                uid, null, List.of(new SimpleGrantedAuthority("ROLE_" + role.name()))));
             
             filterChain.doFilter(request, response);
         } catch (FirebaseAuthException e) {
-            log.error("Firebase Authentication failed", e);
+            authFailureLog.invalidToken(e);
+            authMetrics.rejected("filter", AuthMetrics.Rejection.INVALID_TOKEN);
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.getWriter().write("Invalid token: " + e.getMessage());
         }
     }
 
     /**
-     * Get the current user's role from the database
-     * and apply it to the request body as an attribute
+     * Get the current user's role (from the token claims or the role cache,
+     * see [RoleSource]) and apply it to the request body as an attribute
      */
-    private void setUserRole(HttpServletRequest request, String uid) {
-        try {
-            DocumentReference userRef = firestore.collection("users").document(uid);
-            ApiFuture<DocumentSnapshot> future = userRef.get();
-            DocumentSnapshot document = future.get();
-
-            if (document.exists() && document.contains("role")) {
-                String roleStr = document.getString("role");
-                try {
-                    Role role = Role.valueOf(roleStr.toUpperCase());
-                    request.setAttribute("userRole", role);
-                    log.debug("Set user role: {}", role);
-                } catch(IllegalArgumentException e) {
-                    log.warn("Invalid role value in database: {}", roleStr);
-                    // Default the role into the lowest permission level
-                    request.setAttribute("userRole", Role.STAFF);
-                }
-            } else {
-                log.debug("No role found for user: {}, defaulting to STAFF", uid);
-                request.setAttribute("userRole", Role.STAFF);
-            }
-
+    private Role setUserRole(HttpServletRequest request, FirebaseToken decodedToken) {
+        long start = System.nanoTime();
+        Span span = authTracing.startRoleResolve(decodedToken.getUid());
+        Role role;
+        try (Tracer.SpanInScope ignored = authTracing.withSpan(span)) {
+            role = roleResolver.resolve(decodedToken);
+            log.debug("Set user role: {}", role);
         } catch(InterruptedException e) {
-            log.error("Thread interrupted while fetching user role", e);
+            authFailureLog.roleLookupFailed(e);
             Thread.currentThread().interrupt();
-            request.setAttribute("userRole", Role.STAFF);
+            span.error(e);
+            role = Role.STAFF;
         } catch(ExecutionException e) {
-            log.error("Error executing Firestore query for user role", e);
-            request.setAttribute("userRole", Role.STAFF);
+            authFailureLog.roleLookupFailed(e);
+            span.error(e);
+            role = Role.STAFF;
         }
-    }
-    
-    private boolean isPublicPath(String path) {
-        return publicPaths.stream().anyMatch(pattern -> {
-            if (pattern.endsWith("/**")) {
-                String prefix = pattern.substring(0, pattern.length() - 3);
-                return path.startsWith(prefix);
-            }
-            return path.equals(pattern);
-        });
+        span.tag(AuthTracing.ROLE, role.name()).end();
+        authMetrics.recordRoleResolve(start);
+        request.setAttribute("userRole", role);
+        return role;
     }
 }
\ No newline at end of file
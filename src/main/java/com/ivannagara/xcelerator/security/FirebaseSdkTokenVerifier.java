@@ -0,0 +1,21 @@
+package com.ivannagara.xcelerator.security;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Verifies tokens with [FirebaseAuth.verifyIdToken], which fetches Google's certificates itself
+ */
+@RequiredArgsConstructor
+public class FirebaseSdkTokenVerifier implements TokenVerifier {
+
+    private final FirebaseAuth firebaseAuth;
+
+    @Override
+    public FirebaseToken verify(String idToken) throws FirebaseAuthException {
+        return firebaseAuth.verifyIdToken(idToken);
+    }
+}
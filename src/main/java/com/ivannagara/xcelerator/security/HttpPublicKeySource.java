@@ -0,0 +1,58 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Downloads the signing certificates, valid for as long as the response's Cache-Control max-age says
+ */
+public class HttpPublicKeySource implements PublicKeySource {
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final URI uri;
+    private final Duration defaultMaxAge;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    public HttpPublicKeySource(String url, Duration defaultMaxAge, ObjectMapper objectMapper) {
+        this.uri = URI.create(url);
+        this.defaultMaxAge = defaultMaxAge;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public KeySet fetch() throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching public keys", e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Fetching public keys from " + uri + " returned " + response.statusCode());
+        }
+
+        Map<String, String> pemByKeyId = objectMapper.readValue(response.body(), new TypeReference<>() { });
+        Duration maxAge = response.headers().firstValue("Cache-Control")
+            .map(MAX_AGE::matcher)
+            .filter(Matcher::find)
+            .map(matcher -> Duration.ofSeconds(Long.parseLong(matcher.group(1))))
+            .orElse(defaultMaxAge);
+        return new KeySet(PublicKeySource.parseKeys(pemByKeyId), Instant.now().plus(maxAge));
+    }
+}
@@ -0,0 +1,153 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.ErrorCode;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+
+/**
+ * Verifies Firebase ID tokens without calling out to Google on the request path.
+ *
+ * Checks the same things as the Admin SDK: an RS256 signature made with one of the keys in
+ * [PublicKeyStore], the audience and issuer of our project, a non-empty subject,
+ * and the exp / iat / auth_time timestamps (with some clock skew allowed).
+ * Revocation isn't checked, as with [FirebaseAuth.verifyIdToken] without checkRevoked.
+ */
+public class LocalTokenVerifier implements TokenVerifier {
+
+    private static final String ISSUER_PREFIX = "https://securetoken.google.com/";
+    private static final int MAX_SUBJECT_LENGTH = 128;
+    private static final TypeReference<Map<String, Object>> CLAIMS = new TypeReference<>() { };
+
+    // FirebaseToken only has a package-private constructor
+    private static final MethodHandle NEW_FIREBASE_TOKEN;
+
+    static {
+        try {
+            NEW_FIREBASE_TOKEN = MethodHandles.privateLookupIn(FirebaseToken.class, MethodHandles.lookup())
+                .findConstructor(FirebaseToken.class, MethodType.methodType(void.class, Map.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final PublicKeyStore keyStore;
+    private final String projectId;
+    private final String issuer;
+    private final long clockSkewSeconds;
+    private final ObjectMapper objectMapper;
+
+    public LocalTokenVerifier(PublicKeyStore keyStore, String projectId, Duration clockSkew, ObjectMapper objectMapper) {
+        this.keyStore = keyStore;
+        this.projectId = projectId;
+        this.issuer = ISSUER_PREFIX + projectId;
+        this.clockSkewSeconds = clockSkew.toSeconds();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public FirebaseToken verify(String idToken) throws FirebaseAuthException {
+        int headerEnd = idToken.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : idToken.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || idToken.indexOf('.', payloadEnd + 1) >= 0) {
+            throw invalid("Token is not a JWT");
+        }
+
+        Map<String, Object> header = decodeJson(idToken.substring(0, headerEnd));
+        if (!"RS256".equals(header.get("alg"))) {
+            throw invalid("Token must be signed with RS256, got " + header.get("alg"));
+        }
+        if (!(header.get("kid") instanceof String keyId)) {
+            throw invalid("Token has no \"kid\" header");
+        }
+
+        PublicKey key = keyStore.get(keyId);
+        if (key == null) {
+            throw invalid("Token was signed with an unknown key " + keyId);
+        }
+        if (!hasValidSignature(idToken, payloadEnd, key)) {
+            throw invalid("Token signature is invalid");
+        }
+
+        Map<String, Object> claims = decodeJson(idToken.substring(headerEnd + 1, payloadEnd));
+        checkClaims(claims);
+        return newFirebaseToken(claims);
+    }
+
+    private void checkClaims(Map<String, Object> claims) throws FirebaseAuthException {
+        if (!projectId.equals(claims.get("aud"))) {
+            throw invalid("Token has incorrect \"aud\" claim, expected " + projectId);
+        }
+        if (!issuer.equals(claims.get("iss"))) {
+            throw invalid("Token has incorrect \"iss\" claim, expected " + issuer);
+        }
+        if (!(claims.get("sub") instanceof String subject) || subject.isEmpty() || subject.length() > MAX_SUBJECT_LENGTH) {
+            throw invalid("Token has an invalid \"sub\" claim");
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        if (seconds(claims, "exp") + clockSkewSeconds <= now) {
+            throw new FirebaseAuthException(ErrorCode.INVALID_ARGUMENT, "Token has expired", null, null,
+                AuthErrorCode.EXPIRED_ID_TOKEN);
+        }
+        if (seconds(claims, "iat") - clockSkewSeconds > now) {
+            throw invalid("Token was issued in the future");
+        }
+        if (claims.containsKey("auth_time") && seconds(claims, "auth_time") - clockSkewSeconds > now) {
+            throw invalid("Token has an \"auth_time\" in the future");
+        }
+    }
+
+    private static boolean hasValidSignature(String idToken, int payloadEnd, PublicKey key) throws FirebaseAuthException {
+        try {
+            // Signature objects aren't thread safe, and cheap next to the RSA operation itself
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(key);
+            signature.update(idToken.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII));
+            return signature.verify(Base64.getUrlDecoder().decode(idToken.substring(payloadEnd + 1)));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Map<String, Object> decodeJson(String base64Url) throws FirebaseAuthException {
+        try {
+            return objectMapper.readValue(Base64.getUrlDecoder().decode(base64Url), CLAIMS);
+        } catch (IOException | IllegalArgumentException e) {
+            throw invalid("Token is not valid base64url JSON");
+        }
+    }
+
+    private static long seconds(Map<String, Object> claims, String name) throws FirebaseAuthException {
+        if (claims.get(name) instanceof Number number) {
+            return number.longValue();
+        }
+        throw invalid("Token has no \"" + name + "\" claim");
+    }
+
+    private static FirebaseToken newFirebaseToken(Map<String, Object> claims) {
+        try {
+            return (FirebaseToken) NEW_FIREBASE_TOKEN.invoke(claims);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create FirebaseToken", e);
+        }
+    }
+
+    private static FirebaseAuthException invalid(String message) {
+        return new FirebaseAuthException(ErrorCode.INVALID_ARGUMENT, message, null, null, AuthErrorCode.INVALID_ID_TOKEN);
+    }
+}
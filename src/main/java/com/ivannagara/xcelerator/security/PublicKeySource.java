@@ -0,0 +1,56 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where [PublicKeyStore] gets the token signing keys from
+ */
+public interface PublicKeySource {
+
+    KeySet fetch() throws IOException;
+
+    /**
+     * Parsed keys by key id ("kid" header), and when they should be fetched again
+     */
+    record KeySet(Map<String, PublicKey> keys, Instant expiresAt) {
+
+        static final KeySet EMPTY = new KeySet(Map.of(), Instant.EPOCH);
+    }
+
+    /**
+     * Parses {"kid": "PEM"} entries, each either an X.509 certificate (as served by Google)
+     * or a bare RSA public key (handy for locally minted tokens)
+     */
+    static Map<String, PublicKey> parseKeys(Map<String, String> pemByKeyId) throws IOException {
+        Map<String, PublicKey> keys = new HashMap<>();
+        try {
+            CertificateFactory certificates = CertificateFactory.getInstance("X.509");
+            KeyFactory rsa = KeyFactory.getInstance("RSA");
+
+            for (Map.Entry<String, String> entry : pemByKeyId.entrySet()) {
+                String pem = entry.getValue();
+                if (pem.contains("BEGIN CERTIFICATE")) {
+                    keys.put(entry.getKey(), certificates.generateCertificate(
+                        new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII))).getPublicKey());
+                } else {
+                    String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+                    keys.put(entry.getKey(), rsa.generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64))));
+                }
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Invalid public key", e);
+        }
+        return Map.copyOf(keys);
+    }
+}
@@ -0,0 +1,142 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ivannagara.xcelerator.config.TokenVerifierProperties;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Token signing keys for [LocalTokenVerifier], parsed once per fetch.
+ *
+ * The keys are fetched at startup and refreshed in the background shortly before they
+ * expire, so no request waits on the download. If a refresh fails the current keys stay
+ * in use and the fetch is retried. A token signed with a key we don't know yet (rotation)
+ * triggers one immediate refresh, at most once per minimum refresh interval: requests that
+ * miss at the same time wait for that one fetch instead of each doing their own.
+ */
+@Slf4j
+public class PublicKeyStore {
+
+    private final PublicKeySource source;
+    private final TokenVerifierProperties properties;
+
+    // Not synchronized, which would pin the virtual thread's carrier during the download
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile PublicKeySource.KeySet keySet = PublicKeySource.KeySet.EMPTY;
+    private volatile long lastFetchNanos;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public PublicKeyStore(PublicKeySource source, TokenVerifierProperties properties) {
+        this.source = source;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "public-key-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Prefetch before the first request comes in
+        refresh();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * The key with the given id, or null if the source doesn't have it
+     */
+    public PublicKey get(String keyId) {
+        PublicKey key = keySet.keys().get(keyId);
+        if (key == null && isRefreshDue()) {
+            refreshIfDue();
+            key = keySet.keys().get(keyId);
+        }
+        return key;
+    }
+
+    public int size() {
+        return keySet.keys().size();
+    }
+
+    public Instant getExpiresAt() {
+        return keySet.expiresAt();
+    }
+
+    void refresh() {
+        refreshLock.lock();
+        try {
+            fetch();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Refresh for an unknown key id. Whoever gets the lock first fetches, the others
+     * find the interval not over yet and use the keys it fetched.
+     */
+    private void refreshIfDue() {
+        refreshLock.lock();
+        try {
+            if (isRefreshDue()) {
+                fetch();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void fetch() {
+        lastFetchNanos = System.nanoTime();
+        Duration nextRefresh;
+        try {
+            PublicKeySource.KeySet fetched = source.fetch();
+            keySet = fetched;
+            log.debug("Fetched {} public keys, valid until {}", fetched.keys().size(), fetched.expiresAt());
+
+            nextRefresh = Duration.between(Instant.now(), fetched.expiresAt()).minus(properties.getRefreshAhead());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to fetch public keys, keeping the {} current ones: {}", keySet.keys().size(), e.getMessage());
+            nextRefresh = Duration.ZERO;
+        }
+
+        if (nextRefresh.compareTo(properties.getMinRefreshInterval()) < 0) {
+            nextRefresh = properties.getMinRefreshInterval();
+        }
+        scheduleRefresh(nextRefresh);
+    }
+
+    private void scheduleRefresh(Duration delay) {
+        if (scheduler != null && !scheduler.isShutdown()) {
+            // Only one pending refresh, an on-demand fetch replaces the scheduled one
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+            }
+            scheduledRefresh = scheduler.schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean isRefreshDue() {
+        return Duration.ofNanos(System.nanoTime() - lastFetchNanos).compareTo(properties.getMinRefreshInterval()) >= 0;
+    }
+}
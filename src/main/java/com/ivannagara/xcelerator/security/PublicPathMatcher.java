@@ -0,0 +1,165 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.ivannagara.xcelerator.config.PublicPathProperties;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides whether a path is public, shared by [SecurityConfig] and [FirebaseAuthFilter].
+ *
+ * Two kinds of pattern are supported:
+ * - "/api/public/health" matches that exact path
+ * - "/api/public/**" matches "/api/public" and everything below it (not "/api/publicity")
+ *
+ * The patterns are compiled at startup into a character trie, so a lookup walks
+ * the path once, without allocating, however many patterns there are.
+ *
+ * The management public paths only match requests that arrived on the management port,
+ * so e.g. the Prometheus scrape needs no token there but stays out of reach of the public port.
+ */
+@Component
+@Slf4j
+public class PublicPathMatcher {
+
+    private static final String SUBTREE_SUFFIX = "/**";
+
+    private final Node root;
+    private final Node managementRoot;
+    // Port the actuator is served on, -1 while it shares the application port
+    private final int managementPort;
+
+    @Autowired
+    public PublicPathMatcher(PublicPathProperties properties,
+            @Value("${server.port:8080}") int serverPort, @Value("${management.server.port:-1}") int managementPort) {
+        this(properties.getPublicPaths(), properties.getManagementPublicPaths(),
+            managementPort > 0 && managementPort != serverPort ? managementPort : -1);
+        if (this.managementPort < 0 && !properties.getManagementPublicPaths().isEmpty()) {
+            log.warn("Ignoring the management public paths, the actuator is not on a separate management port");
+        }
+    }
+
+    PublicPathMatcher(List<String> patterns) {
+        this(patterns, List.of(), -1);
+    }
+
+    PublicPathMatcher(List<String> patterns, List<String> managementPatterns, int managementPort) {
+        root = compile(patterns);
+        managementRoot = compile(managementPort > 0 ? managementPatterns : List.of());
+        this.managementPort = managementPort;
+        log.info("Compiled {} public path patterns", patterns.size());
+    }
+
+    public boolean matches(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return matches(root, path) || (managementPort > 0 && request.getLocalPort() == managementPort && matches(managementRoot, path));
+    }
+
+    public boolean matches(String path) {
+        return matches(root, path);
+    }
+
+    private static Node compile(List<String> patterns) {
+        Builder builder = new Builder();
+        patterns.forEach(builder::add);
+        return builder.compile();
+    }
+
+    private static boolean matches(Node root, String path) {
+        Node node = root;
+        for (int i = 0, length = path.length(); i < length; i++) {
+            char c = path.charAt(i);
+            // "/prefix/**" has been fully matched, everything below is public
+            if (c == '/' && node.subtree) {
+                return true;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.exact || node.subtree;
+    }
+
+    /**
+     * Trie node with its children in sorted arrays, looked up by binary search
+     */
+    private static final class Node {
+
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean exact;
+        private final boolean subtree;
+
+        private Node(char[] labels, Node[] children, boolean exact, boolean subtree) {
+            this.labels = labels;
+            this.children = children;
+            this.exact = exact;
+            this.subtree = subtree;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index < 0 ? null : children[index];
+        }
+    }
+
+    /**
+     * Mutable trie used while the patterns are added, then compiled to [Node]s
+     */
+    private static final class Builder {
+
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private boolean exact;
+        private boolean subtree;
+
+        private void add(String pattern) {
+            String path = pattern.trim();
+            boolean isSubtree = path.endsWith(SUBTREE_SUFFIX);
+            if (isSubtree) {
+                // "/**" leaves an empty prefix, i.e. every path is public
+                path = path.substring(0, path.length() - SUBTREE_SUFFIX.length());
+            } else if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("Public path pattern must start with '/': " + pattern);
+            }
+            if (!path.isEmpty() && !path.startsWith("/")) {
+                throw new IllegalArgumentException("Public path pattern must start with '/': " + pattern);
+            }
+            if (path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf('{') >= 0) {
+                throw new IllegalArgumentException(
+                    "Unsupported public path pattern (only exact paths and a trailing /** are allowed): " + pattern);
+            }
+
+            Builder node = this;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.children.computeIfAbsent(path.charAt(i), key -> new Builder());
+            }
+            if (isSubtree) {
+                node.subtree = true;
+            } else {
+                node.exact = true;
+            }
+        }
+
+        private Node compile() {
+            char[] labels = new char[children.size()];
+            Node[] compiled = new Node[children.size()];
+            int index = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                labels[index] = child.getKey();
+                compiled[index] = child.getValue().compile();
+                index++;
+            }
+            return new Node(labels, compiled, exact, subtree);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Answers 429 with a Retry-After header once a caller runs out of permits, see [RateLimiter].
+ *
+ * The filter is added to the security chain twice (see [SecurityConfig]): the PUBLIC stage runs
+ * before [FirebaseAuthFilter] and limits public paths per client IP, the AUTHENTICATED stage runs
+ * after it and limits everything else per uid and role.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final byte[] TOO_MANY_REQUESTS_BODY =
+        "{\"error\":\"Too many requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    public enum Stage {
+        PUBLIC,
+        AUTHENTICATED
+    }
+
+    private final Stage stage;
+    private final RateLimiter rateLimiter;
+    private final PublicPathMatcher publicPathMatcher;
+    private final AuthMetrics authMetrics;
+    // Both stages are instances of this class, each needs its own "already filtered" marker
+    private final String alreadyFilteredAttributeName;
+
+    public RateLimitFilter(Stage stage, RateLimiter rateLimiter, PublicPathMatcher publicPathMatcher, AuthMetrics authMetrics) {
+        this.stage = stage;
+        this.rateLimiter = rateLimiter;
+        this.publicPathMatcher = publicPathMatcher;
+        this.authMetrics = authMetrics;
+        this.alreadyFilteredAttributeName = RateLimitFilter.class.getName() + "." + stage + ALREADY_FILTERED_SUFFIX;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!rateLimiter.isEnabled()) {
+            return true;
+        }
+        boolean publicPath = publicPathMatcher.matches(request);
+        return stage == Stage.PUBLIC ? !publicPath : publicPath;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String subject;
+        Role role;
+        if (stage == Stage.PUBLIC) {
+            // The client address as the container sees it, set "server.forward-headers-strategy"
+            // when running behind a proxy so it is the caller's and not the proxy's
+            subject = request.getRemoteAddr();
+            role = null;
+        } else {
+            // Set by FirebaseAuthFilter, which already refused requests without a valid token
+            subject = (String) request.getAttribute("userId");
+            role = (Role) request.getAttribute("userRole");
+            if (subject == null) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+        }
+
+        long waitNanos = rateLimiter.tryAcquire(subject, request.getRequestURI(), role);
+        if (waitNanos > 0) {
+            log.debug("Rate limit reached for {} on {}", stage, request.getRequestURI());
+            authMetrics.rejected("rate-limit", AuthMetrics.Rejection.RATE_LIMITED);
+            tooManyRequests(response, waitNanos);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    protected String getAlreadyFilteredAttributeName() {
+        return alreadyFilteredAttributeName;
+    }
+
+    private static void tooManyRequests(HttpServletResponse response, long waitNanos) throws IOException {
+        // Retry-After is in whole seconds, round up so a retry at that time succeeds
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(TOO_MANY_REQUESTS_BODY.length);
+        response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+    }
+}
@@ -0,0 +1,185 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.ivannagara.xcelerator.config.RateLimitProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Token buckets per caller (uid or client IP) and route, see [RateLimitProperties].
+ *
+ * Each bucket is a single "theoretical arrival time" updated with compareAndSet (the GCRA
+ * form of a token bucket), so there is no lock and no refill thread. Buckets live in a fixed
+ * table addressed by hash like [VerifiedTokenCache]; when the neighbouring slots are taken
+ * the most idle bucket is replaced, which costs nothing once that bucket has refilled.
+ */
+@Component
+@Slf4j
+public class RateLimiter {
+
+    // How many neighbouring slots a bucket may live in before we start evicting
+    private static final int PROBE_LENGTH = 4;
+
+    // Route index of requests that match no configured route
+    private static final int NO_ROUTE = -1;
+
+    private final boolean enabled;
+    private final Limit anonymous;
+    private final Limit authenticated;
+    private final Map<Role, Limit> roles = new EnumMap<>(Role.class);
+    private final List<PathPattern> routePatterns = new ArrayList<>();
+    private final List<Limit> routeLimits = new ArrayList<>();
+
+    private final AtomicReferenceArray<Bucket> slots;
+    private final int mask;
+    private final LongAdder evictions = new LongAdder();
+
+    public RateLimiter(RateLimitProperties properties) {
+        this.enabled = properties.isEnabled() && properties.getMaxKeys() > 0;
+        this.anonymous = Limit.of(properties.getAnonymous().getCapacity(), properties.getAnonymous().getPermitsPerSecond());
+        this.authenticated = Limit.of(properties.getAuthenticated().getCapacity(), properties.getAuthenticated().getPermitsPerSecond());
+        properties.getRoles().forEach((role, limit) -> roles.put(role, Limit.of(limit.getCapacity(), limit.getPermitsPerSecond())));
+        for (RateLimitProperties.Route route : properties.getRoutes()) {
+            routePatterns.add(PathPatternParser.defaultInstance.parse(route.getPattern()));
+            routeLimits.add(Limit.of(route.getCapacity(), route.getPermitsPerSecond()));
+        }
+
+        // Round the key count up to a power of two so a slot index is a simple mask
+        int capacity = Integer.highestOneBit(Math.max(properties.getMaxKeys(), PROBE_LENGTH) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(enabled ? capacity : 0);
+        this.mask = capacity - 1;
+
+        log.debug("Rate limiter enabled: {}, capacity: {}, routes: {}", enabled, enabled ? capacity : 0, routePatterns.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes one permit for the caller on the path, role null for anonymous callers.
+     *
+     * @return 0 when the request may go ahead, otherwise the nanoseconds until a permit is free
+     */
+    public long tryAcquire(String subject, String path, Role role) {
+        return tryAcquire(subject, path, role, System.nanoTime());
+    }
+
+    long tryAcquire(String subject, String path, Role role, long now) {
+        if (!enabled) {
+            return 0;
+        }
+
+        int route = routeOf(path);
+        Limit limit = route != NO_ROUTE ? routeLimits.get(route)
+            : role == null ? anonymous
+            : roles.getOrDefault(role, authenticated);
+
+        AtomicLong arrival = bucket(subject, route, now).arrival;
+        while (true) {
+            long current = arrival.get();
+            // A bucket that sat idle is full, it can't save up more than its capacity
+            long next = Math.max(current, now) + limit.intervalNanos;
+            long wait = next - now - limit.burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    private int routeOf(String path) {
+        if (routePatterns.isEmpty()) {
+            return NO_ROUTE;
+        }
+
+        PathContainer container = PathContainer.parsePath(path);
+        for (int i = 0; i < routePatterns.size(); i++) {
+            if (routePatterns.get(i).matches(container)) {
+                return i;
+            }
+        }
+        return NO_ROUTE;
+    }
+
+    private Bucket bucket(String subject, int route, long now) {
+        long hash = VerifiedTokenCache.hash(subject) + route * 0x9e3779b97f4a7c15L;
+        int index = (int) hash & mask;
+
+        int victimSlot = -1;
+        Bucket victim = null;
+
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + i) & mask;
+            Bucket current = slots.get(slot);
+
+            // The hash only picks the slot, the full comparison guards against collisions
+            if (current != null && current.hash == hash && current.route == route && current.subject.equals(subject)) {
+                return current;
+            }
+            if (current == null) {
+                Bucket created = new Bucket(hash, subject, route, now);
+                if (slots.compareAndSet(slot, null, created)) {
+                    return created;
+                }
+                // Another thread took the slot first, it may have been the same caller
+                current = slots.get(slot);
+                if (current.hash == hash && current.route == route && current.subject.equals(subject)) {
+                    return current;
+                }
+            }
+
+            // Remember the bucket that was used longest ago, it goes if every slot is taken
+            if (victim == null || current.arrival.get() < victim.arrival.get()) {
+                victim = current;
+                victimSlot = slot;
+            }
+        }
+
+        Bucket created = new Bucket(hash, subject, route, now);
+        if (slots.compareAndSet(victimSlot, victim, created)) {
+            evictions.increment();
+        }
+        // Even when another thread replaced the victim first, this request is counted against a fresh bucket
+        return created;
+    }
+
+    private record Limit(long intervalNanos, long burstNanos) {
+
+        static Limit of(int capacity, double permitsPerSecond) {
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(permitsPerSecond, 1e-6));
+            return new Limit(intervalNanos, Math.max(capacity, 1) * intervalNanos);
+        }
+    }
+
+    private record Bucket(long hash, String subject, int route, AtomicLong arrival) {
+
+        Bucket(long hash, String subject, int route, long now) {
+            this(hash, subject, route, new AtomicLong(now));
+        }
+    }
+}
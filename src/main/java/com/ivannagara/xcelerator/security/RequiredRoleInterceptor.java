@@ -0,0 +1,91 @@
+package com.ivannagara.xcelerator.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import io.micrometer.tracing.Span;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enforces @RequiredRole on controller handlers before they run, using the table
+ * built by [RequiredRoleRegistry], so no reflection happens per request.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RequiredRoleInterceptor implements HandlerInterceptor {
+
+    // Same body the aspect returns
+    private static final byte[] ACCESS_DENIED_BODY =
+        "{\"error\":\"Access denied: insufficient permissions\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final RequiredRoleRegistry registry;
+    private final AuthMetrics authMetrics;
+    private final AuthTracing authTracing;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+
+        // The scan runs before the server starts, refuse rather than skip the check if it hasn't
+        if (!registry.isReady()) {
+            log.error("Required roles not resolved yet, rejecting {}", request.getRequestURI());
+            return deny(response);
+        }
+
+        Role requiredRole = registry.getRequiredRole(handlerMethod);
+        if (requiredRole == null) {
+            return true;
+        }
+
+        // Get user role from request attributes (set by FirebaseAuthFilter)
+        Role userRole = (Role) request.getAttribute("userRole");
+
+        // The matched route pattern was already resolved by the handler mapping
+        Span span = authTracing.startAuthorize("interceptor",
+            (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE), requiredRole, userRole);
+        try {
+            if (userRole == null) {
+                log.warn("User role not found in request attributes");
+                authMetrics.rejected("interceptor", AuthMetrics.Rejection.NO_ROLE);
+                span.tag("outcome", "no_role");
+                return deny(response);
+            }
+
+            if (!userRole.hasPermissionLevel(requiredRole)) {
+                log.warn("Access denied: User with role {} attempted to access endpoint requiring role {}",
+                        userRole, requiredRole);
+                authMetrics.rejected("interceptor", AuthMetrics.Rejection.INSUFFICIENT_ROLE);
+                span.tag("outcome", "insufficient_role");
+                return deny(response);
+            }
+
+            span.tag("outcome", "allowed");
+            return true;
+        } finally {
+            span.end();
+        }
+    }
+
+    private static boolean deny(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(ACCESS_DENIED_BODY.length);
+        response.getOutputStream().write(ACCESS_DENIED_BODY);
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package com.ivannagara.xcelerator.security;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The [Role] each @RequiredRole handler needs, worked out once at startup.
+ *
+ * Every handler method of every [RequestMappingHandlerMapping] is scanned after the
+ * singletons are created (before the server takes requests), so [RequiredRoleInterceptor]
+ * answers with a map lookup instead of reading annotations on each request.
+ * Methods that aren't MVC handlers are resolved on first use and cached.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RequiredRoleRegistry implements SmartInitializingSingleton {
+
+    private final ListableBeanFactory beanFactory;
+
+    // Handler method -> required role, only methods (or classes) annotated with @RequiredRole.
+    // Null until the scan has run.
+    private volatile Map<Method, Role> handlerRoles;
+
+    // Methods intercepted by [RoleSecurityAspect], resolved on first call
+    private final Map<Method, Optional<Role>> resolvedRoles = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        scan(beanFactory.getBeansOfType(RequestMappingHandlerMapping.class).values().stream()
+            .flatMap(mapping -> mapping.getHandlerMethods().values().stream())
+            .toList());
+    }
+
+    void scan(Collection<HandlerMethod> handlerMethods) {
+        Map<Method, Role> roles = new HashMap<>();
+        for (HandlerMethod handlerMethod : handlerMethods) {
+            RequiredRole annotation = findAnnotation(handlerMethod.getMethod(), handlerMethod.getBeanType());
+            if (annotation != null) {
+                roles.put(handlerMethod.getMethod(), annotation.value());
+            }
+        }
+        handlerRoles = Map.copyOf(roles);
+        log.info("Resolved @RequiredRole for {} of {} handler methods", roles.size(), handlerMethods.size());
+    }
+
+    /**
+     * Whether the handler methods have been scanned yet
+     */
+    public boolean isReady() {
+        return handlerRoles != null;
+    }
+
+    /**
+     * The role required by a scanned handler method, or null if it isn't annotated
+     */
+    public Role getRequiredRole(HandlerMethod handlerMethod) {
+        Map<Method, Role> roles = handlerRoles;
+        return roles == null ? null : roles.get(handlerMethod.getMethod());
+    }
+
+    /**
+     * The role required by any method, looked up on the method first and then on the class
+     */
+    public Role resolve(Method method, Class<?> targetClass) {
+        Map<Method, Role> roles = handlerRoles;
+        Role role = roles == null ? null : roles.get(method);
+        if (role != null) {
+            return role;
+        }
+        return resolvedRoles.computeIfAbsent(method, key -> Optional.ofNullable(findAnnotation(key, targetClass))
+                .map(RequiredRole::value))
+            .orElse(null);
+    }
+
+    private static RequiredRole findAnnotation(Method method, Class<?> targetClass) {
+        // Check if the method has the annotation
+        RequiredRole annotation = method.getAnnotation(RequiredRole.class);
+
+        // If not, check if the class has the annotation
+        if (annotation == null) {
+            annotation = targetClass.getAnnotation(RequiredRole.class);
+        }
+        if (annotation == null) {
+            annotation = method.getDeclaringClass().getAnnotation(RequiredRole.class);
+        }
+        return annotation;
+    }
+}
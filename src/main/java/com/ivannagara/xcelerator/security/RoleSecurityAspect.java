@@ -13,13 +13,26 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 import com.ivannagara.xcelerator.model.Role;
 
+import io.micrometer.tracing.Span;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Fallback for @RequiredRole on beans that aren't controllers.
+ * Controller handlers are checked by [RequiredRoleInterceptor] and excluded from the
+ * pointcut, so they aren't proxied at all.
+ */
 @Aspect
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class RoleSecurityAspect {
+
+    private final RequiredRoleRegistry registry;
+    private final AuthMetrics authMetrics;
+    private final AuthTracing authTracing;
+
     /**
      * 
      * @param joinPoint
@@ -28,46 +41,44 @@ public class RoleSecurityAspect {
      * 
      * This function will be called everytime a function is anotated with the @RequiredRole(...Role...);
      * It will be called because (1) it has the @Around annotation and (2) the input param of [ProceedingJoinPoint].
+     * Classes annotated with @RestController are left to [RequiredRoleInterceptor].
      */
-    @Around("@annotation(com.ivannagara.xcelerator.security.RequiredRole) || @within(com.ivannagara.xcelerator.security.RequiredRole)")
+    @Around("(@annotation(com.ivannagara.xcelerator.security.RequiredRole) || @within(com.ivannagara.xcelerator.security.RequiredRole))"
+            + " && !within(@org.springframework.web.bind.annotation.RestController *)")
     public Object checkRole(ProceedingJoinPoint joinPoint) throws Throwable {
         HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest();
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
 
         // Get user role from request attributes (set by FirebaseAuthFilter)
         Role userRole = (Role) request.getAttribute("userRole");
 
-        if (userRole == null) {
-            log.warn("User role not found in request attributes");
-            return ResponseEntity.status(403).body(Map.of("error", "Access denied: insufficient permissions"));
-        }
+        // Get required role from annotation (resolved once per method)
+        Role requiredRole = registry.resolve(method, joinPoint.getTarget().getClass());
 
-        // Get required role from annotation
-        RequiredRole annotation = getRequiredRoleAnnotation(joinPoint);
-        Role requiredRole = annotation.value();
+        // Only the check itself is in the span, the method runs after it ends
+        Span span = authTracing.startAuthorize("aspect", joinPoint.getSignature().toShortString(), requiredRole, userRole);
+        try {
+            if (userRole == null) {
+                log.warn("User role not found in request attributes");
+                authMetrics.rejected("aspect", AuthMetrics.Rejection.NO_ROLE);
+                span.tag("outcome", "no_role");
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: insufficient permissions"));
+            }
 
-        if (!userRole.hasPermissionLevel(requiredRole)) {
-            log.warn("Access denied: User with role {} attempted to access endpoint requiring role {}", 
-                    userRole, requiredRole);
-            return ResponseEntity.status(403).body(Map.of("error", "Access denied: insufficient permissions"));
+            if (!userRole.hasPermissionLevel(requiredRole)) {
+                log.warn("Access denied: User with role {} attempted to access endpoint requiring role {}", 
+                        userRole, requiredRole);
+                authMetrics.rejected("aspect", AuthMetrics.Rejection.INSUFFICIENT_ROLE);
+                span.tag("outcome", "insufficient_role");
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: insufficient permissions"));
+            }
+            span.tag("outcome", "allowed");
+        } finally {
+            span.end();
         }
 
         // Proceed if user has the required Role Permission
         return joinPoint.proceed();
     }
 
-    private RequiredRole getRequiredRoleAnnotation(ProceedingJoinPoint joinPoint) {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
-
-        // Check if the method has the annotation
-        RequiredRole annotation = method.getAnnotation(RequiredRole.class);
-
-        // If not, check if the class has the annotation
-        if (annotation == null) {
-            annotation = method.getDeclaringClass().getAnnotation(RequiredRole.class);
-        }
-
-        return annotation;
-    }
-
 }
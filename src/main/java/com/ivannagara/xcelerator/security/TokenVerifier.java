@@ -0,0 +1,13 @@
+package com.ivannagara.xcelerator.security;
+
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+
+/**
+ * Checks a Firebase ID token and returns its claims, used by [FirebaseAuthFilter].
+ * See [FirebaseSdkTokenVerifier] and [LocalTokenVerifier].
+ */
+public interface TokenVerifier {
+
+    FirebaseToken verify(String idToken) throws FirebaseAuthException;
+}
@@ -0,0 +1,190 @@
+package com.ivannagara.xcelerator.security;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import com.google.firebase.auth.FirebaseToken;
+import com.ivannagara.xcelerator.config.TokenCacheProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded cache of ID tokens that already passed [FirebaseAuth.verifyIdToken].
+ *
+ * The table is a fixed array of slots addressed by a 64-bit hash of the token,
+ * so a lookup only hashes the token and compares a few slots (no allocation).
+ * An entry is trusted until the token's "exp" claim, or until the optional
+ * safety TTL runs out, whichever comes first.
+ */
+@Component
+@Slf4j
+public class VerifiedTokenCache {
+
+    // How many neighbouring slots a token may live in before we start evicting
+    private static final int PROBE_LENGTH = 4;
+
+    private final boolean enabled;
+    private final long safetyTtlMillis;
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VerifiedTokenCache(TokenCacheProperties properties) {
+        this.enabled = properties.isEnabled() && properties.getMaxEntries() > 0;
+        this.safetyTtlMillis = properties.getSafetyTtl() == null ? 0 : properties.getSafetyTtl().toMillis();
+
+        // Round the entry count up to a power of two so a slot index is a simple mask
+        int capacity = Integer.highestOneBit(Math.max(properties.getMaxEntries(), PROBE_LENGTH) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(enabled ? capacity : 0);
+        this.mask = capacity - 1;
+
+        log.debug("Verified token cache enabled: {}, capacity: {}", enabled, enabled ? capacity : 0);
+    }
+
+    /**
+     * Returns the cached verification result for the token,
+     * or null when the token has not been verified yet (or has expired).
+     */
+    public FirebaseToken get(String token) {
+        if (!enabled) {
+            return null;
+        }
+
+        long hash = hash(token);
+        long now = System.currentTimeMillis();
+        int index = (int) hash & mask;
+
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + i) & mask;
+            Entry entry = slots.get(slot);
+
+            // The hash only picks the slot, the full token comparison guards against collisions
+            if (entry != null && entry.hash == hash && entry.token.equals(token)) {
+                if (entry.expiresAtMillis > now) {
+                    hits.increment();
+                    return entry.decodedToken;
+                }
+                if (slots.compareAndSet(slot, entry, null)) {
+                    evictions.increment();
+                }
+                break;
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Remembers a token that was just verified by Firebase.
+     * Tokens without an "exp" claim are never cached.
+     */
+    public void put(String token, FirebaseToken decodedToken) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAtMillis = expiresAtMillis(decodedToken, now);
+        if (expiresAtMillis <= now) {
+            return;
+        }
+
+        long hash = hash(token);
+        Entry entry = new Entry(hash, token, decodedToken, expiresAtMillis);
+        int index = (int) hash & mask;
+
+        int victimSlot = -1;
+        Entry victim = null;
+
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + i) & mask;
+            Entry current = slots.get(slot);
+
+            boolean sameToken = current != null && current.hash == hash && current.token.equals(token);
+            if (current == null || sameToken || current.expiresAtMillis <= now) {
+                if (slots.compareAndSet(slot, current, entry)) {
+                    if (current != null && !sameToken) {
+                        evictions.increment();
+                    }
+                    return;
+                }
+                // Another thread took the slot first, keep probing
+                continue;
+            }
+
+            // Remember the live entry that expires first, it goes if every slot is taken
+            if (victim == null || current.expiresAtMillis < victim.expiresAtMillis) {
+                victim = current;
+                victimSlot = slot;
+            }
+        }
+
+        if (victim != null && slots.compareAndSet(victimSlot, victim, entry)) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops every cached token, e.g. after a forced sign-out
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    private long expiresAtMillis(FirebaseToken decodedToken, long now) {
+        Object exp = decodedToken.getClaims().get("exp");
+        if (!(exp instanceof Number)) {
+            return 0;
+        }
+
+        // The "exp" claim is in seconds since the epoch
+        long expiresAtMillis = ((Number) exp).longValue() * 1000L;
+        if (safetyTtlMillis > 0) {
+            expiresAtMillis = Math.min(expiresAtMillis, now + safetyTtlMillis);
+        }
+        return expiresAtMillis;
+    }
+
+    /**
+     * 64-bit FNV-1a over the token characters, finished with a murmur mix
+     * so the low bits used for the slot index are well spread.
+     */
+    static long hash(String token) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private record Entry(long hash, String token, FirebaseToken decodedToken, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,633 @@
+package com.ivannagara.xcelerator.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.firebase.auth.EmailIdentifier;
+import com.google.firebase.auth.ErrorInfo;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.ImportUserRecord;
+import com.google.firebase.auth.UidIdentifier;
+import com.google.firebase.auth.UserImportOptions;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserImportResult;
+import com.google.firebase.auth.UserRecord;
+import com.google.firebase.auth.hash.Bcrypt;
+import com.ivannagara.xcelerator.config.BulkImportProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Imports many users at once from a CSV or NDJSON upload.
+ *
+ * Auth accounts go through [FirebaseAuth.importUsers] (up to 1000 per call) and the
+ * profile documents through a Firestore [BulkWriter]. importUsers overwrites accounts that
+ * already exist, so every batch first looks its uids and emails up and reports the users
+ * that exist as row errors. Profiles are created, never replaced, and an account whose
+ * profile can't be created is deleted again.
+ *
+ * A failed job is resumable: resuming re-runs every batch that did not finish. Accounts the
+ * job imported itself don't count as existing then, and row errors are only recorded once
+ * their batch finishes, so they aren't counted twice.
+ *
+ * Passwords are bcrypted by the job before its first batch, on hashing-threads threads of its
+ * own, only the hashes are kept, and the rows of a batch are dropped once it finished.
+ * Finished jobs are kept for finished-job-retention.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkUserImportService {
+
+    private static final String USERS_COLLECTION = "users";
+
+    // FirebaseAuth.importUsers accepts at most 1000 users per call
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    // FirebaseAuth.getUsers accepts at most 100 identifiers per call, a uid and an email per row
+    private static final int LOOKUP_ROWS = 50;
+
+    // Finished jobs kept around for their status report
+    private static final int MAX_RETAINED_JOBS = 20;
+
+    private final FirebaseAuth firebaseAuth;
+    private final Firestore firestore;
+    private final UserRoleCache userRoleCache;
+    private final RoleSourceProperties roleSourceProperties;
+    private final BulkImportProperties properties;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private final Executor taskExecutor;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Parses the upload and starts importing it in the background. The job can be looked up
+     * right away, it reports RUNNING while the passwords are hashed.
+     */
+    public ImportStatus start(InputStream input, ImportFormat format) throws IOException {
+        int batchSize = Math.max(1, Math.min(properties.getBatchSize(), MAX_BATCH_SIZE));
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), batchSize, properties.getMaxReportedErrors());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        if (format == ImportFormat.CSV) {
+            parseCsv(reader, job);
+        } else {
+            parseNdjson(reader, job);
+        }
+
+        pruneFinishedJobs();
+        jobs.put(job.id, job);
+        launch(job);
+        return job.status();
+    }
+
+    public Optional<ImportStatus> getStatus(String jobId) {
+        pruneFinishedJobs();
+        return Optional.ofNullable(jobs.get(jobId)).map(ImportJob::status);
+    }
+
+    /**
+     * Re-runs the batches of a failed job that did not complete.
+     * Returns empty when the job is unknown.
+     */
+    public Optional<ImportStatus> resume(String jobId) {
+        pruneFinishedJobs();
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.state == ImportState.FAILED) {
+            launch(job);
+        }
+        return Optional.of(job.status());
+    }
+
+    private void launch(ImportJob job) {
+        if (job.running.compareAndSet(false, true)) {
+            job.state = ImportState.RUNNING;
+            job.failure = null;
+            taskExecutor.execute(() -> run(job));
+        }
+    }
+
+    private void run(ImportJob job) {
+        int maxConcurrentBatches = Math.max(1, properties.getMaxConcurrentBatches());
+        Semaphore inFlight = new Semaphore(maxConcurrentBatches);
+        // Threads of the job's own, a batch waiting for a taskExecutor thread held by this
+        // run would never start, and @Async work elsewhere shouldn't queue behind an import
+        ExecutorService batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RateLimiter rateLimiter = RateLimiter.create(properties.getBatchesPerSecond());
+        BulkWriter bulkWriter = firestore.bulkWriter(BulkWriterOptions.builder()
+            .setMaxOpsPerSecond(properties.getMaxFirestoreOpsPerSecond())
+            .build());
+
+        try {
+            // Not done yet when resuming a job that failed while hashing
+            if (!job.isSealed()) {
+                hashPasswords(job);
+            }
+
+            for (int batch = 0; batch < job.batchCount() && job.failure == null; batch++) {
+                // Batches finished by an earlier run are skipped when resuming
+                if (job.completedBatches.contains(batch)) {
+                    continue;
+                }
+
+                inFlight.acquire();
+                rateLimiter.acquire();
+
+                int current = batch;
+                batchExecutor.execute(() -> {
+                    try {
+                        importBatch(job, current, bulkWriter);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        job.failure = "Interrupted";
+                    } catch (FirebaseAuthException | ExecutionException | RuntimeException e) {
+                        log.error("Import {} failed on batch {}", job.id, current, e);
+                        job.failure = e.getMessage();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+
+            // Wait for the batches still in flight
+            inFlight.acquire(maxConcurrentBatches);
+            bulkWriter.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failure = "Interrupted";
+        } catch (ExecutionException e) {
+            job.failure = e.getMessage();
+        } finally {
+            batchExecutor.shutdownNow();
+            job.state = job.failure == null ? ImportState.COMPLETED : ImportState.FAILED;
+            job.finishedAt = System.nanoTime();
+            job.running.set(false);
+            log.info("Import {} finished as {}: {} of {} rows imported",
+                job.id, job.state, job.importedRows.get(), job.totalRows);
+        }
+    }
+
+    /**
+     * Hashing is the CPU-heavy part of an import, it gets threads of its own instead of
+     * the request thread or the common pool the rest of the app shares
+     */
+    private void hashPasswords(ImportJob job) throws InterruptedException, ExecutionException {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(properties.getBcryptStrength());
+        ForkJoinPool hashingPool = new ForkJoinPool(Math.max(1, properties.getHashingThreads()));
+        try {
+            // The parallel stream in seal() runs on the pool it is started from
+            hashingPool.submit(() -> job.seal(encoder::encode)).get();
+        } finally {
+            hashingPool.shutdownNow();
+        }
+    }
+
+    private void importBatch(ImportJob job, int batch, BulkWriter bulkWriter)
+            throws FirebaseAuthException, InterruptedException, ExecutionException {
+        List<ImportRow> rows = job.batch(batch);
+        List<RowError> errors = new ArrayList<>();
+        int imported = 0;
+
+        // Rows finished by an earlier run of this batch
+        List<ImportRow> pending = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            if (job.writtenProfiles.contains(row.uid())) {
+                imported++;
+            } else {
+                pending.add(row);
+            }
+        }
+
+        List<ImportRow> accounts = importAccounts(job, withoutExistingUsers(job, pending, errors), errors);
+
+        // create() fails on an existing document instead of replacing it (and its role)
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>(accounts.size());
+        synchronized (bulkWriter) {
+            for (ImportRow row : accounts) {
+                writes.add(bulkWriter.create(firestore.collection(USERS_COLLECTION).document(row.uid()), profileOf(row)));
+            }
+        }
+        bulkWriter.flush().get();
+
+        List<String> orphaned = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            ImportRow row = accounts.get(i);
+            try {
+                writes.get(i).get();
+                job.writtenProfiles.add(row.uid());
+                userRoleCache.invalidate(row.uid());
+                imported++;
+            } catch (ExecutionException e) {
+                errors.add(rowError(row, "Profile write failed: " + e.getCause().getMessage()));
+                orphaned.add(row.uid());
+            }
+        }
+        deleteAccounts(job, orphaned);
+
+        job.completeBatch(batch, rows.size(), imported, errors);
+    }
+
+    /**
+     * Reports the rows whose uid or email is already taken, except by an account this job imported
+     */
+    private List<ImportRow> withoutExistingUsers(ImportJob job, List<ImportRow> rows, List<RowError> errors)
+            throws FirebaseAuthException {
+        List<ImportRow> fresh = new ArrayList<>(rows.size());
+        for (int from = 0; from < rows.size(); from += LOOKUP_ROWS) {
+            List<ImportRow> chunk = rows.subList(from, Math.min(rows.size(), from + LOOKUP_ROWS));
+            List<UserIdentifier> identifiers = new ArrayList<>(chunk.size() * 2);
+            for (ImportRow row : chunk) {
+                identifiers.add(new UidIdentifier(row.uid()));
+                identifiers.add(new EmailIdentifier(row.email()));
+            }
+
+            GetUsersResult existing = firebaseAuth.getUsers(identifiers);
+            Set<String> takenUids = new HashSet<>();
+            Set<String> takenEmails = new HashSet<>();
+            for (UserRecord user : existing.getUsers()) {
+                if (job.importedAccounts.contains(user.getUid())) {
+                    continue;
+                }
+                takenUids.add(user.getUid());
+                if (user.getEmail() != null) {
+                    takenEmails.add(user.getEmail().toLowerCase(Locale.ROOT));
+                }
+            }
+
+            for (ImportRow row : chunk) {
+                if (takenUids.contains(row.uid()) || takenEmails.contains(row.email().toLowerCase(Locale.ROOT))) {
+                    errors.add(rowError(row, "A user with this uid or email already exists"));
+                } else {
+                    fresh.add(row);
+                }
+            }
+        }
+        return fresh;
+    }
+
+    private List<ImportRow> importAccounts(ImportJob job, List<ImportRow> rows, List<RowError> errors)
+            throws FirebaseAuthException {
+        if (rows.isEmpty()) {
+            return rows;
+        }
+
+        List<ImportUserRecord> records = rows.stream().map(this::toImportRecord).toList();
+        boolean anyPassword = rows.stream().anyMatch(row -> row.passwordHash() != null);
+        UserImportResult result = anyPassword
+            ? firebaseAuth.importUsers(records, UserImportOptions.withHash(Bcrypt.getInstance()))
+            : firebaseAuth.importUsers(records);
+
+        Set<Integer> rejected = new HashSet<>();
+        for (ErrorInfo error : result.getErrors()) {
+            rejected.add(error.getIndex());
+            errors.add(rowError(rows.get(error.getIndex()), error.getReason()));
+        }
+
+        List<ImportRow> accounts = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (!rejected.contains(i)) {
+                accounts.add(rows.get(i));
+                job.importedAccounts.add(rows.get(i).uid());
+            }
+        }
+        return accounts;
+    }
+
+    // Accounts whose profile couldn't be created, so the row is reported as not imported at all
+    private void deleteAccounts(ImportJob job, List<String> uids) {
+        if (uids.isEmpty()) {
+            return;
+        }
+        try {
+            firebaseAuth.deleteUsers(uids);
+            uids.forEach(job.importedAccounts::remove);
+        } catch (FirebaseAuthException e) {
+            log.error("Import {} failed to delete {} accounts without a profile: {}", job.id, uids.size(), uids, e);
+        }
+    }
+
+    private ImportUserRecord toImportRecord(ImportRow row) {
+        ImportUserRecord.Builder builder = ImportUserRecord.builder()
+            .setUid(row.uid())
+            .setEmail(row.email());
+
+        if (row.displayName() != null) {
+            builder.setDisplayName(row.displayName());
+        }
+        if (row.passwordHash() != null) {
+            builder.setPasswordHash(row.passwordHash().getBytes(StandardCharsets.UTF_8));
+        }
+        // The claim travels with the import, no extra setCustomUserClaims call per user
+        if (roleSourceProperties.getSource().usesClaims()) {
+            builder.putCustomClaim(RoleResolver.ROLE_CLAIM, row.role().name());
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Object> profileOf(ImportRow row) {
+        Map<String, Object> userData = new HashMap<>();
+        userData.put("email", row.email());
+        userData.put("uid", row.uid());
+        userData.put("role", row.role().name());
+        if (row.displayName() != null) {
+            userData.put("displayName", row.displayName());
+        }
+        return userData;
+    }
+
+    /**
+     * Header line first, then plain comma separated values (no quoting).
+     * Known columns: uid, email, password, role, displayName.
+     */
+    private void parseCsv(BufferedReader reader, ImportJob job) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+
+        String[] columns = header.split(",");
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            String[] values = line.split(",", -1);
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.length && i < values.length; i++) {
+                fields.put(columns[i].trim().toLowerCase(Locale.ROOT), values[i].trim());
+            }
+            job.addRow(lineNumber, fields);
+        }
+    }
+
+    /**
+     * One JSON object per line with the same fields as the CSV columns
+     */
+    private void parseNdjson(BufferedReader reader, ImportJob job) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            Map<String, String> fields = new HashMap<>();
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                node.fields().forEachRemaining(field ->
+                    fields.put(field.getKey().toLowerCase(Locale.ROOT), field.getValue().asText()));
+            } catch (JsonProcessingException e) {
+                job.rowError(new RowError(lineNumber, null, "Invalid JSON"));
+                continue;
+            }
+            job.addRow(lineNumber, fields);
+        }
+    }
+
+    private void pruneFinishedJobs() {
+        long expiredBefore = System.nanoTime() - properties.getFinishedJobRetention().toNanos();
+        jobs.values().removeIf(job -> !job.running.get() && job.state != ImportState.RUNNING
+            && (job.finishedAt - expiredBefore <= 0 || jobs.size() >= MAX_RETAINED_JOBS && job.state == ImportState.COMPLETED));
+    }
+
+    private static RowError rowError(ImportRow row, String reason) {
+        return new RowError(row.line(), row.email(), reason);
+    }
+
+    /**
+     * Same email, same uid, so re-importing a row never creates a second account
+     */
+    static String uidFor(String email) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 28);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public enum ImportFormat {
+        CSV,
+        NDJSON;
+
+        public static ImportFormat of(String filename, String contentType) {
+            boolean csv = (filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".csv"))
+                || (contentType != null && contentType.startsWith("text/csv"));
+            return csv ? CSV : NDJSON;
+        }
+    }
+
+    public enum ImportState {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public record RowError(int line, String email, String reason) {
+    }
+
+    public record ImportStatus(
+        String jobId,
+        ImportState state,
+        int totalRows,
+        int processedRows,
+        int importedRows,
+        int failedRows,
+        List<RowError> errors,
+        String failure
+    ) {
+    }
+
+    // Holds the bcrypt hash of the password, never the password
+    private record ImportRow(int line, String uid, String email, String passwordHash, Role role, String displayName) {
+    }
+
+    private static class ImportJob {
+        final String id;
+        final int batchSize;
+        final int maxReportedErrors;
+
+        // Rows of the upload and their plain-text passwords, until seal()
+        private List<ImportRow> parsed = new ArrayList<>();
+        private List<String> passwords = new ArrayList<>();
+        private Set<String> seen = new HashSet<>();
+
+        // Rows of each batch, dropped once the batch finished
+        AtomicReferenceArray<List<ImportRow>> batches;
+        int totalRows;
+
+        final Set<Integer> completedBatches = ConcurrentHashMap.newKeySet();
+        // Accounts and profiles created by this job, not to be mistaken for existing users on resume
+        final Set<String> importedAccounts = ConcurrentHashMap.newKeySet();
+        final Set<String> writtenProfiles = ConcurrentHashMap.newKeySet();
+
+        final AtomicInteger processedRows = new AtomicInteger();
+        final AtomicInteger importedRows = new AtomicInteger();
+        final AtomicInteger failedRows = new AtomicInteger();
+        final ConcurrentLinkedQueue<RowError> errors = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean running = new AtomicBoolean();
+
+        volatile ImportState state = ImportState.RUNNING;
+        volatile String failure;
+        volatile long finishedAt;
+
+        ImportJob(String id, int batchSize, int maxReportedErrors) {
+            this.id = id;
+            this.batchSize = batchSize;
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void addRow(int line, Map<String, String> fields) {
+            String email = blankToNull(fields.get("email"));
+            String roleStr = blankToNull(fields.get("role"));
+
+            Role role = Role.STAFF;
+            if (roleStr != null) {
+                try {
+                    role = Role.valueOf(roleStr.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    rowError(new RowError(line, email, "Invalid role: " + roleStr));
+                    return;
+                }
+            }
+
+            if (email == null) {
+                rowError(new RowError(line, null, "Email is required"));
+                return;
+            }
+
+            String uid = blankToNull(fields.get("uid"));
+            if (uid == null) {
+                uid = uidFor(email);
+            }
+            // A second row for the same user would overwrite the first one's account
+            boolean newUid = seen.add("uid:" + uid);
+            boolean newEmail = seen.add("email:" + email.toLowerCase(Locale.ROOT));
+            if (!newUid || !newEmail) {
+                rowError(new RowError(line, email, "Duplicate uid or email in the upload"));
+                return;
+            }
+
+            parsed.add(new ImportRow(line, uid, email, null, role, blankToNull(fields.get("displayname"))));
+            passwords.add(blankToNull(fields.get("password")));
+            totalRows++;
+        }
+
+        /**
+         * Replaces the plain-text passwords with their hashes and splits the rows into batches
+         */
+        void seal(UnaryOperator<String> hasher) {
+            List<ImportRow> rows = IntStream.range(0, parsed.size()).parallel().mapToObj(i -> {
+                ImportRow row = parsed.get(i);
+                String password = passwords.get(i);
+                return password == null ? row
+                    : new ImportRow(row.line(), row.uid(), row.email(), hasher.apply(password), row.role(), row.displayName());
+            }).toList();
+            parsed = null;
+            passwords = null;
+            seen = null;
+
+            batches = new AtomicReferenceArray<>((rows.size() + batchSize - 1) / batchSize);
+            for (int batch = 0; batch < batches.length(); batch++) {
+                batches.set(batch, List.copyOf(rows.subList(batch * batchSize, Math.min(rows.size(), (batch + 1) * batchSize))));
+            }
+        }
+
+        void rowError(RowError error) {
+            if (failedRows.incrementAndGet() <= maxReportedErrors) {
+                errors.add(error);
+            }
+        }
+
+        // Counted only once the batch finished, a batch that failed halfway is counted by the run that finishes it
+        void completeBatch(int batch, int processed, int imported, List<RowError> rowErrors) {
+            rowErrors.forEach(this::rowError);
+            importedRows.addAndGet(imported);
+            processedRows.addAndGet(processed);
+            completedBatches.add(batch);
+            batches.set(batch, null);
+        }
+
+        boolean isSealed() {
+            return batches != null;
+        }
+
+        int batchCount() {
+            return batches.length();
+        }
+
+        List<ImportRow> batch(int batch) {
+            return batches.get(batch);
+        }
+
+        ImportStatus status() {
+            return new ImportStatus(id, state, totalRows, processedRows.get(), importedRows.get(),
+                failedRows.get(), List.copyOf(errors), failure);
+        }
+
+        private static String blankToNull(String value) {
+            return value == null || value.isBlank() ? null : value;
+        }
+    }
+}
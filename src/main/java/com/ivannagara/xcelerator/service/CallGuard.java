@@ -0,0 +1,322 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.firebase.FirebaseException;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deadline, bulkhead and circuit breaker for the calls to one Firebase backend.
+ *
+ * - every async call is failed with a [TimeoutException] (and the SDK call cancelled) after the timeout
+ * - at most max-concurrent-calls are in flight, any more are rejected right away instead of queueing
+ * - once failure-rate-threshold of the last window-size calls failed, every call is rejected for
+ *   open-duration, then a few trial calls decide whether the breaker closes or opens again
+ *
+ * Rejected calls fail with [CallRejectedException] without reaching the SDK, so callers fall back
+ * (a cached role, a partial profile) in microseconds while the backend is down. Errors that are
+ * the caller's fault (NOT_FOUND, ALREADY_EXISTS, ...) don't count as failures.
+ */
+@Slf4j
+public class CallGuard {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // Firebase, gRPC and gax codes for answers that say nothing about the backend's health
+    private static final Set<String> CALLER_ERRORS = Set.of("INVALID_ARGUMENT", "FAILED_PRECONDITION", "OUT_OF_RANGE",
+        "UNAUTHENTICATED", "PERMISSION_DENIED", "NOT_FOUND", "CONFLICT", "ALREADY_EXISTS");
+
+    // What acquire hands out: a rejection, an ordinary call, or else the half-open period the trial call belongs to
+    private static final long REJECTED_FULL = -2;
+    private static final long REJECTED_OPEN = -1;
+    private static final long NOT_A_TRIAL = 0;
+
+    private final String backend;
+    private final boolean enabled;
+    private final long timeoutNanos;
+    private final long openNanos;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+
+    // Outcomes of the last calls since the breaker closed, true for a failure. Guarded by this.
+    private final boolean[] window;
+    private int windowCalls;
+    private int windowNext;
+    private int windowFailures;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    // Bumped every time the breaker turns half-open, only calls carrying the current one are trials
+    private long halfOpenPeriod;
+
+    // Written under the lock, read without it on the fast path
+    private volatile State state = State.CLOSED;
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder rejectedFull = new LongAdder();
+
+    public CallGuard(String backend, boolean enabled, ResilienceProperties.Backend settings) {
+        this(backend, enabled, settings, System::nanoTime);
+    }
+
+    CallGuard(String backend, boolean enabled, ResilienceProperties.Backend settings, LongSupplier clock) {
+        this.backend = backend;
+        this.enabled = enabled;
+        this.timeoutNanos = settings.getTimeout().toNanos();
+        this.openNanos = settings.getOpenDuration().toNanos();
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.window = new boolean[Math.max(1, settings.getWindowSize())];
+        this.minimumCalls = Math.max(1, Math.min(settings.getMinimumCalls(), window.length));
+        this.halfOpenCalls = Math.max(1, settings.getHalfOpenCalls());
+        this.maxConcurrentCalls = settings.getMaxConcurrentCalls();
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.clock = clock;
+    }
+
+    /**
+     * Makes the call unless it is rejected, and fails it after the timeout. The returned future is
+     * the one the call returned: timing it out cancels the SDK call (see [FirebaseFutures]).
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        long permit = acquire();
+        if (permit < 0) {
+            return CompletableFuture.failedFuture(rejection(permit));
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+        future.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS).whenComplete((result, e) -> release(permit, e));
+        return future;
+    }
+
+    /**
+     * For the blocking SDK calls, which are bounded by the SDK's own read timeout
+     * (see [FirebaseConfig]) rather than by this guard
+     */
+    public <T, E extends Exception> T callBlocking(BlockingCall<T, E> call) throws E {
+        if (!enabled) {
+            return call.call();
+        }
+        long permit = acquire();
+        if (permit < 0) {
+            throw rejection(permit);
+        }
+
+        Throwable failure = null;
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            release(permit, failure);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BlockingCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getCallsInFlight() {
+        return maxConcurrentCalls - bulkhead.availablePermits();
+    }
+
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    // Failed calls, not counting timeouts
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    // Calls rejected because the breaker was open
+    public long getRejectedOpenCount() {
+        return rejectedOpen.sum();
+    }
+
+    // Calls rejected because max-concurrent-calls were in flight
+    public long getRejectedFullCount() {
+        return rejectedFull.sum();
+    }
+
+    private long acquire() {
+        if (!bulkhead.tryAcquire()) {
+            rejectedFull.increment();
+            return REJECTED_FULL;
+        }
+        if (state == State.CLOSED) {
+            return NOT_A_TRIAL;
+        }
+        long permit = permitCall();
+        if (permit < 0) {
+            bulkhead.release();
+            rejectedOpen.increment();
+        }
+        return permit;
+    }
+
+    private CallRejectedException rejection(long permit) {
+        return new CallRejectedException(backend, permit == REJECTED_FULL ? "too many calls in flight" : "circuit open");
+    }
+
+    private synchronized long permitCall() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                return REJECTED_OPEN;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPeriod++;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+            log.info("{} circuit breaker half-open, letting {} trial calls through", backend, halfOpenCalls);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return REJECTED_OPEN;
+            }
+            trialsStarted++;
+            return halfOpenPeriod;
+        }
+        return NOT_A_TRIAL;
+    }
+
+    private void release(long permit, Throwable e) {
+        bulkhead.release();
+
+        Throwable cause = unwrap(e);
+        if (cause instanceof CancellationException) {
+            // The caller gave up first, which says nothing about the backend
+            cancelled(permit);
+        } else if (cause != null && isFailure(cause)) {
+            (cause instanceof TimeoutException ? timeouts : failures).increment();
+            record(permit, true);
+        } else {
+            successes.increment();
+            record(permit, false);
+        }
+    }
+
+    private synchronized void cancelled(long permit) {
+        if (state == State.HALF_OPEN && permit == halfOpenPeriod && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    private synchronized void record(long permit, boolean failed) {
+        switch (state) {
+            case HALF_OPEN -> {
+                // Calls admitted before the breaker turned half-open (or in an earlier half-open period)
+                // finishing now; only the trial calls decide
+                if (permit != halfOpenPeriod) {
+                    return;
+                }
+                if (failed) {
+                    open("a trial call failed");
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    close();
+                }
+            }
+            case CLOSED -> {
+                if (windowCalls == window.length) {
+                    if (window[windowNext]) {
+                        windowFailures--;
+                    }
+                } else {
+                    windowCalls++;
+                }
+                window[windowNext] = failed;
+                if (failed) {
+                    windowFailures++;
+                }
+                windowNext = (windowNext + 1) % window.length;
+
+                if (failed && windowCalls >= minimumCalls && windowFailures >= failureRateThreshold * windowCalls) {
+                    open(windowFailures + " of the last " + windowCalls + " calls failed");
+                }
+            }
+            case OPEN -> {
+                // A call made before the breaker opened, its outcome no longer matters
+            }
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        log.warn("{} circuit breaker open for {} ms: {}", backend, TimeUnit.NANOSECONDS.toMillis(openNanos), reason);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowCalls = 0;
+        windowNext = 0;
+        windowFailures = 0;
+        log.info("{} circuit breaker closed", backend);
+    }
+
+    static boolean isFailure(Throwable cause) {
+        String code = null;
+        if (cause instanceof FirebaseException firebaseException) {
+            code = firebaseException.getErrorCode() == null ? null : firebaseException.getErrorCode().name();
+        } else if (cause instanceof FirestoreException firestoreException && firestoreException.getStatus() != null) {
+            code = firestoreException.getStatus().getCode().name();
+        } else if (cause instanceof ApiException apiException) {
+            code = apiException.getStatusCode().getCode().name();
+        }
+        return code == null || !CALLER_ERRORS.contains(code);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
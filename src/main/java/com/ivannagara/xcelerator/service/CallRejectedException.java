@@ -0,0 +1,19 @@
+package com.ivannagara.xcelerator.service;
+
+/**
+ * A Firebase call that was never made, because its circuit breaker is open
+ * or too many calls to the same backend are already in flight, see [CallGuard]
+ */
+public class CallRejectedException extends RuntimeException {
+
+    private final String backend;
+
+    public CallRejectedException(String backend, String reason) {
+        super(backend + " call rejected: " + reason, null, false, false);
+        this.backend = backend;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ivannagara.xcelerator.service;
+
+import org.springframework.stereotype.Service;
+
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+
+/**
+ * The [CallGuard]s of the two Firebase backends. Auth and Firestore have separate bulkheads
+ * and breakers, so a Firestore outage doesn't stop token checks or user lookups and vice versa.
+ */
+@Service
+public class FirebaseCallGuards {
+
+    // Same names as the remote service of the client spans
+    public static final String AUTH = "firebase-auth";
+    public static final String FIRESTORE = "firestore";
+
+    private final CallGuard auth;
+    private final CallGuard firestore;
+
+    public FirebaseCallGuards(ResilienceProperties properties) {
+        this.auth = new CallGuard(AUTH, properties.isEnabled(), properties.getAuth());
+        this.firestore = new CallGuard(FIRESTORE, properties.isEnabled(), properties.getFirestore());
+    }
+
+    public CallGuard getAuth() {
+        return auth;
+    }
+
+    public CallGuard getFirestore() {
+        return firestore;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+
+import io.micrometer.context.ContextSnapshotFactory;
+
+/**
+ * Adapts the [ApiFuture]s returned by the Firebase Admin SDK and Firestore
+ * into [CompletableFuture]s, so callers can compose them without blocking a thread on get().
+ */
+public final class FirebaseFutures {
+
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    private FirebaseFutures() {
+    }
+
+    /**
+     * The returned future is completed on the given executor, so stages chained onto it
+     * never run on the SDK's own transport threads. Cancelling it (or timing it out)
+     * cancels the SDK call.
+     *
+     * The context of the calling thread (the current trace span, see [TracingConfig]) is captured
+     * here and restored around the completion, so chained stages stay in the caller's trace.
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Executor inCallerContext = CONTEXT_SNAPSHOTS.captureAll().wrapExecutor(executor);
+
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, inCallerContext);
+
+        future.whenComplete((result, t) -> {
+            if (t != null && !apiFuture.isDone()) {
+                apiFuture.cancel(true);
+            }
+        });
+
+        return future;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * [InvalidationBus] between instances in the same JVM that joined the same group.
+ * Messages are delivered on the publishing thread and can't get lost.
+ * Without a group the bus only has this instance on it.
+ */
+public class InProcessInvalidationBus implements InvalidationBus {
+
+    private static final Map<String, List<InProcessInvalidationBus>> GROUPS = new ConcurrentHashMap<>();
+
+    private final List<InProcessInvalidationBus> members;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    public InProcessInvalidationBus() {
+        this.members = new CopyOnWriteArrayList<>();
+        members.add(this);
+    }
+
+    public InProcessInvalidationBus(String group) {
+        this.members = GROUPS.computeIfAbsent(group, name -> new CopyOnWriteArrayList<>());
+        members.add(this);
+    }
+
+    @Override
+    public void publish(String uid) {
+        published.increment();
+        for (InProcessInvalidationBus member : members) {
+            if (member != this) {
+                member.deliver(uid);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    @Override
+    public long getMissedCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        members.remove(this);
+    }
+
+    private void deliver(String uid) {
+        received.increment();
+        for (Listener listener : listeners) {
+            listener.invalidate(uid);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ivannagara.xcelerator.service;
+
+/**
+ * Tells the other instances of the service when a user's document was written, so they drop
+ * the role and profile they cached for the user (see [UserRoleCache]).
+ *
+ * Role and profile live in the same document, so one message per write covers both.
+ * Picked by "xcelerator.cluster.invalidation.transport", see [InvalidationBusConfig]:
+ * - NONE: a standalone [InProcessInvalidationBus], nothing is sent anywhere
+ * - IN_PROCESS: instances running in the same JVM, e.g. several application contexts
+ * - UDP: [UdpInvalidationBus], datagrams to a fixed list of peers
+ *
+ * A transport that can lose messages asks its listeners to drop everything when it notices
+ * that it did, so a cached role is never older than the last message that arrived.
+ */
+public interface InvalidationBus extends AutoCloseable {
+
+    /**
+     * Sends the uid to every other instance, never blocks on them
+     */
+    void publish(String uid);
+
+    /**
+     * Messages of this instance are not delivered back to it
+     */
+    void subscribe(Listener listener);
+
+    long getPublishedCount();
+
+    long getReceivedCount();
+
+    // Times the listeners were told to drop everything because messages may have been missed
+    long getMissedCount();
+
+    @Override
+    void close();
+
+    interface Listener {
+
+        void invalidate(String uid);
+
+        void invalidateAll();
+    }
+}
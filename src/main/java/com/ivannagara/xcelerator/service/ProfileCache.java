@@ -0,0 +1,420 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.model.UserProfile;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded uid -> [UserProfile] cache in front of the Firestore profile reads.
+ *
+ * - a profile younger than the ttl is served as is
+ * - one older than the ttl, but within stale-while-revalidate after it, is served right away
+ *   while a single background load replaces it
+ * - anything older, or not cached, is loaded before answering
+ * - users without a profile document are remembered (as [UserProfile.EMPTY]) for negative-ttl
+ *
+ * Eviction follows W-TinyLFU: new profiles enter a small LRU window, and when the window
+ * overflows its oldest profile only moves into the main space if it was asked for more often
+ * (per a count-min sketch of recent lookups) than the profile it would replace. The main space
+ * is a segmented LRU, profiles read again while on probation move to the protected segment.
+ * So a scan over many users read once (admin listings, imports) can't push out the hot ones.
+ *
+ * Profiles are dropped through [invalidate] whenever the user's document is written
+ * (see [UserRoleCache.invalidate]).
+ */
+@Service
+@Slf4j
+public class ProfileCache {
+
+    // Share of max-entries given to the admission window, and of the rest to the protected segment
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    // Invalidations are counted per stripe of uids, a load only caches its profile
+    // if no write touched the stripe while it was reading
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    // Eviction policy, guarded by policyLock. Lookups skip the bookkeeping when the lock is
+    // busy rather than wait for it, which only makes the policy a little less precise.
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    @Autowired
+    public ProfileCache(ProfileCacheProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    ProfileCache(ProfileCacheProperties properties, LongSupplier clock) {
+        int maxEntries = Math.max(2, properties.getMaxEntries());
+        this.enabled = properties.isEnabled() && properties.getMaxEntries() > 0;
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.staleNanos = properties.getStaleWhileRevalidate().toNanos();
+        this.negativeTtlNanos = properties.getNegativeTtl().toNanos();
+        this.clock = clock;
+
+        this.windowMax = Math.max(1, maxEntries * WINDOW_PERCENT / 100);
+        this.mainMax = maxEntries - windowMax;
+        this.protectedMax = Math.max(1, mainMax * PROTECTED_PERCENT / 100);
+        this.sketch = new FrequencySketch(enabled ? maxEntries : 0);
+
+        log.debug("Profile cache enabled: {}, max entries: {}", enabled, maxEntries);
+    }
+
+    /**
+     * Returns the cached profile of the user, or the one the loader reads when there is none
+     * (or it is too old). A stale profile is returned at once and reloaded in the background.
+     */
+    public CompletableFuture<UserProfile> get(String uid, Supplier<CompletableFuture<UserProfile>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Entry entry = entries.get(uid);
+        if (entry != null) {
+            long age = clock.getAsLong() - entry.loadedAt;
+            if (age < entry.freshNanos) {
+                hits.increment();
+                recordAccess(uid);
+                return CompletableFuture.completedFuture(entry.profile);
+            }
+            if (age < entry.freshNanos + entry.staleNanos) {
+                hits.increment();
+                staleHits.increment();
+                recordAccess(uid);
+                revalidate(uid, entry, loader);
+                return CompletableFuture.completedFuture(entry.profile);
+            }
+        }
+
+        misses.increment();
+        return load(uid, loader);
+    }
+
+    /**
+     * Drops the cached profile of a user after its document was written,
+     * and keeps a read already in flight from caching what it got
+     */
+    public void invalidate(String uid) {
+        if (!enabled) {
+            return;
+        }
+        generations.incrementAndGet(stripe(uid));
+        policyLock.lock();
+        try {
+            if (entries.remove(uid) != null) {
+                forget(uid);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Drops every cached profile, when invalidations from other instances may have been missed
+     * (see [InvalidationBus])
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        policyLock.lock();
+        try {
+            for (int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+                generations.incrementAndGet(stripe);
+            }
+            entries.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Includes the stale hits
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    // Lookups answered with a stale profile while it was reloaded
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    // Loads that completed, on a miss or in the background
+    public long getLoadSuccessCount() {
+        return loads.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    // Time spent in successful and failed loads, in nanoseconds
+    public long getTotalLoadTime() {
+        return loadNanos.sum();
+    }
+
+    private CompletableFuture<UserProfile> load(String uid, Supplier<CompletableFuture<UserProfile>> loader) {
+        long readGeneration = generations.get(stripe(uid));
+        long started = clock.getAsLong();
+        return loader.get().whenComplete((profile, e) -> {
+            loadNanos.add(clock.getAsLong() - started);
+            if (e != null) {
+                loadFailures.increment();
+                return;
+            }
+            loads.increment();
+            put(uid, profile, readGeneration);
+        });
+    }
+
+    // One background load per stale entry, a failed one is retried by the next lookup
+    private void revalidate(String uid, Entry entry, Supplier<CompletableFuture<UserProfile>> loader) {
+        if (!entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            load(uid, loader).whenComplete((profile, e) -> {
+                // A reloaded profile replaces the entry, one that wasn't cached leaves it to the next lookup
+                entry.revalidating.set(false);
+                if (e != null) {
+                    log.debug("Failed to reload the profile of {}, serving the cached one: {}", uid, e.toString());
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.revalidating.set(false);
+            log.debug("Failed to reload the profile of {}, serving the cached one: {}", uid, e.toString());
+        }
+    }
+
+    private void put(String uid, UserProfile profile, long readGeneration) {
+        boolean missing = profile.uid() == null;
+        long freshNanos = missing ? negativeTtlNanos : ttlNanos;
+        if (freshNanos <= 0) {
+            return;
+        }
+        Entry entry = new Entry(profile, clock.getAsLong(), freshNanos, missing ? 0 : staleNanos);
+
+        policyLock.lock();
+        try {
+            // The user's document was written while this profile was being read
+            if (generations.get(stripe(uid)) != readGeneration) {
+                return;
+            }
+            if (entries.put(uid, entry) == null) {
+                admit(uid);
+            } else {
+                access(uid);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void recordAccess(String uid) {
+        if (!policyLock.tryLock()) {
+            return;
+        }
+        try {
+            // Evicted or invalidated since the lookup read it
+            if (entries.containsKey(uid)) {
+                access(uid);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    // Everything below runs under policyLock
+
+    private void access(String uid) {
+        sketch.increment(uid);
+        if (window.get(uid) != null || protectedSegment.get(uid) != null) {
+            return;
+        }
+        if (probation.remove(uid) != null) {
+            protectedSegment.put(uid, Boolean.TRUE);
+            if (protectedSegment.size() > protectedMax) {
+                String demoted = eldest(protectedSegment);
+                protectedSegment.remove(demoted);
+                probation.put(demoted, Boolean.TRUE);
+            }
+        }
+    }
+
+    private void admit(String uid) {
+        sketch.increment(uid);
+        window.put(uid, Boolean.TRUE);
+        if (window.size() <= windowMax) {
+            return;
+        }
+
+        String candidate = eldest(window);
+        window.remove(candidate);
+        if (probation.size() + protectedSegment.size() < mainMax) {
+            probation.put(candidate, Boolean.TRUE);
+            return;
+        }
+
+        LinkedHashMap<String, Boolean> victims = probation.isEmpty() ? protectedSegment : probation;
+        String victim = eldest(victims);
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            evict(victim);
+            probation.put(candidate, Boolean.TRUE);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    private void evict(String uid) {
+        entries.remove(uid);
+        evictions.increment();
+    }
+
+    private void forget(String uid) {
+        if (window.remove(uid) == null && probation.remove(uid) == null) {
+            protectedSegment.remove(uid);
+        }
+    }
+
+    private static String eldest(LinkedHashMap<String, Boolean> segment) {
+        return segment.keySet().iterator().next();
+    }
+
+    private static int stripe(String uid) {
+        int hash = uid.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static final class Entry {
+
+        final UserProfile profile;
+        final long loadedAt;
+        final long freshNanos;
+        final long staleNanos;
+        final AtomicBoolean revalidating = new AtomicBoolean();
+
+        Entry(UserProfile profile, long loadedAt, long freshNanos, long staleNanos) {
+            this.profile = profile;
+            this.loadedAt = loadedAt;
+            this.freshNanos = freshNanos;
+            this.staleNanos = staleNanos;
+        }
+    }
+
+    /**
+     * Count-min sketch of how often each uid was looked up recently: four rows of 4-bit
+     * counters, the estimate is the smallest of the uid's four counters. Every counter is
+     * halved once the sketch has seen ten times its width in lookups, so old popularity fades.
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(maxEntries, 16) - 1) << 1;
+            this.rows = new byte[SEEDS.length][maxEntries == 0 ? 0 : width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < rows.length; row++) {
+                int index = index(hash, row);
+                if (rows[row][index] < MAX_COUNT) {
+                    rows[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < rows.length; row++) {
+                frequency = Math.min(frequency, rows[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private void age() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
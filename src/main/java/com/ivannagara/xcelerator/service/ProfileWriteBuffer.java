@@ -0,0 +1,372 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.ivannagara.xcelerator.config.ProfileWriteBehindProperties;
+import com.ivannagara.xcelerator.model.UserProfile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind buffer for profile updates.
+ *
+ * Updates to the same uid are coalesced while they wait, the newest one replacing the ones
+ * before it, then written in batched commits. Each is written with a plain set(), the same as a
+ * write that bypasses the buffer: the profile sent replaces the document, and fields left out
+ * of it are removed, with the buffer enabled or not.
+ * A flush happens every flush interval, as soon as enough users are pending, and on shutdown.
+ *
+ * Commits go through the Firestore [CallGuard] and are given up on after commit-timeout.
+ * A batch that fails for a reason that may pass (timeout, outage, open breaker) is retried;
+ * one that Firestore rejects is written again one user at a time, so a single bad update
+ * doesn't hold back the others. Updates that failed are retried on their own, with a growing
+ * backoff, and their callers get the error once max-attempts is reached or Firestore rejects them.
+ *
+ * Writes that bypass the buffer call [settle] first, so they land after the buffered ones.
+ */
+@Service
+@Slf4j
+public class ProfileWriteBuffer {
+
+    private static final String USERS_COLLECTION = "users";
+
+    // Firestore accepts at most 500 writes per batch commit
+    private static final int MAX_BATCH_WRITES = 500;
+
+    // Attempts made on shutdown before pending updates are given up on
+    private static final int SHUTDOWN_FLUSH_ATTEMPTS = 3;
+
+    private final Firestore firestore;
+    private final UserRoleCache userRoleCache;
+    private final FirebaseCallGuards callGuards;
+    private final ProfileWriteBehindProperties properties;
+    private final LongSupplier clock;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    // Updates taken out of [pending] whose commit hasn't finished yet, still visible to readers
+    private final Map<String, InFlight> committing = new ConcurrentHashMap<>();
+    // Moving an update from pending to committing happens under this lock, so [settle] always sees it in one of them
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ProfileWriteBuffer(Firestore firestore, UserRoleCache userRoleCache, FirebaseCallGuards callGuards,
+            ProfileWriteBehindProperties properties) {
+        this(firestore, userRoleCache, callGuards, properties, System::nanoTime);
+    }
+
+    ProfileWriteBuffer(Firestore firestore, UserRoleCache userRoleCache, FirebaseCallGuards callGuards,
+            ProfileWriteBehindProperties properties, LongSupplier clock) {
+        this.firestore = firestore;
+        this.userRoleCache = userRoleCache;
+        this.callGuards = callGuards;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profile-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes whatever is still pending before the application stops
+     */
+    @PreDestroy
+    void stop() {
+        if (scheduler == null) {
+            return;
+        }
+
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(properties.getFlushInterval().toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int attempt = 0; attempt < SHUTDOWN_FLUSH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            flush(true);
+        }
+        if (!pending.isEmpty()) {
+            log.error("Dropping pending profile updates for {} users on shutdown", pending.size());
+            IllegalStateException dropped = new IllegalStateException("Profile update dropped on shutdown");
+            pending.values().forEach(waiting -> waiting.waiters().forEach(waiter -> waiter.completeExceptionally(dropped)));
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Queues the profile for the next flush, replacing anything already pending for the uid.
+     * The returned future completes once the update is committed, or fails once it is given up on.
+     */
+    public CompletableFuture<Void> enqueue(String uid, Map<String, Object> updates) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        pending.merge(uid, new Pending(new HashMap<>(updates), List.of(written), 0, 0), Pending::followedBy);
+
+        if (pending.size() >= properties.getFlushThreshold() && scheduler != null) {
+            scheduler.execute(this::flush);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the uid's pending update right away, after any commit of it already in flight.
+     * Completes (never exceptionally) once nothing buffered for the uid can land any more,
+     * so the caller's own write isn't overwritten by an older buffered one.
+     */
+    public CompletableFuture<Void> settle(String uid) {
+        if (!isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        InFlight inFlight;
+        Pending waiting = null;
+        takeLock.lock();
+        try {
+            inFlight = committing.get(uid);
+            if (inFlight == null) {
+                waiting = take(uid);
+            }
+        } finally {
+            takeLock.unlock();
+        }
+
+        if (inFlight != null) {
+            // A failed commit is put back into pending before it lands, so look again
+            return inFlight.landed().thenCompose(ignored -> settle(uid));
+        }
+        return waiting == null ? CompletableFuture.completedFuture(null) : writeOne(uid, waiting);
+    }
+
+    /**
+     * The newest pending (not yet written) profile of the uid in place of the stored one,
+     * so a caller reads back what it just saved
+     */
+    public UserProfile overlay(String uid, UserProfile stored) {
+        Pending waiting = pending.get(uid);
+        if (waiting != null) {
+            return UserProfile.from(uid, waiting.updates());
+        }
+        InFlight inCommit = committing.get(uid);
+        return inCommit == null ? stored : UserProfile.from(uid, inCommit.update().updates());
+    }
+
+    /**
+     * Commits the pending updates in batches of at most [MAX_BATCH_WRITES], and retries the ones
+     * whose backoff is over one by one
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean ignoreBackoff) {
+        // A flush already running will pick up what's pending
+        if (!flushLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long now = clock.getAsLong();
+            List<String> fresh = new ArrayList<>();
+            List<String> retries = new ArrayList<>();
+            pending.forEach((uid, waiting) -> {
+                if (waiting.attempts() == 0) {
+                    fresh.add(uid);
+                } else if (ignoreBackoff || waiting.retryAt() - now <= 0) {
+                    retries.add(uid);
+                }
+            });
+
+            for (int from = 0; from < fresh.size(); from += MAX_BATCH_WRITES) {
+                commit(fresh.subList(from, Math.min(fresh.size(), from + MAX_BATCH_WRITES)));
+            }
+            for (String uid : retries) {
+                Pending waiting = takeLocked(uid);
+                if (waiting != null) {
+                    writeOne(uid, waiting).join();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while flushing profile updates", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void commit(List<String> uids) {
+        Map<String, Pending> taken = new LinkedHashMap<>();
+        takeLock.lock();
+        try {
+            for (String uid : uids) {
+                Pending waiting = take(uid);
+                if (waiting != null) {
+                    taken.put(uid, waiting);
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+
+        WriteBatch batch = firestore.batch();
+        taken.forEach((uid, waiting) -> batch.set(document(uid), waiting.updates()));
+        Throwable failure = guarded(batch::commit).handle((result, e) -> e == null ? null : unwrap(e)).join();
+
+        if (failure == null) {
+            taken.forEach(this::written);
+            log.debug("Flushed profile updates for {} users", taken.size());
+        } else if (CallGuard.isFailure(failure)) {
+            log.warn("Failed to flush profile updates for {} users, will retry: {}", taken.size(), failure.toString());
+            taken.forEach((uid, waiting) -> failed(uid, waiting, failure));
+        } else {
+            // One of the updates can't be written, one commit per user finds out which
+            log.warn("Firestore rejected a batch of {} profile updates, writing them one by one: {}",
+                taken.size(), failure.toString());
+            taken.forEach((uid, waiting) -> writeOne(uid, waiting, false).join());
+        }
+        taken.keySet().forEach(this::landed);
+    }
+
+    private CompletableFuture<Void> writeOne(String uid, Pending waiting) {
+        return writeOne(uid, waiting, true);
+    }
+
+    private CompletableFuture<Void> writeOne(String uid, Pending waiting, boolean land) {
+        return guarded(() -> document(uid).set(waiting.updates())).handle((result, e) -> {
+            if (e == null) {
+                written(uid, waiting);
+            } else {
+                failed(uid, waiting, unwrap(e));
+            }
+            if (land) {
+                landed(uid);
+            }
+            return null;
+        });
+    }
+
+    private void written(String uid, Pending waiting) {
+        userRoleCache.invalidate(uid);
+        waiting.waiters().forEach(waiter -> waiter.complete(null));
+    }
+
+    // Put back, unless a newer profile arrived meanwhile or it's time to give up
+    private void failed(String uid, Pending waiting, Throwable failure) {
+        int attempts = waiting.attempts() + 1;
+        if (CallGuard.isFailure(failure) && attempts < properties.getMaxAttempts()) {
+            long backoff = Math.min(properties.getRetryBackoff().toNanos() << Math.min(attempts - 1, 20),
+                properties.getMaxRetryBackoff().toNanos());
+            pending.merge(uid, waiting.retried(attempts, clock.getAsLong() + backoff), (newer, older) -> older.followedBy(newer));
+            return;
+        }
+        log.error("Giving up on the profile update of {} after {} attempts: {}", uid, attempts, failure.toString());
+        waiting.waiters().forEach(waiter -> waiter.completeExceptionally(failure));
+    }
+
+    private Pending takeLocked(String uid) {
+        takeLock.lock();
+        try {
+            return take(uid);
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    // Runs under takeLock
+    private Pending take(String uid) {
+        Pending waiting = pending.remove(uid);
+        if (waiting != null) {
+            committing.put(uid, new InFlight(waiting, new CompletableFuture<>()));
+        }
+        return waiting;
+    }
+
+    private void landed(String uid) {
+        InFlight inFlight = committing.remove(uid);
+        if (inFlight != null) {
+            inFlight.landed().complete(null);
+        }
+    }
+
+    private <T> CompletableFuture<T> guarded(Supplier<ApiFuture<T>> write) {
+        return callGuards.getFirestore()
+            .call(() -> FirebaseFutures.toCompletableFuture(write.get(), MoreExecutors.directExecutor()))
+            .orTimeout(properties.getCommitTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private DocumentReference document(String uid) {
+        return firestore.collection(USERS_COLLECTION).document(uid);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Profile waiting to be written for one uid, the callers waiting on it,
+     * and how often writing it failed so far
+     */
+    private record Pending(Map<String, Object> updates, List<CompletableFuture<Void>> waiters, int attempts, long retryAt) {
+
+        // The newer profile is written, completing the callers of both
+        Pending followedBy(Pending newer) {
+            List<CompletableFuture<Void>> allWaiters = new ArrayList<>(waiters);
+            allWaiters.addAll(newer.waiters);
+            return attempts >= newer.attempts
+                ? new Pending(newer.updates, allWaiters, attempts, retryAt)
+                : new Pending(newer.updates, allWaiters, newer.attempts, newer.retryAt);
+        }
+
+        Pending retried(int attempts, long retryAt) {
+            return new Pending(updates, waiters, attempts, retryAt);
+        }
+    }
+
+    private record InFlight(Pending update, CompletableFuture<Void> landed) {
+    }
+}
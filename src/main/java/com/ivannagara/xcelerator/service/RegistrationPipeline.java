@@ -0,0 +1,247 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.ivannagara.xcelerator.config.RegistrationProperties;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the Firestore profile of a newly registered user in the background,
+ * so registration returns as soon as the Firebase Auth user exists.
+ *
+ * Profiles are queued onto a bounded pool of workers. A failed write is retried with
+ * exponential backoff, and once the attempts run out the profile is written to the
+ * "xcelerator.registration.dead-letter" log so it can be replayed. The profile is created,
+ * never overwritten, so a retry can't undo changes made to the user in the meantime.
+ *
+ * - xcelerator.registration.queue: profiles waiting for a worker or for their next attempt
+ * - xcelerator.registration.profiles: finished profiles, tagged outcome=created|dead_letter
+ * - xcelerator.registration.retries: failed attempts that were retried
+ */
+@Service
+@Slf4j
+public class RegistrationPipeline {
+
+    private static final String USERS_COLLECTION = "users";
+
+    private static final Logger DEAD_LETTER_LOG = LoggerFactory.getLogger("xcelerator.registration.dead-letter");
+
+    private final Firestore firestore;
+    private final UserRoleCache userRoleCache;
+    private final RegistrationProperties properties;
+
+    private final AtomicInteger waitingRetries = new AtomicInteger();
+    private final Counter created;
+    private final Counter deadLettered;
+    private final Counter retries;
+
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService retryScheduler;
+
+    public RegistrationPipeline(Firestore firestore, UserRoleCache userRoleCache, RegistrationProperties properties,
+            MeterRegistry registry) {
+        this.firestore = firestore;
+        this.userRoleCache = userRoleCache;
+        this.properties = properties;
+
+        this.created = profilesCounter(registry, "created");
+        this.deadLettered = profilesCounter(registry, "dead_letter");
+        this.retries = Counter.builder("xcelerator.registration.retries")
+            .description("Failed profile writes that were retried")
+            .register(registry);
+        Gauge.builder("xcelerator.registration.queue", this, RegistrationPipeline::getQueueDepth)
+            .description("Profiles waiting for a worker or for their next attempt")
+            .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threads = new AtomicInteger();
+        workers = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+                Thread thread = new Thread(runnable, "registration-worker-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registration-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes what is still queued before the application stops, whatever can't be written
+     * in time goes to the dead-letter log
+     */
+    @PreDestroy
+    void stop() {
+        // Retries still waiting get one last attempt right away
+        for (Runnable retry : retryScheduler.shutdownNow()) {
+            runQuietly(retry);
+        }
+
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(properties.getWriteTimeout().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                List<Runnable> unwritten = workers.shutdownNow();
+                log.error("Registration queue not drained on shutdown, {} profiles left", unwritten.size());
+                unwritten.forEach(task -> ((ProfileWrite) task).deadLetter("shutdown"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the profile of a user that was just created in Firebase Auth.
+     * When the queue is full the profile is written on the calling thread instead of being dropped.
+     */
+    public void submit(String uid, Map<String, Object> profile) {
+        ProfileWrite write = new ProfileWrite(uid, new HashMap<>(profile), 1);
+        try {
+            workers.execute(write);
+        } catch (RejectedExecutionException e) {
+            log.warn("Registration queue full, writing the profile of {} on the request thread", uid);
+            write.run();
+        }
+    }
+
+    public int getQueueDepth() {
+        return (workers == null ? 0 : workers.getQueue().size()) + waitingRetries.get();
+    }
+
+    private void retry(ProfileWrite failed, String reason) {
+        if (failed.attempt >= properties.getMaxAttempts()) {
+            failed.deadLetter(reason);
+            return;
+        }
+
+        long backoff = Math.min(
+            properties.getInitialBackoff().toMillis() << Math.min(failed.attempt - 1, 20),
+            properties.getMaxBackoff().toMillis());
+        ProfileWrite next = new ProfileWrite(failed.uid, failed.profile, failed.attempt + 1);
+        retries.increment();
+        log.warn("Failed to create the profile of {} (attempt {}), retrying in {} ms: {}",
+            failed.uid, failed.attempt, backoff, reason);
+
+        waitingRetries.incrementAndGet();
+        try {
+            retryScheduler.schedule(() -> {
+                waitingRetries.decrementAndGet();
+                try {
+                    workers.execute(next);
+                } catch (RejectedExecutionException e) {
+                    // Full queue or shutting down, the retry thread makes the attempt itself
+                    next.run();
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            waitingRetries.decrementAndGet();
+            next.run();
+        }
+    }
+
+    private static void runQuietly(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Registration retry failed on shutdown", e);
+        }
+    }
+
+    static boolean alreadyExists(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException api && api.getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) {
+                return true;
+            }
+            if (cause instanceof FirestoreException firestoreException && firestoreException.getStatus() != null
+                    && firestoreException.getStatus().getCode() == Status.Code.ALREADY_EXISTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Counter profilesCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("xcelerator.registration.profiles")
+            .description("Profiles of new users that were created or given up on")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    /**
+     * One attempt at creating a profile, the next attempt is a new instance
+     */
+    private final class ProfileWrite implements Runnable {
+
+        private final String uid;
+        private final Map<String, Object> profile;
+        private final int attempt;
+
+        ProfileWrite(String uid, Map<String, Object> profile, int attempt) {
+            this.uid = uid;
+            this.profile = profile;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            // Invalidate before and after the write, a read in between could cache the old role again
+            userRoleCache.invalidate(uid);
+            try {
+                firestore.collection(USERS_COLLECTION).document(uid).create(profile)
+                    .get(properties.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                created.increment();
+                log.info("User profile created for uid: {}", uid);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                deadLetter("interrupted");
+            } catch (ExecutionException e) {
+                if (alreadyExists(e)) {
+                    // An earlier attempt got through after all, or the profile was written some other way
+                    created.increment();
+                    log.info("User profile for uid {} already exists", uid);
+                } else {
+                    retry(this, e.getCause().toString());
+                }
+            } catch (TimeoutException | RuntimeException e) {
+                retry(this, e.toString());
+            } finally {
+                userRoleCache.invalidate(uid);
+            }
+        }
+
+        void deadLetter(String reason) {
+            deadLettered.increment();
+            DEAD_LETTER_LOG.error("Giving up on the profile of {} after {} attempts ({}): {}", uid, attempt, reason, profile);
+        }
+    }
+}
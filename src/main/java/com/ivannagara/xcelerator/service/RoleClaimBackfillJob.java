@@ -0,0 +1,225 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UidIdentifier;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserRecord;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies the roles stored in the Firestore users documents into the "role"
+ * custom claim, so the claim-based [RoleSource] modes can be switched on.
+ *
+ * Users are processed in batches, the claim writes are rate limited,
+ * and users whose claim already matches are skipped, so the job can simply be re-run.
+ *
+ * A page is read well before its last claim is written, so each write uses the role read
+ * again just before it, and is recorded in [UserRoleCache] like a role update. All calls go
+ * through the [FirebaseCallGuards].
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoleClaimBackfillJob {
+
+    private static final String USERS_COLLECTION = "users";
+
+    // FirebaseAuth.getUsers accepts at most 100 identifiers per call
+    private static final int MAX_BATCH_SIZE = 100;
+
+    // Writes of one user's claim while their role keeps changing under the job
+    private static final int MAX_SYNC_ATTEMPTS = 3;
+
+    private final FirebaseAuth firebaseAuth;
+    private final Firestore firestore;
+    private final UserRoleCache userRoleCache;
+    private final FirebaseCallGuards callGuards;
+    private final RoleSourceProperties properties;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.IDLE);
+
+    /**
+     * Starts the backfill in the background, unless it is already running
+     */
+    public Status start() {
+        if (running.compareAndSet(false, true)) {
+            status.set(new Status(State.RUNNING, 0, 0, 0, 0, null));
+            Thread worker = new Thread(this::run, "role-claim-backfill");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return status.get();
+    }
+
+    public Status getStatus() {
+        return status.get();
+    }
+
+    private void run() {
+        RoleSourceProperties.Backfill settings = properties.getBackfill();
+        RateLimiter rateLimiter = RateLimiter.create(settings.getPermitsPerSecond());
+        int batchSize = Math.max(1, Math.min(settings.getBatchSize(), MAX_BATCH_SIZE));
+
+        Query query = firestore.collection(USERS_COLLECTION)
+            .select("role")
+            .orderBy(FieldPath.documentId())
+            .limit(batchSize);
+
+        long scanned = 0, updated = 0, skipped = 0, failed = 0;
+        String lastUid = null;
+
+        try {
+            List<QueryDocumentSnapshot> page = read(query::get).getDocuments();
+            while (!page.isEmpty()) {
+                Map<String, Role> roles = new LinkedHashMap<>();
+                for (QueryDocumentSnapshot document : page) {
+                    if (document.contains("role")) {
+                        roles.put(document.getId(), UserRoleCache.roleOf(document));
+                    }
+                }
+
+                List<UserIdentifier> identifiers = roles.keySet().stream()
+                    .<UserIdentifier>map(UidIdentifier::new)
+                    .toList();
+                GetUsersResult result = callGuards.getAuth().callBlocking(() -> firebaseAuth.getUsers(identifiers));
+                skipped += result.getNotFound().size();
+
+                for (UserRecord user : result.getUsers()) {
+                    Role role = roles.get(user.getUid());
+                    if (role.name().equals(user.getCustomClaims().get(RoleResolver.ROLE_CLAIM))) {
+                        skipped++;
+                        continue;
+                    }
+
+                    rateLimiter.acquire();
+                    try {
+                        if (syncClaim(user.getUid())) {
+                            updated++;
+                        } else {
+                            skipped++;
+                        }
+                    } catch (FirebaseAuthException | ExecutionException | CallRejectedException e) {
+                        log.warn("Failed to set role claim for user {}: {}", user.getUid(), e.getMessage());
+                        failed++;
+                    }
+                }
+
+                scanned += page.size();
+                lastUid = page.get(page.size() - 1).getId();
+                status.set(new Status(State.RUNNING, scanned, updated, skipped, failed, lastUid));
+
+                page = read(query.startAfter(page.get(page.size() - 1))::get).getDocuments();
+            }
+
+            status.set(new Status(State.COMPLETED, scanned, updated, skipped, failed, lastUid));
+            log.info("Role claim backfill completed: {} scanned, {} updated, {} skipped, {} failed",
+                scanned, updated, skipped, failed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status.set(new Status(State.FAILED, scanned, updated, skipped, failed, lastUid));
+        } catch (ExecutionException | FirebaseAuthException | CallRejectedException e) {
+            log.error("Role claim backfill failed after uid {}", lastUid, e);
+            status.set(new Status(State.FAILED, scanned, updated, skipped, failed, lastUid));
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Writes the user's current Firestore role into their claim, returns false if it already matched.
+     *
+     * The document is read again after the write: a role update that landed meanwhile may have
+     * written its claim before ours, so the claim is then written again from the newer role.
+     */
+    private boolean syncClaim(String uid) throws FirebaseAuthException, ExecutionException, InterruptedException {
+        boolean written = false;
+        DocumentSnapshot document = readUser(uid);
+        for (int attempt = 0; attempt < MAX_SYNC_ATTEMPTS; attempt++) {
+            if (!document.exists() || !document.contains("role")) {
+                return written;
+            }
+            Role role = UserRoleCache.roleOf(document);
+            UserRecord user = callGuards.getAuth().callBlocking(() -> firebaseAuth.getUser(uid));
+            Map<String, Object> claims = user.getCustomClaims();
+            if (role.name().equals(claims.get(RoleResolver.ROLE_CLAIM))) {
+                return written;
+            }
+
+            callGuards.getAuth().callBlocking(() -> {
+                firebaseAuth.setCustomUserClaims(uid, UserService.withRoleClaim(claims, role));
+                return null;
+            });
+            // Same as a role update: tokens issued until now are answered with the Firestore role
+            userRoleCache.invalidate(uid);
+            if (isDemotion(claims, role)) {
+                callGuards.getAuth().callBlocking(() -> {
+                    firebaseAuth.revokeRefreshTokens(uid);
+                    return null;
+                });
+            }
+            written = true;
+
+            DocumentSnapshot after = readUser(uid);
+            if (Objects.equals(after.getUpdateTime(), document.getUpdateTime())) {
+                return written;
+            }
+            document = after;
+        }
+        log.warn("Role of user {} kept changing during the backfill, its claim may be behind", uid);
+        return written;
+    }
+
+    // Unlike a role update, a missing claim isn't a demotion here: that is what the backfill fills in
+    private static boolean isDemotion(Map<String, Object> claims, Role role) {
+        Role previous = RoleResolver.roleFromClaim(claims.get(RoleResolver.ROLE_CLAIM));
+        return previous != null && previous != role && previous.hasPermissionLevel(role);
+    }
+
+    // Straight from Firestore, not shared with a read that may have started before a role update
+    private DocumentSnapshot readUser(String uid) throws ExecutionException, InterruptedException {
+        return read(firestore.collection(USERS_COLLECTION).document(uid)::get);
+    }
+
+    private <T> T read(Supplier<ApiFuture<T>> call) throws ExecutionException, InterruptedException {
+        return callGuards.getFirestore()
+            .call(() -> FirebaseFutures.toCompletableFuture(call.get(), MoreExecutors.directExecutor()))
+            .get();
+    }
+
+    public enum State {
+        IDLE,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public record Status(State state, long scanned, long updated, long skipped, long failed, String lastUid) {
+        static final Status IDLE = new Status(State.IDLE, 0, 0, 0, 0, null);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.stereotype.Service;
+
+import com.google.firebase.auth.FirebaseToken;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.model.Role;
+import com.ivannagara.xcelerator.model.RoleSource;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves the [Role] of an authenticated user, either from the custom claims
+ * of the decoded ID token (no I/O) or from Firestore, depending on [RoleSource].
+ *
+ * The claim of a token issued before the user's document last changed may carry a role that
+ * was taken away since, so for such tokens the role is read from Firestore (through the cache)
+ * until the user gets a fresh token.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoleResolver {
+
+    // Name of the custom claim carrying the role
+    public static final String ROLE_CLAIM = "role";
+
+    private final UserRoleCache userRoleCache;
+    private final RoleSourceProperties properties;
+
+    public Role resolve(FirebaseToken decodedToken) throws InterruptedException, ExecutionException {
+        RoleSource source = properties.getSource();
+        if (source == RoleSource.FIRESTORE) {
+            return userRoleCache.getRole(decodedToken.getUid());
+        }
+
+        Role claimed = roleFromClaim(decodedToken.getClaims().get(ROLE_CLAIM));
+        if (claimed != null) {
+            if (userRoleCache.changedSince(decodedToken.getUid(), issuedAt(decodedToken))) {
+                return userRoleCache.getRole(decodedToken.getUid());
+            }
+            return claimed;
+        }
+
+        if (source == RoleSource.CLAIM_WITH_FIRESTORE_FALLBACK) {
+            return userRoleCache.getRole(decodedToken.getUid());
+        }
+
+        log.debug("No role claim for user: {}, defaulting to STAFF", decodedToken.getUid());
+        return Role.STAFF;
+    }
+
+    public RoleSource getSource() {
+        return properties.getSource();
+    }
+
+    // "iat" is in seconds since the epoch, a token without one counts as old
+    private static long issuedAt(FirebaseToken decodedToken) {
+        return decodedToken.getClaims().get("iat") instanceof Number iat ? iat.longValue() : 0;
+    }
+
+    static Role roleFromClaim(Object claim) {
+        if (!(claim instanceof String roleStr)) {
+            return null;
+        }
+        try {
+            return Role.valueOf(roleStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid role value in custom claims: {}", roleStr);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.ivannagara.xcelerator.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * [InvalidationBus] over UDP: every message is one datagram sent to each configured peer.
+ *
+ * A message is 20 bytes plus the uid plus a 32 byte HMAC-SHA256: a marker byte, the type, the sender's
+ * node id (random per start), its sequence number, the uid's length, the uid, and the MAC of all that
+ * under the secret shared by the instances. Datagrams that don't come from a peer's address or don't
+ * carry a valid MAC are dropped, so nobody else can invalidate entries (or everything). Each instance numbers its messages and sends
+ * a heartbeat with the last number every heartbeat-interval, so a receiver notices a lost message
+ * at the latest one heartbeat later and drops every cached role and profile. The same happens the
+ * first time it hears from a node that already sent messages, and for the rare datagrams that
+ * arrive out of order, both only cost a few extra Firestore reads.
+ *
+ * Sending is non-blocking, a datagram that doesn't fit into the socket buffer is dropped
+ * (and then noticed by the peers as above). The peer list may include this instance.
+ */
+@Slf4j
+public class UdpInvalidationBus implements InvalidationBus {
+
+    private static final byte MARKER = 'X';
+    private static final byte INVALIDATE = 1;
+    private static final byte HEARTBEAT = 2;
+
+    // marker, type, node id, sequence, uid length
+    private static final int HEADER_BYTES = 1 + 1 + 8 + 8 + 2;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+    private static final int MIN_SECRET_BYTES = 16;
+    private static final int MAX_MESSAGE_BYTES = 1024;
+
+    // A node not heard from for this many heartbeats is forgotten, like one that restarted
+    private static final int FORGET_AFTER_HEARTBEATS = 10;
+
+    // Room for every peer to restart a few times within the forget window
+    private static final int SENDERS_PER_PEER = 4;
+    private static final int MIN_SENDERS = 16;
+
+    private final long nodeId = new SecureRandom().nextLong();
+    private final List<InetSocketAddress> peers;
+    private final Set<InetAddress> peerAddresses;
+    private final int maxSenders;
+    private final SecretKeySpec key;
+    private final long heartbeatNanos;
+
+    private final DatagramChannel receiveChannel;
+    private final DatagramChannel sendChannel;
+
+    // Guards the sequence and the send buffer, so messages leave in the order they are numbered
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(MAX_MESSAGE_BYTES);
+    private final Mac sendMac;
+    private long sequence;
+
+    // Last sequence number heard per sending node
+    private final Map<Long, Sender> senders = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Thread receiver;
+    private final ScheduledExecutorService heartbeats;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public UdpInvalidationBus(InetSocketAddress bindAddress, List<InetSocketAddress> peers, byte[] secret,
+            Duration heartbeatInterval) throws IOException {
+        if (secret == null || secret.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("The invalidation bus secret needs at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.peers = List.copyOf(peers);
+        this.peerAddresses = this.peers.stream().map(InetSocketAddress::getAddress).collect(Collectors.toUnmodifiableSet());
+        this.maxSenders = Math.max(MIN_SENDERS, SENDERS_PER_PEER * this.peers.size());
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.sendMac = mac();
+        this.heartbeatNanos = heartbeatInterval.toNanos();
+
+        this.receiveChannel = DatagramChannel.open().bind(bindAddress);
+        this.sendChannel = DatagramChannel.open();
+        sendChannel.configureBlocking(false);
+
+        receiver = new Thread(this::receive, "invalidation-bus");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-bus-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleAtFixedRate(this::heartbeat, 0, heartbeatNanos, TimeUnit.NANOSECONDS);
+
+        log.info("Invalidation bus listening on {}, peers: {}", receiveChannel.getLocalAddress(), this.peers);
+    }
+
+    @Override
+    public void publish(String uid) {
+        byte[] uidBytes = uid.getBytes(StandardCharsets.UTF_8);
+        if (uidBytes.length > MAX_MESSAGE_BYTES - HEADER_BYTES - MAC_BYTES) {
+            log.warn("Not publishing the invalidation of a {} byte uid", uidBytes.length);
+            return;
+        }
+
+        sendLock.lock();
+        try {
+            send(INVALIDATE, ++sequence, uidBytes);
+        } finally {
+            sendLock.unlock();
+        }
+        published.increment();
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    @Override
+    public long getMissedCount() {
+        return missed.sum();
+    }
+
+    // Datagrams dropped for not coming from a peer or not carrying a valid MAC
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) receiveChannel.getLocalAddress();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        heartbeats.shutdownNow();
+        try {
+            // Wakes the receiver up
+            receiveChannel.close();
+            sendChannel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the invalidation bus: {}", e.toString());
+        }
+    }
+
+    private void heartbeat() {
+        sendLock.lock();
+        try {
+            send(HEARTBEAT, sequence, new byte[0]);
+        } finally {
+            sendLock.unlock();
+        }
+
+        long forgetBefore = System.nanoTime() - FORGET_AFTER_HEARTBEATS * heartbeatNanos;
+        senders.values().removeIf(sender -> sender.heardAt - forgetBefore < 0);
+    }
+
+    // Runs under sendLock
+    private void send(byte type, long number, byte[] uid) {
+        sendBuffer.clear()
+            .put(MARKER)
+            .put(type)
+            .putLong(nodeId)
+            .putLong(number)
+            .putShort((short) uid.length)
+            .put(uid);
+        sendMac.update(sendBuffer.array(), 0, sendBuffer.position());
+        sendBuffer.put(sendMac.doFinal()).flip();
+        for (InetSocketAddress peer : peers) {
+            try {
+                if (sendChannel.send(sendBuffer.rewind(), peer) == 0) {
+                    log.debug("Socket buffer full, dropped message {} to {}", number, peer);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.debug("Failed to send message {} to {}: {}", number, peer, e.toString());
+                }
+            }
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE_BYTES);
+        Mac receiveMac = mac();
+        byte[] expectedMac = new byte[MAC_BYTES];
+        byte[] receivedMac = new byte[MAC_BYTES];
+        while (!closed) {
+            try {
+                buffer.clear();
+                SocketAddress from = receiveChannel.receive(buffer);
+                buffer.flip();
+                if (!authentic(from, buffer, receiveMac, expectedMac, receivedMac)) {
+                    rejected.increment();
+                    log.debug("Ignoring a datagram from {} that isn't a peer's invalidation message", from);
+                    continue;
+                }
+                handle(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to handle an invalidation message: {}", e.toString());
+            }
+        }
+    }
+
+    // Leaves the MAC out of the buffer's remaining bytes when it matches
+    private boolean authentic(SocketAddress from, ByteBuffer message, Mac mac, byte[] expected, byte[] actual)
+            throws IOException {
+        if (!(from instanceof InetSocketAddress address) || !peerAddresses.contains(address.getAddress())
+                || message.remaining() < HEADER_BYTES + MAC_BYTES || message.get(0) != MARKER) {
+            return false;
+        }
+        int signedBytes = message.limit() - MAC_BYTES;
+        mac.update(message.array(), 0, signedBytes);
+        try {
+            mac.doFinal(expected, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        message.get(signedBytes, actual);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return false;
+        }
+        message.limit(signedBytes);
+        return true;
+    }
+
+    private void handle(ByteBuffer message) {
+        message.get();
+        byte type = message.get();
+        long sender = message.getLong();
+        long number = message.getLong();
+        int uidLength = Short.toUnsignedInt(message.getShort());
+        if (sender == nodeId || uidLength != message.remaining()) {
+            return;
+        }
+
+        // An invalidation should be the one after the last heard, a heartbeat repeats the last one
+        Sender known = senders.get(sender);
+        long last = known != null ? known.sequence : 0;
+        long expected = type == INVALIDATE ? last + 1 : last;
+        if (number > expected) {
+            missed.increment();
+            log.info("Missed invalidations from node {} (got {} after {}), dropping every cached role and profile",
+                Long.toHexString(sender), number, last);
+            for (Listener listener : listeners) {
+                listener.invalidateAll();
+            }
+        }
+        if (known == null) {
+            known = new Sender();
+            if (senders.size() >= maxSenders) {
+                forgetLongestSilent();
+            }
+            senders.put(sender, known);
+        }
+        known.sequence = Math.max(last, number);
+        known.heardAt = System.nanoTime();
+
+        if (type == INVALIDATE) {
+            received.increment();
+            String uid = StandardCharsets.UTF_8.decode(message).toString();
+            for (Listener listener : listeners) {
+                listener.invalidate(uid);
+            }
+        }
+    }
+
+    // Keeps the map bounded, the forgotten node counts as new (and costs one invalidateAll) if it speaks again
+    private void forgetLongestSilent() {
+        senders.entrySet().stream()
+            .min(Comparator.comparingLong(entry -> entry.getValue().heardAt - System.nanoTime()))
+            .ifPresent(entry -> senders.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private Mac mac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute " + MAC_ALGORITHM, e);
+        }
+    }
+
+    // Only written by the receiver thread
+    private static final class Sender {
+
+        volatile long sequence;
+        volatile long heardAt;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Reads documents of the "users" collection, one Firestore read per uid at a time.
+ *
+ * A lookup for a uid that is already being read joins that read instead of starting another,
+ * so a burst of requests for the same user (the role read in [FirebaseAuthFilter], profile
+ * fetches, admin views) costs one document get. Reads are only shared while in flight,
+ * nothing is cached once they complete.
+ */
+@Service
+public class UserDocumentReader {
+
+    private static final String USERS_COLLECTION = "users";
+
+    private final Firestore firestore;
+
+    private final Map<String, SettableApiFuture<DocumentSnapshot>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public UserDocumentReader(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    /**
+     * Returns the user's document, from the read already in flight for the uid if there is one.
+     *
+     * Every caller gets its own future: cancelling it (e.g. on a timeout) leaves the shared read
+     * running for the others.
+     */
+    public ApiFuture<DocumentSnapshot> read(String uid) {
+        SettableApiFuture<DocumentSnapshot> shared = inFlight.get(uid);
+        if (shared == null) {
+            SettableApiFuture<DocumentSnapshot> started = SettableApiFuture.create();
+            shared = inFlight.putIfAbsent(uid, started);
+            if (shared == null) {
+                reads.increment();
+                start(uid, started);
+                return view(started);
+            }
+        }
+        coalesced.increment();
+        return view(shared);
+    }
+
+    /**
+     * Stops handing out the read in flight for the uid, called when the document is written,
+     * so nobody who asks after the write gets the document from before it
+     */
+    public void forget(String uid) {
+        inFlight.remove(uid);
+    }
+
+    // Firestore document gets issued
+    public long getReadCount() {
+        return reads.sum();
+    }
+
+    // Lookups answered by a read that was already in flight, i.e. reads saved
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private void start(String uid, SettableApiFuture<DocumentSnapshot> shared) {
+        ApiFuture<DocumentSnapshot> read;
+        try {
+            read = firestore.collection(USERS_COLLECTION).document(uid).get();
+        } catch (RuntimeException e) {
+            inFlight.remove(uid, shared);
+            shared.setException(e);
+            return;
+        }
+
+        ApiFutures.addCallback(read, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(DocumentSnapshot document) {
+                // Out of the map first, whoever asks from now on gets a fresh read
+                inFlight.remove(uid, shared);
+                shared.set(document);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                inFlight.remove(uid, shared);
+                shared.setException(t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static ApiFuture<DocumentSnapshot> view(SettableApiFuture<DocumentSnapshot> shared) {
+        SettableApiFuture<DocumentSnapshot> view = SettableApiFuture.create();
+        ApiFutures.addCallback(shared, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(DocumentSnapshot document) {
+                view.set(document);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                view.setException(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return view;
+    }
+}
@@ -0,0 +1,425 @@
+package com.ivannagara.xcelerator.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local uid -> [Role] map in front of the Firestore "users" collection.
+ *
+ * Entries are kept fresh by a snapshot listener on the collection and are
+ * dropped right away when [UserService] writes a profile or a role.
+ * Both also drop the user's cached [ProfileCache] entry.
+ * Writes are also sent to the other instances over the [InvalidationBus], which drop
+ * their entries in turn, without waiting for their listener (or without one at all).
+ * While the listener is down the cache is bypassed, so a stale role is never served
+ * while Firestore can be read; a failed listener is subscribed again with a growing backoff.
+ *
+ * Reads go through the Firestore [CallGuard]. When one fails, times out or is rejected by the
+ * open breaker, the role last read for the user is served instead, for up to stale-if-error
+ * and only if nothing wrote the user's document since.
+ *
+ * It also remembers when each user's document was last invalidated (for as long as an ID token
+ * lives), so [RoleResolver] doesn't trust the role claim of a token issued before a role change.
+ */
+@Service
+@Slf4j
+public class UserRoleCache {
+
+    private static final String USERS_COLLECTION = "users";
+
+    // Firebase ID tokens live for an hour, plus some clock skew between us and Google
+    private static final long TOKEN_LIFETIME_SECONDS = 60 * 60 + 5 * 60;
+
+    private final Firestore firestore;
+    // Role reads join profile reads of the same user that are in flight
+    private final UserDocumentReader userDocumentReader;
+    private final ProfileCache profileCache;
+    private final FirebaseCallGuards callGuards;
+    private final InvalidationBus invalidationBus;
+    private final RoleCacheProperties properties;
+
+    private final Map<String, Role> roles = new ConcurrentHashMap<>();
+
+    // Last role read per uid, only served when Firestore can't be read
+    private final Map<String, LastRead> lastReads = new ConcurrentHashMap<>();
+
+    // Bumped on every invalidation so a slow read can't put back a role that was just replaced
+    private final AtomicLong generation = new AtomicLong();
+
+    // Epoch second of the last invalidation per uid, and of the last one that hit every uid
+    private final Map<String, Long> changedAt = new ConcurrentHashMap<>();
+    private volatile long allChangedAt;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder listenerFailures = new LongAdder();
+
+    private volatile ListenerRegistration registration;
+    private volatile boolean listening;
+    private boolean stopped;
+    // Failures since the last snapshot that arrived, sets the retry backoff
+    private int failuresInARow;
+    private ScheduledExecutorService listenerScheduler;
+
+    public UserRoleCache(Firestore firestore, UserDocumentReader userDocumentReader, ProfileCache profileCache,
+            FirebaseCallGuards callGuards, InvalidationBus invalidationBus, RoleCacheProperties properties) {
+        this.firestore = firestore;
+        this.userDocumentReader = userDocumentReader;
+        this.profileCache = profileCache;
+        this.callGuards = callGuards;
+        this.invalidationBus = invalidationBus;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void start() {
+        // Other instances' writes, the profile cache may be on even when this one is off
+        invalidationBus.subscribe(new InvalidationBus.Listener() {
+            @Override
+            public void invalidate(String uid) {
+                invalidateLocally(uid);
+            }
+
+            @Override
+            public void invalidateAll() {
+                UserRoleCache.this.invalidateAll();
+            }
+        });
+
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        // The listener's first snapshot already carries every document,
+        // so the separate bulk read is only needed when we are not listening
+        if (properties.isWarmUp() && !properties.isListen()) {
+            Thread warmUpThread = new Thread(this::warmUp, "role-cache-warm-up");
+            warmUpThread.setDaemon(true);
+            warmUpThread.start();
+        }
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        stopped = true;
+        if (listenerScheduler != null) {
+            listenerScheduler.shutdownNow();
+        }
+        ListenerRegistration current = registration;
+        if (current != null) {
+            current.remove();
+        }
+        listening = false;
+    }
+
+    /**
+     * Registering builds the Firestore client (see [FirebaseClients]), so it waits until the
+     * server takes requests and runs on its own thread. Until then the cache is bypassed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    synchronized void startListening() {
+        if (!properties.isEnabled() || !properties.isListen() || stopped) {
+            return;
+        }
+        listenerScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-cache-listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+        listenerScheduler.execute(this::listen);
+    }
+
+    private synchronized void listen() {
+        if (stopped) {
+            return;
+        }
+        try {
+            listening = true;
+            registration = firestore.collection(USERS_COLLECTION).addSnapshotListener(this::onSnapshot);
+            log.debug("Listening to the {} collection for role changes", USERS_COLLECTION);
+        } catch (RuntimeException e) {
+            listenFailed("Failed to listen to the " + USERS_COLLECTION + " collection", e);
+        }
+    }
+
+    // Stops trusting what we have and subscribes again later
+    private synchronized void listenFailed(String message, Exception e) {
+        listenerFailures.increment();
+        listening = false;
+        generation.incrementAndGet();
+        roles.clear();
+        ListenerRegistration current = registration;
+        registration = null;
+        if (current != null) {
+            current.remove();
+        }
+        if (stopped) {
+            return;
+        }
+
+        failuresInARow++;
+        long backoff = Math.min(properties.getListenRetryBackoff().toNanos() << Math.min(failuresInARow - 1, 20),
+            properties.getMaxListenRetryBackoff().toNanos());
+        log.error("{}, bypassing the role cache and listening again in {} ms", message, TimeUnit.NANOSECONDS.toMillis(backoff), e);
+        listenerScheduler.schedule(this::listen, backoff, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the role of the user, reading it from Firestore only on a cache miss.
+     * Users without a (valid) role stored are treated as [Role.STAFF].
+     */
+    public Role getRole(String uid) throws InterruptedException, ExecutionException {
+        if (!isActive()) {
+            misses.increment();
+            return readRole(uid);
+        }
+
+        Role cached = roles.get(uid);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long readGeneration = generation.get();
+        Role role = readRole(uid);
+        if (generation.get() == readGeneration) {
+            putIfRoom(uid, role);
+            // An invalidation slipped in between the check and the put
+            if (generation.get() != readGeneration) {
+                roles.remove(uid, role);
+            }
+        }
+        return role;
+    }
+
+    /**
+     * Drops the cached role and profile of a user after its document was written,
+     * here and on the other instances
+     */
+    public void invalidate(String uid) {
+        invalidateLocally(uid);
+        invalidationBus.publish(uid);
+    }
+
+    private void invalidateLocally(String uid) {
+        generation.incrementAndGet();
+        userDocumentReader.forget(uid);
+        profileCache.invalidate(uid);
+        roles.remove(uid);
+        lastReads.remove(uid);
+        recordChange(uid);
+    }
+
+    // Messages from other instances may have been lost, nothing cached can be trusted
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        profileCache.invalidateAll();
+        roles.clear();
+        lastReads.clear();
+        allChangedAt = epochSecond();
+        changedAt.clear();
+    }
+
+    /**
+     * Whether the user's document may have changed at or after the given epoch second,
+     * e.g. when an ID token carrying a role claim was issued
+     */
+    public boolean changedSince(String uid, long epochSecond) {
+        Long changed = changedAt.get(uid);
+        return allChangedAt >= epochSecond || (changed != null && changed >= epochSecond);
+    }
+
+    private void recordChange(String uid) {
+        long now = epochSecond();
+        if (changedAt.size() >= properties.getMaxEntries() && !changedAt.containsKey(uid)) {
+            // Tokens issued before these changes have expired by now
+            changedAt.values().removeIf(changed -> changed < now - TOKEN_LIFETIME_SECONDS);
+            if (changedAt.size() >= properties.getMaxEntries()) {
+                // No room to tell the users apart, distrust every token issued until now
+                allChangedAt = now;
+                changedAt.clear();
+                return;
+            }
+        }
+        changedAt.put(uid, now);
+    }
+
+    private static long epochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    public int size() {
+        return roles.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    // Includes the reads made while the cache is bypassed
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // Lookups answered with the last role read because Firestore couldn't be read
+    public long getStaleServedCount() {
+        return staleServed.sum();
+    }
+
+    // Whether the snapshot listener is up, always false when listening is turned off
+    public boolean isListening() {
+        return listening;
+    }
+
+    public long getListenerFailureCount() {
+        return listenerFailures.sum();
+    }
+
+    private boolean isActive() {
+        return properties.isEnabled() && (listening || !properties.isListen());
+    }
+
+    private Role readRole(String uid) throws InterruptedException, ExecutionException {
+        long readGeneration = generation.get();
+        try {
+            Role role = roleOf(readUser(uid));
+            if (generation.get() == readGeneration && (lastReads.size() < properties.getMaxEntries() || lastReads.containsKey(uid))) {
+                lastReads.put(uid, new LastRead(role, System.nanoTime()));
+            }
+            return role;
+        } catch (ExecutionException e) {
+            LastRead lastRead = lastReads.get(uid);
+            if (lastRead == null || System.nanoTime() - lastRead.readAt() > properties.getStaleIfError().toNanos()) {
+                throw e;
+            }
+            staleServed.increment();
+            log.warn("Serving the last known role of {} as Firestore can't be read: {}", uid, e.getCause().toString());
+            return lastRead.role();
+        }
+    }
+
+    // Waits no longer than the Firestore deadline, and not at all while its breaker is open
+    private DocumentSnapshot readUser(String uid) throws InterruptedException, ExecutionException {
+        return callGuards.getFirestore()
+            .call(() -> FirebaseFutures.toCompletableFuture(userDocumentReader.read(uid), MoreExecutors.directExecutor()))
+            .get();
+    }
+
+    private void putIfRoom(String uid, Role role) {
+        if (roles.size() < properties.getMaxEntries() || roles.containsKey(uid)) {
+            roles.put(uid, role);
+        }
+    }
+
+    private void onSnapshot(QuerySnapshot snapshot, FirestoreException error) {
+        if (error != null) {
+            // Firestore doesn't restart a listener that failed
+            listenFailed("Role listener on the " + USERS_COLLECTION + " collection failed", error);
+            return;
+        }
+        if (failuresInARow > 0) {
+            resetFailures();
+        }
+
+        generation.incrementAndGet();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            QueryDocumentSnapshot document = change.getDocument();
+            userDocumentReader.forget(document.getId());
+            profileCache.invalidate(document.getId());
+            lastReads.remove(document.getId());
+            if (change.getType() != DocumentChange.Type.ADDED) {
+                // An edit from the console or an instance we don't hear from over the bus,
+                // role claims issued before it are stale. ADDED is mostly the first snapshot.
+                recordChange(document.getId());
+            }
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                roles.remove(document.getId());
+            } else if (properties.isWarmUp()) {
+                putIfRoom(document.getId(), roleOf(document));
+            } else {
+                // The first snapshot delivers every document as ADDED,
+                // only refresh users we already know about unless we are warming up
+                roles.computeIfPresent(document.getId(), (uid, role) -> roleOf(document));
+            }
+        }
+    }
+
+    private synchronized void resetFailures() {
+        failuresInARow = 0;
+    }
+
+    /**
+     * Pages through the users collection, reading only the role field
+     */
+    private void warmUp() {
+        long started = System.currentTimeMillis();
+        Query query = firestore.collection(USERS_COLLECTION)
+            .select("role")
+            .orderBy(FieldPath.documentId())
+            .limit(properties.getWarmUpPageSize());
+
+        try {
+            List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+            while (!page.isEmpty() && roles.size() < properties.getMaxEntries()) {
+                for (QueryDocumentSnapshot document : page) {
+                    roles.putIfAbsent(document.getId(), roleOf(document));
+                }
+                page = query.startAfter(page.get(page.size() - 1)).get().get().getDocuments();
+            }
+            log.info("Role cache warmed up with {} users in {} ms", roles.size(), System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to warm up the role cache", e);
+        }
+    }
+
+    private record LastRead(Role role, long readAt) {
+    }
+
+    static Role roleOf(DocumentSnapshot document) {
+        if (!document.exists() || !document.contains("role")) {
+            log.debug("No role found for user: {}, defaulting to STAFF", document.getId());
+            return Role.STAFF;
+        }
+
+        String roleStr = document.getString("role");
+        try {
+            return Role.valueOf(roleStr.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            log.warn("Invalid role value in database: {}", roleStr);
+            // Default the role into the lowest permission level
+            return Role.STAFF;
+        }
+    }
+}
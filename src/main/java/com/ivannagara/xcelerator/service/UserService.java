@@ -1,98 +1,173 @@
 package com.ivannagara.xcelerator.service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.stereotype.Service;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UidIdentifier;
+import com.google.firebase.auth.UserIdentifier;
 import com.google.firebase.auth.UserRecord;
 import com.google.firebase.auth.UserRecord.CreateRequest;
+import com.ivannagara.xcelerator.config.ProfileLookupProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
 import com.ivannagara.xcelerator.model.Role;
+import com.ivannagara.xcelerator.model.UserPage;
+import com.ivannagara.xcelerator.model.UserProfile;
+import com.ivannagara.xcelerator.model.UserProfileBatch;
+import com.ivannagara.xcelerator.model.UserProfileResponse;
+import com.ivannagara.xcelerator.security.AuthTracing;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+// Every public method is timed as "xcelerator.user.service" (tagged class and method),
+// async ones until their future completes
 @Service
+@Timed("xcelerator.user.service")
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
 
         private final FirebaseAuth firebaseAuth;
         private final Firestore firestore;
+        private final UserRoleCache userRoleCache;
+        private final UserDocumentReader userDocumentReader;
+        private final ProfileCache profileCache;
+        private final RoleSourceProperties roleSourceProperties;
+        private final ProfileWriteBuffer profileWriteBuffer;
+        private final RegistrationPipeline registrationPipeline;
+        private final ProfileLookupProperties profileLookupProperties;
+        // Deadlines, bulkheads and circuit breakers for the Auth and Firestore calls
+        private final FirebaseCallGuards callGuards;
+        private final Tracer tracer;
+
+        @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+        private final Executor taskExecutor;
 
         private static final String USERS_COLLECTION = "users";
 
+        // Remote service names of the client spans around SDK calls
+        private static final String FIRESTORE = FirebaseCallGuards.FIRESTORE;
+        private static final String FIREBASE_AUTH = FirebaseCallGuards.AUTH;
+
+        // FirebaseAuth.getUsers accepts at most 100 identifiers per call
+        private static final int MAX_GET_USERS_IDENTIFIERS = 100;
+
         public UserRecord createUser(String email, String password, Role role) throws FirebaseAuthException {
             CreateRequest request = new CreateRequest()
                 .setEmail(email)
                 .setPassword(password)
                 .setEmailVerified(false);
 
-            UserRecord userRecord = firebaseAuth.createUser(request);
+            UserRecord userRecord = callGuards.getAuth().callBlocking(() -> firebaseAuth.createUser(request));
 
-            Map<String, Object> userData = new HashMap<>();
-            userData.put("email", email);
-            userData.put("uid", userRecord.getUid());
-            userData.put("role", role.toString());
-            
-            saveUserProfile(userRecord.getUid(), userData);
+            // A new user has no custom claims yet, so there is nothing to merge with
+            if (roleSourceProperties.getSource().usesClaims()) {
+                try {
+                    callGuards.getAuth().callBlocking(() -> {
+                        firebaseAuth.setCustomUserClaims(userRecord.getUid(), Map.of(RoleResolver.ROLE_CLAIM, role.name()));
+                        return null;
+                    });
+                } catch (FirebaseAuthException | RuntimeException e) {
+                    // Without its role claim the account is of no use, don't leave it behind
+                    deleteUserQuietly(userRecord.getUid());
+                    throw e;
+                }
+            }
+
+            // The Auth user exists, the Firestore profile is created in the background
+            registrationPipeline.submit(userRecord.getUid(), newProfile(userRecord.getUid(), email, role));
     
             return userRecord;
         }
 
+        private void deleteUserQuietly(String uid) {
+            try {
+                callGuards.getAuth().callBlocking(() -> {
+                    firebaseAuth.deleteUser(uid);
+                    return null;
+                });
+            } catch (FirebaseAuthException | RuntimeException e) {
+                log.error("Failed to delete user {} whose role claim could not be set", uid, e);
+            }
+        }
+
         public UserRecord createUser(String email, String password) throws FirebaseAuthException {
             return createUser(email, password, Role.STAFF);
         }
 
+        private static Map<String, Object> newProfile(String uid, String email, Role role) {
+            Map<String, Object> userData = new HashMap<>();
+            userData.put("email", email);
+            userData.put("uid", uid);
+            userData.put("role", role.toString());
+            userData.put("createdAt", System.currentTimeMillis());
+            return userData;
+        }
+
         public UserRecord getUserById(String uid) throws FirebaseAuthException {
-            return firebaseAuth.getUser(uid);
+            return callGuards.getAuth().callBlocking(() -> firebaseAuth.getUser(uid));
         }
 
-        public Map<String, Object> getUserProfileFromFirestore(String uid) throws InterruptedException, ExecutionException {
-                DocumentReference docRef = firestore.collection(USERS_COLLECTION).document(uid);
-                ApiFuture<DocumentSnapshot> future = docRef.get();
-                DocumentSnapshot document = future.get();
-
-                if (document.exists()) {
-                    return document.getData();
-                } else {
-                    log.info("No user profile for UID: {}", uid);
-                    return new HashMap<>();
-                }
+        public UserProfile getUserProfileFromFirestore(String uid) throws InterruptedException, ExecutionException {
+                return getUserProfileFromFirestoreAsync(uid).get();
         }
 
         public void saveUserProfile(String uid, Map<String, Object> userData) {
-            DocumentReference docRef = firestore.collection(USERS_COLLECTION).document(uid);
-            docRef.set(userData).addListener(() -> log.info("User profile saved for uid: {}", uid), Runnable::run);
+            saveUserProfileAsync(uid, userData);
         }
 
-        public Map<String, Object> getUserProfileSafe(String uid) {
+        public UserProfile getUserProfileSafe(String uid) {
             try {
                 return getUserProfileFromFirestore(uid);
             } catch(InterruptedException e) {
                 log.error("Thread interrupted while getting user profile", e);
                 Thread.currentThread().interrupt();
-                return new HashMap<>();
+                return UserProfile.EMPTY;
             } catch(ExecutionException e) {
                 log.error("Error executing Firestore query", e);
-                return new HashMap<>();
+                return UserProfile.EMPTY;
             }
         }
 
         public Role getUserRole(String uid) {
             try {
-                Map<String, Object> profile = getUserProfileFromFirestore(uid);
-                if (profile.containsKey("role")) {
-                    String roleStr = (String) profile.get("role");
-                    return Role.valueOf(roleStr.toUpperCase());
-                }
+                return userRoleCache.getRole(uid);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch(Exception e) {
                 log.error("Error getting user role", e);
             }
@@ -102,27 +177,429 @@ public class UserService {
         /**
          *  Only SUPER_ADMIN can set SUPER_ADMIN role; 
          *  ADMIN can only set STAFF role
+         *
+         *  With role claims the claim is written first, and put back when the Firestore
+         *  write fails, so the two never disagree. A demoted user's refresh tokens are revoked.
          */
         public boolean updateUserRole(String uid, Role newRole, Role currentUserRole) {
-            if (newRole == Role.SUPER_ADMIN && currentUserRole != Role.SUPER_ADMIN) {
-                return false;
-            }
-
-            if (currentUserRole == Role.ADMIN && newRole != Role.STAFF) {
+            if (!canAssignRole(newRole, currentUserRole)) {
                 return false;
             }
 
             try {
                 Map<String, Object> updates = new HashMap<>();
                 updates.put("role", newRole.name());
-                
+
+                boolean usesClaims = roleSourceProperties.getSource().usesClaims();
+                Map<String, Object> previousClaims = usesClaims ? replaceRoleClaim(uid, newRole) : null;
+
                 DocumentReference docRef = firestore.collection(USERS_COLLECTION).document(uid);
-                docRef.update(updates);
+                userRoleCache.invalidate(uid);
+                try {
+                    // Waited for (up to the Firestore deadline), so a failed or rejected write isn't reported as done
+                    traced(FIRESTORE, "firestore.update", uid, () -> docRef.update(updates))
+                        .whenComplete((result, e) -> userRoleCache.invalidate(uid))
+                        .get();
+                } catch (ExecutionException e) {
+                    if (usesClaims) {
+                        restoreClaims(uid, previousClaims);
+                    }
+                    throw e;
+                }
+
+                if (usesClaims && isDemotion(previousClaims, newRole)) {
+                    revokeRefreshTokens(uid);
+                }
                 log.info("Updated role for user {} to {}", uid, newRole);
                 return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             } catch (Exception e) {
                 log.error("Failed to update user role", e);
                 return false;
             }
         }
+
+        private static boolean canAssignRole(Role newRole, Role currentUserRole) {
+            if (newRole == Role.SUPER_ADMIN && currentUserRole != Role.SUPER_ADMIN) {
+                return false;
+            }
+            return currentUserRole != Role.ADMIN || newRole == Role.STAFF;
+        }
+
+        /**
+         * Writes the role as a custom claim, keeping the other claims of the user.
+         * The new claim shows up in the user's ID tokens after their next token refresh.
+         */
+        public void setRoleClaim(String uid, Role role) throws FirebaseAuthException {
+            replaceRoleClaim(uid, role);
+        }
+
+        // Returns the claims the user had before
+        private Map<String, Object> replaceRoleClaim(String uid, Role role) throws FirebaseAuthException {
+            UserRecord userRecord = getUserById(uid);
+            callGuards.getAuth().callBlocking(() -> {
+                firebaseAuth.setCustomUserClaims(uid, withRoleClaim(userRecord.getCustomClaims(), role));
+                return null;
+            });
+            return userRecord.getCustomClaims();
+        }
+
+        private void restoreClaims(String uid, Map<String, Object> previousClaims) {
+            try {
+                callGuards.getAuth().callBlocking(() -> {
+                    firebaseAuth.setCustomUserClaims(uid, previousClaims);
+                    return null;
+                });
+            } catch (FirebaseAuthException | RuntimeException e) {
+                log.error("Failed to restore the role claim of {} after the Firestore write failed", uid, e);
+            }
+        }
+
+        /**
+         * Signs the user out everywhere, so the next token they get carries the lower role.
+         * Tokens already issued are answered with the Firestore role by [RoleResolver] meanwhile.
+         */
+        private void revokeRefreshTokens(String uid) {
+            try {
+                callGuards.getAuth().callBlocking(() -> {
+                    firebaseAuth.revokeRefreshTokens(uid);
+                    return null;
+                });
+            } catch (FirebaseAuthException | RuntimeException e) {
+                log.error("Failed to revoke the refresh tokens of demoted user {}", uid, e);
+            }
+        }
+
+        // A missing or unknown previous role claim counts as a demotion, revoking costs the user a sign-in at most
+        static boolean isDemotion(Map<String, Object> previousClaims, Role newRole) {
+            Role previous = RoleResolver.roleFromClaim(previousClaims.get(RoleResolver.ROLE_CLAIM));
+            return previous == null || (previous != newRole && previous.hasPermissionLevel(newRole));
+        }
+
+        static Map<String, Object> withRoleClaim(Map<String, Object> customClaims, Role role) {
+            Map<String, Object> claims = new HashMap<>(customClaims);
+            claims.put(RoleResolver.ROLE_CLAIM, role.name());
+            return claims;
+        }
+
+        /**
+         * Reads one page of the users collection ordered by uid, optionally only users with the given role.
+         * The page token is the opaque form of the last uid of the previous page.
+         */
+        public UserPage listUserProfiles(Role role, int pageSize, String pageToken) throws InterruptedException, ExecutionException {
+            Query query = usersQuery(role).limit(pageSize);
+            if (pageToken != null) {
+                query = query.startAfter(decodePageToken(pageToken));
+            }
+
+            List<QueryDocumentSnapshot> documents = readPage(query);
+            List<UserProfile> users = new ArrayList<>(documents.size());
+            for (QueryDocumentSnapshot document : documents) {
+                users.add(UserProfile.from(document));
+            }
+
+            // A short page means there is nothing after it
+            String nextPageToken = documents.size() < pageSize
+                ? null
+                : encodePageToken(documents.get(documents.size() - 1).getId());
+            return new UserPage(users, nextPageToken);
+        }
+
+        /**
+         * Walks the whole users collection (optionally only one role) with startAfter cursors,
+         * handing every page to the handler as soon as it arrives. Only one page is in memory at a time.
+         */
+        public void streamUserProfiles(Role role, int pageSize, PageHandler handler)
+                throws InterruptedException, ExecutionException, IOException {
+            Query query = usersQuery(role).limit(pageSize);
+            List<QueryDocumentSnapshot> documents = readPage(query);
+
+            while (!documents.isEmpty()) {
+                List<UserProfile> users = new ArrayList<>(documents.size());
+                for (QueryDocumentSnapshot document : documents) {
+                    users.add(UserProfile.from(document));
+                }
+                handler.accept(users);
+
+                if (documents.size() < pageSize) {
+                    return;
+                }
+                documents = readPage(query.startAfter(documents.get(documents.size() - 1)));
+            }
+        }
+
+        @FunctionalInterface
+        public interface PageHandler {
+            void accept(List<UserProfile> users) throws IOException;
+        }
+
+        private List<QueryDocumentSnapshot> readPage(Query query) throws InterruptedException, ExecutionException {
+            return traced(FIRESTORE, "firestore.query", null, query::get).get().getDocuments();
+        }
+
+        private Query usersQuery(Role role) {
+            Query query = firestore.collection(USERS_COLLECTION);
+            if (role != null) {
+                query = query.whereEqualTo("role", role.name());
+            }
+            return query.orderBy(FieldPath.documentId());
+        }
+
+        private static String encodePageToken(String lastUid) {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(lastUid.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @throws IllegalArgumentException when the token was not produced by [encodePageToken]
+         */
+        private static String decodePageToken(String pageToken) {
+            return new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+        }
+
+        // ====================================================================
+        // Non-blocking versions of the methods above, adapted from the SDK's ApiFutures.
+        // Chained stages run on the application task executor, which uses
+        // virtual threads when "spring.threads.virtual.enabled" is set.
+        // ====================================================================
+
+        public CompletableFuture<UserRecord> createUserAsync(String email, String password, Role role) {
+            CreateRequest request = new CreateRequest()
+                .setEmail(email)
+                .setPassword(password)
+                .setEmailVerified(false);
+
+            return traced(FIREBASE_AUTH, "auth.createUser", null, () -> firebaseAuth.createUserAsync(request))
+                .thenCompose(userRecord -> {
+                    CompletableFuture<Void> claims = roleSourceProperties.getSource().usesClaims()
+                        ? traced(FIREBASE_AUTH, "auth.setCustomUserClaims", userRecord.getUid(), () -> firebaseAuth.setCustomUserClaimsAsync(
+                            userRecord.getUid(), Map.of(RoleResolver.ROLE_CLAIM, role.name())))
+                        : CompletableFuture.completedFuture(null);
+
+                    return claims.thenApply(ignored -> {
+                        registrationPipeline.submit(userRecord.getUid(), newProfile(userRecord.getUid(), email, role));
+                        return userRecord;
+                    });
+                });
+        }
+
+        public CompletableFuture<UserRecord> getUserByIdAsync(String uid) {
+            return traced(FIREBASE_AUTH, "auth.getUser", uid, () -> firebaseAuth.getUserAsync(uid));
+        }
+
+        public CompletableFuture<UserProfile> getUserProfileFromFirestoreAsync(String uid) {
+            return profileCache.get(uid, () -> readUserProfileAsync(uid))
+                // Updates still sitting in the write-behind buffer are read back too
+                .thenApply(profile -> profileWriteBuffer.overlay(uid, profile));
+        }
+
+        private CompletableFuture<UserProfile> readUserProfileAsync(String uid) {
+            // Shares the read with any role or profile lookup of the same user in flight
+            return traced(FIRESTORE, "firestore.get", uid, () -> userDocumentReader.read(uid)).thenApply(document -> {
+                if (!document.exists()) {
+                    // Remembered by the profile cache for a while, so not every lookup gets here
+                    log.debug("No user profile for UID: {}", uid);
+                }
+                return UserProfile.from(document);
+            });
+        }
+
+        /**
+         * With the write-behind buffer enabled, profile updates are coalesced and written later
+         * (the future completes once they are committed). Writes that touch the role always
+         * go straight to Firestore, since authorization depends on them; they wait for the
+         * buffered updates of the same user first, so an older update can't land on top of them.
+         */
+        public CompletableFuture<Void> saveUserProfileAsync(String uid, Map<String, Object> userData) {
+            if (profileWriteBuffer.isEnabled() && !userData.containsKey("role")) {
+                return profileWriteBuffer.enqueue(uid, userData);
+            }
+
+            DocumentReference docRef = firestore.collection(USERS_COLLECTION).document(uid);
+            return profileWriteBuffer.settle(uid).thenCompose(settled -> {
+                // Invalidate before and after the write, a read in between could cache the old role again
+                userRoleCache.invalidate(uid);
+                return traced(FIRESTORE, "firestore.set", uid, () -> docRef.set(userData));
+            }).handle((result, e) -> {
+                userRoleCache.invalidate(uid);
+                if (e != null) {
+                    log.error("Failed to save user profile for uid: {}", uid, e);
+                    throw new CompletionException(e);
+                }
+                log.info("User profile saved for uid: {}", uid);
+                return null;
+            });
+        }
+
+        public CompletableFuture<Boolean> updateUserRoleAsync(String uid, Role newRole, Role currentUserRole) {
+            if (!canAssignRole(newRole, currentUserRole)) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            DocumentReference docRef = firestore.collection(USERS_COLLECTION).document(uid);
+            boolean usesClaims = roleSourceProperties.getSource().usesClaims();
+
+            // Claim first, as in updateUserRole
+            CompletableFuture<Map<String, Object>> previousClaims = !usesClaims
+                ? CompletableFuture.completedFuture(null)
+                : getUserByIdAsync(uid).thenCompose(userRecord -> traced(FIREBASE_AUTH, "auth.setCustomUserClaims", uid,
+                        () -> firebaseAuth.setCustomUserClaimsAsync(uid, withRoleClaim(userRecord.getCustomClaims(), newRole)))
+                    .thenApply(ignored -> userRecord.getCustomClaims()));
+
+            CompletableFuture<?> update = previousClaims.thenCompose(previous -> {
+                userRoleCache.invalidate(uid);
+                return traced(FIRESTORE, "firestore.update", uid, () -> docRef.update("role", newRole.name()))
+                    .whenComplete((result, e) -> userRoleCache.invalidate(uid))
+                    .handle((result, e) -> e)
+                    .thenCompose(e -> {
+                        if (e != null) {
+                            CompletableFuture<?> restored = !usesClaims
+                                ? CompletableFuture.completedFuture(null)
+                                : traced(FIREBASE_AUTH, "auth.setCustomUserClaims", uid,
+                                    () -> firebaseAuth.setCustomUserClaimsAsync(uid, previous));
+                            return restored.handle((result, restoreError) -> {
+                                if (restoreError != null) {
+                                    log.error("Failed to restore the role claim of {} after the Firestore write failed", uid, restoreError);
+                                }
+                                throw new CompletionException(e);
+                            });
+                        }
+                        if (usesClaims && isDemotion(previous, newRole)) {
+                            return traced(FIREBASE_AUTH, "auth.revokeRefreshTokens", uid, () -> firebaseAuth.revokeRefreshTokensAsync(uid))
+                                .exceptionally(revokeError -> {
+                                    log.error("Failed to revoke the refresh tokens of demoted user {}", uid, revokeError);
+                                    return null;
+                                });
+                        }
+                        return CompletableFuture.completedFuture(null);
+                    });
+            });
+
+            return update.handle((result, e) -> {
+                if (e != null) {
+                    log.error("Failed to update user role", e);
+                    return false;
+                }
+                log.info("Updated role for user {} to {}", uid, newRole);
+                return true;
+            });
+        }
+
+        /**
+         * Looks up many users with one getUsers and one getAll call per chunk of uids,
+         * all chunks in flight at the same time. Duplicate uids are looked up once.
+         *
+         * The returned future fails when an Auth chunk fails or times out, since the users
+         * can't be told apart from missing ones then. A failed Firestore chunk only marks
+         * its users' profiles as partial, as in GET /api/profile/{userId}.
+         */
+        public CompletableFuture<UserProfileBatch> getUserProfilesAsync(Collection<String> uids) {
+            List<String> distinctUids = List.copyOf(new LinkedHashSet<>(uids));
+            int chunkSize = Math.max(1, Math.min(profileLookupProperties.getBatchChunkSize(), MAX_GET_USERS_IDENTIFIERS));
+
+            List<CompletableFuture<Map<String, UserProfileResponse>>> chunks = new ArrayList<>();
+            for (int from = 0; from < distinctUids.size(); from += chunkSize) {
+                chunks.add(getUserProfileChunkAsync(distinctUids.subList(from, Math.min(distinctUids.size(), from + chunkSize))));
+            }
+
+            return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+                Map<String, UserProfileResponse> found = new HashMap<>();
+                chunks.forEach(chunk -> found.putAll(chunk.join()));
+
+                Map<String, UserProfileResponse> profiles = new LinkedHashMap<>();
+                List<String> missing = new ArrayList<>();
+                for (String uid : distinctUids) {
+                    UserProfileResponse profile = found.get(uid);
+                    if (profile != null) {
+                        profiles.put(uid, profile);
+                    } else {
+                        missing.add(uid);
+                    }
+                }
+                return new UserProfileBatch(profiles, missing);
+            });
+        }
+
+        private CompletableFuture<Map<String, UserProfileResponse>> getUserProfileChunkAsync(List<String> uids) {
+            List<UserIdentifier> identifiers = uids.stream().<UserIdentifier>map(UidIdentifier::new).toList();
+            CompletableFuture<GetUsersResult> users = traced(FIREBASE_AUTH, "auth.getUsers", null, () -> firebaseAuth.getUsersAsync(identifiers))
+                .orTimeout(profileLookupProperties.getAuthTimeout().toMillis(), TimeUnit.MILLISECONDS);
+
+            DocumentReference[] documents = uids.stream()
+                .map(uid -> firestore.collection(USERS_COLLECTION).document(uid))
+                .toArray(DocumentReference[]::new);
+            CompletableFuture<Map<String, UserProfile>> profiles = traced(FIRESTORE, "firestore.getAll", null, () -> firestore.getAll(documents))
+                .orTimeout(profileLookupProperties.getFirestoreTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(snapshots -> {
+                    Map<String, UserProfile> byUid = new HashMap<>();
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        byUid.put(snapshot.getId(), profileWriteBuffer.overlay(snapshot.getId(), UserProfile.from(snapshot)));
+                    }
+                    return byUid;
+                })
+                .exceptionally(e -> {
+                    log.warn("Returning partial profiles for {} users: {}", uids.size(), e.toString());
+                    return null;
+                });
+
+            return users.thenCombine(profiles, (result, byUid) -> {
+                Map<String, UserProfileResponse> responses = new HashMap<>();
+                for (UserRecord userRecord : result.getUsers()) {
+                    UserProfile profile = byUid == null ? UserProfile.EMPTY : byUid.getOrDefault(userRecord.getUid(), UserProfile.EMPTY);
+                    responses.put(userRecord.getUid(), new UserProfileResponse(
+                        userRecord.getUid(),
+                        userRecord.getEmail(),
+                        userRecord.getDisplayName(),
+                        profile,
+                        byUid == null));
+                }
+                return responses;
+            });
+        }
+
+        private <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> future) {
+            return FirebaseFutures.toCompletableFuture(future, taskExecutor);
+        }
+
+        /**
+         * Makes the SDK call inside a client span that ends when the call completes.
+         * The future is adapted outside of the span, so chained stages continue in the caller's span.
+         *
+         * The call goes through the backend's [CallGuard]: it fails after the deadline, and is
+         * rejected without a span while the backend's breaker is open or its bulkhead is full.
+         */
+        private <T> CompletableFuture<T> traced(String remoteService, String spanName, String uid, Supplier<ApiFuture<T>> call) {
+            CallGuard guard = FIRESTORE.equals(remoteService) ? callGuards.getFirestore() : callGuards.getAuth();
+            return guard.call(() -> startTraced(remoteService, spanName, uid, call));
+        }
+
+        private <T> CompletableFuture<T> startTraced(String remoteService, String spanName, String uid, Supplier<ApiFuture<T>> call) {
+            Span span = tracer.nextSpan().name(spanName).remoteServiceName(remoteService);
+            if (uid != null && !span.isNoop()) {
+                span.tag(AuthTracing.UID_HASH, AuthTracing.uidHash(uid));
+            }
+
+            ApiFuture<T> future;
+            try (Tracer.SpanInScope ignored = tracer.withSpan(span.start())) {
+                future = call.get();
+            } catch (RuntimeException e) {
+                span.error(e).end();
+                throw e;
+            }
+            // Ended from the SDK future, before any stage chained onto the returned one runs.
+            // A call timed out by its guard is cancelled, which ends the span too.
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    span.end();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    span.error(t).end();
+                }
+            }, MoreExecutors.directExecutor());
+            return toCompletableFuture(future);
+        }
 }
@@ -0,0 +1,70 @@
+package com.ivannagara.xcelerator.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.boot.actuate.health.Status;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.ivannagara.xcelerator.security.RequiredRole;
+
+class FirebaseClientsTests {
+
+	private final FirebaseApp firebaseApp = FirebaseApp.initializeApp(FirebaseOptions.builder()
+			.setCredentials(GoogleCredentials.create(new AccessToken("test", null)))
+			.setProjectId("xcelerator-test")
+			.build(), "firebase-clients-tests");
+
+	@AfterEach
+	void tearDown() {
+		firebaseApp.delete();
+	}
+
+	@Test
+	void buildsFirestoreOnFirstUse() throws Exception {
+		FirebaseClients clients = new FirebaseClients(firebaseApp, new FirebaseProperties());
+
+		assertThat(AopUtils.isAopProxy(clients.getFirestore())).isTrue();
+		assertThat(clients.isFirestoreReady()).isFalse();
+		assertThat(clients.health().getStatus()).isEqualTo(Status.UNKNOWN);
+
+		// Nothing goes over the network until a read or write is sent
+		assertThat(clients.getFirestore().collection("users").getId()).isEqualTo("users");
+		assertThat(clients.isFirestoreReady()).isTrue();
+		assertThat(clients.health().getStatus()).isEqualTo(Status.UP);
+
+		clients.destroy();
+	}
+
+	@Test
+	void buildsFirestoreRightAwayWithoutLazyInit() throws Exception {
+		FirebaseProperties properties = new FirebaseProperties();
+		properties.setLazyInit(false);
+		FirebaseClients clients = new FirebaseClients(firebaseApp, properties);
+
+		assertThat(clients.isFirestoreReady()).isTrue();
+		assertThat(AopUtils.isAopProxy(clients.getFirestore())).isFalse();
+
+		clients.destroy();
+	}
+
+	@Test
+	void registersNativeImageHints() {
+		RuntimeHints hints = new RuntimeHints();
+		new NativeImageHints().registerHints(hints, getClass().getClassLoader());
+
+		assertThat(RuntimeHintsPredicates.proxies().forInterfaces(AopProxyUtils.completeJdkProxyInterfaces(Firestore.class)))
+				.accepts(hints);
+		assertThat(RuntimeHintsPredicates.reflection().onType(RequiredRole.class)).accepts(hints);
+		assertThat(RuntimeHintsPredicates.resource().forResource("admin_sdk.properties")).accepts(hints);
+	}
+}
@@ -0,0 +1,115 @@
+package com.ivannagara.xcelerator.config;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.ErrorCode;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+
+/**
+ * The real security filter chain with [FirebaseAuthFilter] in it, Firebase replaced by mocks.
+ * A request with a valid token has to reach the controller as an authenticated user.
+ */
+@SpringBootTest(properties = {
+		"xcelerator.firebase.enabled=false",
+		"xcelerator.roles.source=CLAIM",
+		"xcelerator.roles.cache.listen=false",
+		"xcelerator.rate-limit.enabled=false",
+		"management.server.port=-1" })
+@AutoConfigureMockMvc
+class SecurityFilterChainTests {
+
+	private static final String VALID = "valid-token";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void validTokenReachesTheControllerAuthenticatedWithItsRole() throws Exception {
+		mockMvc.perform(get("/test/whoami").header("Authorization", "Bearer " + VALID))
+				.andExpect(status().isOk())
+				.andExpect(content().string("user-1 ROLE_ADMIN"));
+		mockMvc.perform(get("/api/roles").header("Authorization", "Bearer " + VALID))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void requestsWithoutAValidTokenAreRejected() throws Exception {
+		mockMvc.perform(get("/api/roles"))
+				.andExpect(status().isUnauthorized());
+		mockMvc.perform(get("/api/roles").header("Authorization", "Bearer forged"))
+				.andExpect(status().isUnauthorized());
+		mockMvc.perform(get("/test/whoami").header("Authorization", "Bearer forged"))
+				.andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	void publicPathsNeedNoToken() throws Exception {
+		mockMvc.perform(get("/api/public/health"))
+				.andExpect(status().isOk());
+	}
+
+	@TestConfiguration(proxyBeanMethods = false)
+	static class FirebaseMocks {
+
+		@Bean
+		FirebaseAuth firebaseAuth() throws FirebaseAuthException {
+			FirebaseToken token = mock(FirebaseToken.class);
+			when(token.getUid()).thenReturn("user-1");
+			when(token.getClaims()).thenReturn(Map.of("role", "ADMIN", "iat", System.currentTimeMillis() / 1000));
+
+			FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+			when(firebaseAuth.verifyIdToken(anyString())).thenThrow(
+					new FirebaseAuthException(ErrorCode.INVALID_ARGUMENT, "forged", null, null, AuthErrorCode.INVALID_ID_TOKEN));
+			doReturn(token).when(firebaseAuth).verifyIdToken(VALID);
+			return firebaseAuth;
+		}
+
+		@Bean
+		Firestore firestore() {
+			return mock(Firestore.class);
+		}
+
+		@Bean
+		WhoAmIController whoAmIController() {
+			return new WhoAmIController();
+		}
+	}
+
+	@RestController
+	static class WhoAmIController {
+
+		@GetMapping("/test/whoami")
+		String whoAmI() {
+			Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+			return authentication.getName() + " " + authentication.getAuthorities().stream()
+					.map(GrantedAuthority::getAuthority)
+					.collect(Collectors.joining(","));
+		}
+	}
+}
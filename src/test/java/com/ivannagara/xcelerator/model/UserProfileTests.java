@@ -0,0 +1,70 @@
+package com.ivannagara.xcelerator.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.Timestamp;
+
+class UserProfileTests {
+
+	@Test
+	void readsTheTypedFields() {
+		UserProfile profile = UserProfile.from("user-1", Map.of("email", "a@example.com", "displayName", "A",
+				"role", "admin", "createdAt", 1700000000000L, "team", "blue"));
+
+		assertThat(profile.uid()).isEqualTo("user-1");
+		assertThat(profile.email()).isEqualTo("a@example.com");
+		assertThat(profile.displayName()).isEqualTo("A");
+		assertThat(profile.role()).isEqualTo(Role.ADMIN);
+		assertThat(profile.createdAt()).isEqualTo(1700000000000L);
+		assertThat(profile.attributes()).containsExactly(Map.entry("team", "blue"));
+	}
+
+	@Test
+	void keepsValuesOfAnotherTypeInTheAttributes() {
+		Timestamp createdAt = Timestamp.ofTimeSecondsAndNanos(1700000000, 0);
+		Map<String, Object> data = new HashMap<>();
+		data.put("email", Map.of("primary", "a@example.com"));
+		data.put("displayName", 42L);
+		data.put("createdAt", createdAt);
+		data.put("role", "OWNER");
+		data.put("uid", 7L);
+
+		UserProfile profile = UserProfile.from("user-1", data);
+
+		assertThat(profile.uid()).isEqualTo("user-1");
+		assertThat(profile.email()).isNull();
+		assertThat(profile.displayName()).isNull();
+		assertThat(profile.role()).isNull();
+		assertThat(profile.createdAt()).isNull();
+		assertThat(profile.attributes()).containsOnly(Map.entry("email", Map.of("primary", "a@example.com")),
+				Map.entry("displayName", 42L), Map.entry("createdAt", createdAt), Map.entry("role", "OWNER"));
+		// And written back as they were
+		assertThat(profile.toMap()).containsEntry("createdAt", createdAt).containsEntry("displayName", 42L);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void cannotBeChangedByTheCallersItIsSharedWith() {
+		Map<String, Object> address = new HashMap<>(Map.of("city", "Jakarta"));
+		Map<String, Object> data = new HashMap<>(Map.of("address", address, "tags", new ArrayList<>(List.of("a"))));
+
+		UserProfile profile = UserProfile.from("user-1", data);
+		address.put("city", "Bandung");
+
+		assertThat(profile.attributes()).containsEntry("address", Map.of("city", "Jakarta"));
+		assertThatThrownBy(() -> profile.attributes().put("team", "red"))
+				.isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> ((Map<String, Object>) profile.attributes().get("address")).put("city", "Bandung"))
+				.isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> ((List<Object>) profile.attributes().get("tags")).add("b"))
+				.isInstanceOf(UnsupportedOperationException.class);
+	}
+}
@@ -0,0 +1,93 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import com.google.firebase.ErrorCode;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.ivannagara.xcelerator.config.AuthFailureLogProperties;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+class AuthFailureLogTests {
+
+	private final AtomicLong clock = new AtomicLong();
+	private final Logger logger = (Logger) LoggerFactory.getLogger("xcelerator.auth.failures");
+	private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+	@BeforeEach
+	void setUp() {
+		events.start();
+		logger.addAppender(events);
+		logger.setLevel(Level.INFO);
+	}
+
+	@AfterEach
+	void tearDown() {
+		logger.detachAppender(events);
+		logger.setLevel(null);
+	}
+
+	@Test
+	void logsOneLinePerReasonAndSummarizesTheRest() {
+		AuthFailureLog log = new AuthFailureLog(new AuthFailureLogProperties(), clock::get);
+
+		for (int i = 0; i < 100; i++) {
+			log.invalidToken(invalidToken(AuthErrorCode.EXPIRED_ID_TOKEN));
+		}
+		log.invalidToken(invalidToken(null));
+		log.roleLookupFailed(new ExecutionException(new IllegalStateException("Firestore down")));
+		log.roleLookupFailed(new ExecutionException(new IllegalStateException("Firestore down")));
+
+		// The first of each reason, without a stack trace
+		assertThat(events.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+				"Authentication failed (EXPIRED_ID_TOKEN): " + invalidToken(AuthErrorCode.EXPIRED_ID_TOKEN),
+				"Authentication failed (INVALID_ARGUMENT): " + invalidToken(null),
+				"Role lookup failed, defaulting to STAFF (ROLE_LOOKUP_FAILED): java.util.concurrent.ExecutionException: java.lang.IllegalStateException: Firestore down");
+		assertThat(events.list).allMatch(event -> event.getThrowableProxy() == null);
+		assertThat(log.getSuppressedCount()).isEqualTo(100);
+
+		events.list.clear();
+		log.summarize();
+		assertThat(events.list).singleElement().extracting(ILoggingEvent::getFormattedMessage).asString()
+				.startsWith("Suppressed 100 authentication failures (one logged per reason every 60 s): ")
+				.contains("EXPIRED_ID_TOKEN=99", "ROLE_LOOKUP_FAILED=1");
+
+		// Nothing new to sum up, and the next interval logs the first failure again
+		events.list.clear();
+		log.summarize();
+		assertThat(events.list).isEmpty();
+		clock.addAndGet(Duration.ofMinutes(1).toNanos());
+		log.invalidToken(invalidToken(AuthErrorCode.EXPIRED_ID_TOKEN));
+		assertThat(events.list).hasSize(1);
+	}
+
+	@Test
+	void logsTheStackTraceAtDebug() {
+		AuthFailureLog log = new AuthFailureLog(new AuthFailureLogProperties(), clock::get);
+		logger.setLevel(Level.DEBUG);
+
+		log.invalidToken(invalidToken(AuthErrorCode.REVOKED_ID_TOKEN));
+
+		assertThat(events.list).singleElement().satisfies(event -> {
+			assertThat(event.getLevel()).isEqualTo(Level.DEBUG);
+			assertThat(event.getThrowableProxy().getClassName()).isEqualTo(FirebaseAuthException.class.getName());
+		});
+	}
+
+	private static FirebaseAuthException invalidToken(AuthErrorCode authErrorCode) {
+		return new FirebaseAuthException(ErrorCode.INVALID_ARGUMENT, "Invalid token", null, null, authErrorCode);
+	}
+}
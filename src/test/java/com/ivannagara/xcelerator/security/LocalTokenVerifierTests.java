@@ -0,0 +1,124 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.ivannagara.xcelerator.config.TokenVerifierProperties;
+
+class LocalTokenVerifierTests {
+
+	private static final String PROJECT_ID = "xcelerator-test";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@TempDir
+	Path directory;
+
+	private KeyPair keyPair;
+	private LocalTokenVerifier verifier;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+
+		// Same {"kid": "PEM"} shape as Google's endpoint, with a bare public key
+		String pem = "-----BEGIN PUBLIC KEY-----\n"
+				+ Base64.getMimeEncoder().encodeToString(keyPair.getPublic().getEncoded())
+				+ "\n-----END PUBLIC KEY-----\n";
+		Path keysFile = directory.resolve("keys.json");
+		objectMapper.writeValue(keysFile.toFile(), Map.of("local-key", pem));
+
+		TokenVerifierProperties properties = new TokenVerifierProperties();
+		PublicKeyStore keyStore = new PublicKeyStore(
+				new FilePublicKeySource(keysFile, Duration.ofMinutes(1), objectMapper), properties);
+		keyStore.refresh();
+		verifier = new LocalTokenVerifier(keyStore, PROJECT_ID, Duration.ofSeconds(30), objectMapper);
+	}
+
+	@Test
+	void verifiesLocallyMintedToken() throws Exception {
+		FirebaseToken token = verifier.verify(mint("local-key", claims(3600)));
+
+		assertThat(token.getUid()).isEqualTo("user-1");
+		assertThat(token.getEmail()).isEqualTo("user-1@example.com");
+		assertThat(token.getClaims()).containsEntry("role", "ADMIN");
+	}
+
+	@Test
+	void rejectsExpiredToken() {
+		assertThatThrownBy(() -> verifier.verify(mint("local-key", claims(-3600))))
+				.isInstanceOfSatisfying(FirebaseAuthException.class,
+						e -> assertThat(e.getAuthErrorCode()).isEqualTo(AuthErrorCode.EXPIRED_ID_TOKEN));
+	}
+
+	@Test
+	void rejectsTamperedTokenWrongAudienceAndUnknownKey() throws Exception {
+		String token = mint("local-key", claims(3600));
+		String[] parts = token.split("\\.");
+		Map<String, Object> elevated = claims(3600);
+		elevated.put("role", "SUPER_ADMIN");
+		String tampered = parts[0] + "." + base64Url(objectMapper.writeValueAsBytes(elevated)) + "." + parts[2];
+
+		Map<String, Object> otherProject = claims(3600);
+		otherProject.put("aud", "someone-else");
+
+		assertInvalid(tampered);
+		assertInvalid(mint("local-key", otherProject));
+		assertInvalid(mint("rotated-key", claims(3600)));
+		assertInvalid("not-a-jwt");
+	}
+
+	private void assertInvalid(String token) {
+		assertThatThrownBy(() -> verifier.verify(token))
+				.isInstanceOfSatisfying(FirebaseAuthException.class,
+						e -> assertThat(e.getAuthErrorCode()).isEqualTo(AuthErrorCode.INVALID_ID_TOKEN));
+	}
+
+	private static Map<String, Object> claims(long expiresInSeconds) {
+		long now = System.currentTimeMillis() / 1000;
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("iss", "https://securetoken.google.com/" + PROJECT_ID);
+		claims.put("aud", PROJECT_ID);
+		claims.put("sub", "user-1");
+		claims.put("email", "user-1@example.com");
+		claims.put("role", "ADMIN");
+		claims.put("iat", now - 60);
+		claims.put("auth_time", now - 60);
+		claims.put("exp", now + expiresInSeconds);
+		return claims;
+	}
+
+	private String mint(String keyId, Map<String, Object> claims) throws Exception {
+		String header = base64Url(objectMapper.writeValueAsBytes(Map.of("alg", "RS256", "typ", "JWT", "kid", keyId)));
+		String payload = base64Url(objectMapper.writeValueAsBytes(claims));
+
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(keyPair.getPrivate());
+		signature.update((header + "." + payload).getBytes(StandardCharsets.US_ASCII));
+		return header + "." + payload + "." + base64Url(signature.sign());
+	}
+
+	private static String base64Url(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+}
@@ -0,0 +1,77 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.ivannagara.xcelerator.config.TokenVerifierProperties;
+
+class PublicKeyStoreTests {
+
+	@Test
+	void concurrentUnknownKeyIdsFetchOnce() throws Exception {
+		int requests = 16;
+		AtomicInteger fetches = new AtomicInteger();
+		PublicKeySource source = () -> {
+			fetches.incrementAndGet();
+			return new PublicKeySource.KeySet(Map.of(), Instant.now().plus(1, ChronoUnit.HOURS));
+		};
+		PublicKeyStore keyStore = new PublicKeyStore(source, new AllMissFirst(requests));
+
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<?>> lookups = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				String keyId = "forged-" + i;
+				lookups.add(executor.submit(() -> keyStore.get(keyId)));
+			}
+			for (Future<?> lookup : lookups) {
+				assertThat(lookup.get(10, TimeUnit.SECONDS)).isNull();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(fetches).hasValue(1);
+	}
+
+	/**
+	 * Holds each thread's first read of the interval (the check before the lock) until every
+	 * request has made it, so they all see the refresh as due before any of them fetches
+	 */
+	private static final class AllMissFirst extends TokenVerifierProperties {
+
+		private final CyclicBarrier allChecked;
+		private final ThreadLocal<Boolean> checked = ThreadLocal.withInitial(() -> false);
+
+		AllMissFirst(int requests) {
+			this.allChecked = new CyclicBarrier(requests);
+		}
+
+		@Override
+		public Duration getMinRefreshInterval() {
+			if (!checked.get()) {
+				checked.set(true);
+				try {
+					allChecked.await(5, TimeUnit.SECONDS);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return super.getMinRefreshInterval();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.ivannagara.xcelerator.config.PublicPathProperties;
+
+class PublicPathMatcherTests {
+
+	@Test
+	void matchesExactPathsAndSubtrees() {
+		PublicPathMatcher matcher = new PublicPathMatcher(List.of("/api/public/**", "/webhooks/stripe", "/static/**"));
+
+		assertThat(matcher.matches("/api/public")).isTrue();
+		assertThat(matcher.matches("/api/public/")).isTrue();
+		assertThat(matcher.matches("/api/public/health")).isTrue();
+		assertThat(matcher.matches("/webhooks/stripe")).isTrue();
+		assertThat(matcher.matches("/static/css/app.css")).isTrue();
+
+		assertThat(matcher.matches("/api/publicity")).isFalse();
+		assertThat(matcher.matches("/api/pub")).isFalse();
+		assertThat(matcher.matches("/webhooks/stripe/events")).isFalse();
+		assertThat(matcher.matches("/api/profile/abc")).isFalse();
+		assertThat(matcher.matches("")).isFalse();
+	}
+
+	@Test
+	void rootSubtreeMatchesEverything() {
+		PublicPathMatcher matcher = new PublicPathMatcher(List.of("/**"));
+
+		assertThat(matcher.matches("/")).isTrue();
+		assertThat(matcher.matches("/api/admin/users")).isTrue();
+	}
+
+	@Test
+	void rejectsUnsupportedPatterns() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new PublicPathMatcher(List.of("/api/*/health")));
+		assertThatIllegalArgumentException().isThrownBy(() -> new PublicPathMatcher(List.of("api/public/**")));
+		assertThatIllegalArgumentException().isThrownBy(() -> new PublicPathMatcher(List.of("/users/{id}")));
+	}
+
+	@Test
+	void managementPathsArePublicOnTheManagementPortOnly() {
+		PublicPathMatcher matcher = new PublicPathMatcher(List.of("/actuator/health"), List.of("/actuator/prometheus"), 8081);
+
+		assertThat(matcher.matches(request(8081, "/actuator/prometheus"))).isTrue();
+		assertThat(matcher.matches(request(8080, "/actuator/prometheus"))).isFalse();
+		assertThat(matcher.matches(request(8080, "/actuator/health"))).isTrue();
+		assertThat(matcher.matches(request(8081, "/api/admin/users"))).isFalse();
+
+		// Without a separate management port they would be public on the application port
+		PublicPathProperties properties = new PublicPathProperties();
+		properties.setManagementPublicPaths(List.of("/actuator/prometheus"));
+		PublicPathMatcher shared = new PublicPathMatcher(properties, 8080, 8080);
+		assertThat(shared.matches(request(8080, "/actuator/prometheus"))).isFalse();
+	}
+
+	private static MockHttpServletRequest request(int port, String path) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		request.setLocalPort(port);
+		return request;
+	}
+}
@@ -0,0 +1,76 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.ivannagara.xcelerator.config.RateLimitProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+class RateLimiterTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void allowsBurstThenRefillsAtRate() {
+		RateLimiter limiter = new RateLimiter(properties());
+		long now = 1_000 * SECOND;
+
+		// STAFF falls back to the authenticated limit: 3 at once, then 1 per second
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire("staff-uid", "/api/profile", Role.STAFF, now)).isZero();
+		}
+		long wait = limiter.tryAcquire("staff-uid", "/api/profile", Role.STAFF, now);
+		assertThat(wait).isEqualTo(SECOND);
+
+		// Other callers have their own bucket
+		assertThat(limiter.tryAcquire("other-uid", "/api/profile", Role.STAFF, now)).isZero();
+
+		assertThat(limiter.tryAcquire("staff-uid", "/api/profile", Role.STAFF, now + wait)).isZero();
+		assertThat(limiter.tryAcquire("staff-uid", "/api/profile", Role.STAFF, now + wait)).isPositive();
+	}
+
+	@Test
+	void usesRoleAndRouteLimits() {
+		RateLimiter limiter = new RateLimiter(properties());
+		long now = 1_000 * SECOND;
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(limiter.tryAcquire("admin-uid", "/api/profile", Role.SUPER_ADMIN, now)).isZero();
+		}
+
+		// The route has a bucket of its own, separate from the caller's other requests
+		assertThat(limiter.tryAcquire("10.0.0.1", "/api/public/register", null, now)).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1", "/api/public/register", null, now)).isEqualTo(10 * SECOND);
+		assertThat(limiter.tryAcquire("10.0.0.1", "/api/public/health", null, now)).isZero();
+	}
+
+	@Test
+	void evictsIdleCallersWhenFull() {
+		RateLimitProperties properties = properties();
+		properties.setMaxKeys(4);
+		RateLimiter limiter = new RateLimiter(properties);
+
+		for (int i = 0; i < 64; i++) {
+			assertThat(limiter.tryAcquire("uid-" + i, "/api/profile", Role.STAFF, i * SECOND)).isZero();
+		}
+		assertThat(limiter.getCapacity()).isEqualTo(4);
+		assertThat(limiter.getEvictionCount()).isEqualTo(60);
+	}
+
+	private static RateLimitProperties properties() {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.setAnonymous(new RateLimitProperties.Limit(5, 5));
+		properties.setAuthenticated(new RateLimitProperties.Limit(3, 1));
+		properties.getRoles().put(Role.SUPER_ADMIN, new RateLimitProperties.Limit(10, 10));
+
+		RateLimitProperties.Route register = new RateLimitProperties.Route();
+		register.setPattern("/api/public/register");
+		register.setCapacity(1);
+		register.setPermitsPerSecond(0.1);
+		properties.getRoutes().add(register);
+		return properties;
+	}
+}
@@ -0,0 +1,84 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import com.ivannagara.xcelerator.model.Role;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+
+class RequiredRoleInterceptorTests {
+
+	@Test
+	void resolvesMethodAnnotationBeforeClassAnnotation() throws Exception {
+		RequiredRoleRegistry registry = registry();
+
+		assertThat(registry.getRequiredRole(new HandlerMethod(new AdminHandlers(), "list"))).isEqualTo(Role.ADMIN);
+		assertThat(registry.getRequiredRole(new HandlerMethod(new AdminHandlers(), "create"))).isEqualTo(Role.SUPER_ADMIN);
+		assertThat(registry.getRequiredRole(new HandlerMethod(new OpenHandlers(), "health"))).isNull();
+	}
+
+	@Test
+	void rejectsInsufficientRole() throws Exception {
+		RequiredRoleInterceptor interceptor = new RequiredRoleInterceptor(registry(), new AuthMetrics(new SimpleMeterRegistry()),
+				new AuthTracing(Tracer.NOOP));
+		HandlerMethod create = new HandlerMethod(new AdminHandlers(), "create");
+
+		MockHttpServletResponse denied = new MockHttpServletResponse();
+		assertThat(interceptor.preHandle(request(Role.ADMIN), denied, create)).isFalse();
+		assertThat(denied.getStatus()).isEqualTo(403);
+		assertThat(denied.getContentAsString()).contains("Access denied");
+
+		assertThat(interceptor.preHandle(request(Role.SUPER_ADMIN), new MockHttpServletResponse(), create)).isTrue();
+		assertThat(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), create)).isFalse();
+	}
+
+	@Test
+	void rejectsEverythingAnnotatedBeforeScan() throws Exception {
+		RequiredRoleInterceptor interceptor = new RequiredRoleInterceptor(new RequiredRoleRegistry(new DefaultListableBeanFactory()),
+				new AuthMetrics(new SimpleMeterRegistry()), new AuthTracing(Tracer.NOOP));
+
+		assertThat(interceptor.preHandle(request(Role.SUPER_ADMIN), new MockHttpServletResponse(),
+				new HandlerMethod(new AdminHandlers(), "list"))).isFalse();
+	}
+
+	private static RequiredRoleRegistry registry() throws NoSuchMethodException {
+		RequiredRoleRegistry registry = new RequiredRoleRegistry(new DefaultListableBeanFactory());
+		registry.scan(List.of(
+				new HandlerMethod(new AdminHandlers(), "list"),
+				new HandlerMethod(new AdminHandlers(), "create"),
+				new HandlerMethod(new OpenHandlers(), "health")));
+		return registry;
+	}
+
+	private static MockHttpServletRequest request(Role role) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute("userRole", role);
+		return request;
+	}
+
+	@RequiredRole(Role.ADMIN)
+	static class AdminHandlers {
+
+		public void list() {
+		}
+
+		@RequiredRole(Role.SUPER_ADMIN)
+		public void create() {
+		}
+	}
+
+	static class OpenHandlers {
+
+		public void health() {
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.ivannagara.xcelerator.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.firebase.auth.FirebaseToken;
+import com.ivannagara.xcelerator.config.TokenCacheProperties;
+
+class VerifiedTokenCacheTests {
+
+	@Test
+	void returnsCachedTokenUntilItExpires() {
+		VerifiedTokenCache cache = new VerifiedTokenCache(properties(16, Duration.ZERO));
+		FirebaseToken live = token(System.currentTimeMillis() / 1000 + 3600);
+		FirebaseToken expired = token(System.currentTimeMillis() / 1000 - 1);
+
+		assertThat(cache.get("live-token")).isNull();
+		cache.put("live-token", live);
+		cache.put("expired-token", expired);
+
+		assertThat(cache.get("live-token")).isSameAs(live);
+		assertThat(cache.get("expired-token")).isNull();
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(2);
+	}
+
+	@Test
+	void evictsWhenAllSlotsAreTaken() {
+		VerifiedTokenCache cache = new VerifiedTokenCache(properties(4, Duration.ofMinutes(5)));
+		FirebaseToken decoded = token(System.currentTimeMillis() / 1000 + 3600);
+
+		for (int i = 0; i < 64; i++) {
+			cache.put("token-" + i, decoded);
+		}
+
+		assertThat(cache.getCapacity()).isEqualTo(4);
+		assertThat(cache.getEvictionCount()).isGreaterThanOrEqualTo(60);
+	}
+
+	@Test
+	void disabledCacheNeverHits() {
+		TokenCacheProperties properties = properties(16, Duration.ZERO);
+		properties.setEnabled(false);
+		VerifiedTokenCache cache = new VerifiedTokenCache(properties);
+
+		cache.put("token", token(System.currentTimeMillis() / 1000 + 3600));
+
+		assertThat(cache.get("token")).isNull();
+	}
+
+	private static TokenCacheProperties properties(int maxEntries, Duration safetyTtl) {
+		TokenCacheProperties properties = new TokenCacheProperties();
+		properties.setMaxEntries(maxEntries);
+		properties.setSafetyTtl(safetyTtl);
+		return properties;
+	}
+
+	private static FirebaseToken token(long expSeconds) {
+		FirebaseToken token = mock(FirebaseToken.class);
+		when(token.getClaims()).thenReturn(Map.of("exp", expSeconds));
+		return token;
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UserImportOptions;
+import com.google.firebase.auth.UserImportResult;
+import com.google.firebase.auth.UserRecord;
+import com.ivannagara.xcelerator.config.BulkImportProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.service.BulkUserImportService.ImportFormat;
+import com.ivannagara.xcelerator.service.BulkUserImportService.ImportState;
+import com.ivannagara.xcelerator.service.BulkUserImportService.ImportStatus;
+import com.ivannagara.xcelerator.service.BulkUserImportService.RowError;
+
+class BulkUserImportServiceTests {
+
+	private final FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+	private final Firestore firestore = mock(Firestore.class);
+	private final BulkWriter bulkWriter = mock(BulkWriter.class);
+	private final BulkImportProperties properties = new BulkImportProperties();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document(anyString())).thenReturn(mock(DocumentReference.class));
+		when(firestore.collection("users")).thenReturn(users);
+		when(firestore.bulkWriter(any(BulkWriterOptions.class))).thenReturn(bulkWriter);
+		when(bulkWriter.create(any(DocumentReference.class), anyMap()))
+				.thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+		when(bulkWriter.flush()).thenReturn(ApiFutures.immediateFuture(null));
+
+		UserImportResult imported = mock(UserImportResult.class);
+		when(imported.getErrors()).thenReturn(List.of());
+		when(firebaseAuth.importUsers(anyList())).thenReturn(imported);
+		when(firebaseAuth.importUsers(anyList(), any(UserImportOptions.class))).thenReturn(imported);
+
+		properties.setBcryptStrength(4);
+		properties.setBatchesPerSecond(1000);
+	}
+
+	@Test
+	void reportsExistingUsersInsteadOfOverwritingThem() throws Exception {
+		GetUsersResult existing = existing(user("other-uid", "taken@example.com"), user("taken-uid", null));
+		when(firebaseAuth.getUsers(anyList())).thenReturn(existing);
+
+		ImportStatus status = service().start(csv("""
+				uid,email,password,role
+				,taken@example.com,secret,STAFF
+				taken-uid,someone@example.com,,STAFF
+				,new@example.com,secret,ADMIN
+				,NEW@example.com,,STAFF
+				"""), ImportFormat.CSV);
+
+		assertThat(status.state()).isEqualTo(ImportState.COMPLETED);
+		assertThat(status.totalRows()).isEqualTo(3);
+		assertThat(status.importedRows()).isEqualTo(1);
+		assertThat(status.errors()).extracting(RowError::line, RowError::reason).containsExactlyInAnyOrder(
+				tuple(5, "Duplicate uid or email in the upload"),
+				tuple(2, "A user with this uid or email already exists"),
+				tuple(3, "A user with this uid or email already exists"));
+
+		// Profiles are created, an existing document is never replaced
+		verify(bulkWriter, times(1)).create(any(DocumentReference.class), anyMap());
+		verify(bulkWriter, never()).set(any(DocumentReference.class), anyMap());
+	}
+
+	@Test
+	void resumesWithoutCountingRowsTwice() throws Exception {
+		String uidA = BulkUserImportService.uidFor("a@example.com");
+		String uidB = BulkUserImportService.uidFor("b@example.com");
+		UserRecord other = user("other-uid", "existing@example.com");
+		GetUsersResult before = existing(other);
+		// The second lookup also finds the accounts the first run imported
+		GetUsersResult after = existing(other, user(uidA, "a@example.com"), user(uidB, "b@example.com"));
+		when(firebaseAuth.getUsers(anyList())).thenReturn(before, after);
+		when(bulkWriter.flush()).thenReturn(
+				ApiFutures.immediateFailedFuture(new IllegalStateException("Firestore unavailable")),
+				ApiFutures.immediateFuture(null));
+
+		BulkUserImportService service = service();
+		ImportStatus failed = service.start(csv("""
+				email
+				existing@example.com
+				a@example.com
+				b@example.com
+				"""), ImportFormat.CSV);
+		assertThat(failed.state()).isEqualTo(ImportState.FAILED);
+		assertThat(failed.failedRows()).isZero();
+
+		ImportStatus resumed = service.resume(failed.jobId()).orElseThrow();
+		assertThat(resumed.state()).isEqualTo(ImportState.COMPLETED);
+		assertThat(resumed.importedRows()).isEqualTo(2);
+		assertThat(resumed.failedRows()).isEqualTo(1);
+		assertThat(resumed.errors()).singleElement().extracting(RowError::email).isEqualTo("existing@example.com");
+	}
+
+	@Test
+	void forgetsFinishedJobsAfterTheRetention() throws Exception {
+		GetUsersResult nobody = existing();
+		when(firebaseAuth.getUsers(anyList())).thenReturn(nobody);
+		properties.setFinishedJobRetention(Duration.ZERO);
+
+		BulkUserImportService service = service();
+		ImportStatus status = service.start(csv("{\"email\":\"a@example.com\"}\n"), ImportFormat.NDJSON);
+
+		assertThat(status.state()).isEqualTo(ImportState.COMPLETED);
+		assertThat(service.getStatus(status.jobId())).isEmpty();
+	}
+
+	@Test
+	@Timeout(10)
+	void runsTheBatchesOnThreadsOfItsOwn() throws Exception {
+		GetUsersResult nobody = existing();
+		when(firebaseAuth.getUsers(anyList())).thenReturn(nobody);
+		properties.setBatchSize(1);
+		// A task executor that is busy: whatever it is given waits its turn
+		List<Runnable> queued = new ArrayList<>();
+
+		BulkUserImportService service = service(queued::add);
+		ImportStatus started = service.start(csv("""
+				email
+				a@example.com
+				b@example.com
+				c@example.com
+				"""), ImportFormat.CSV);
+		assertThat(queued).hasSize(1);
+		queued.remove(0).run();
+
+		assertThat(queued).isEmpty();
+		ImportStatus finished = service.getStatus(started.jobId()).orElseThrow();
+		assertThat(finished.state()).isEqualTo(ImportState.COMPLETED);
+		assertThat(finished.importedRows()).isEqualTo(3);
+	}
+
+	@Test
+	void returnsBeforeThePasswordsAreHashed() throws Exception {
+		// Seconds per password, the request would be held for all of them if start() hashed
+		properties.setBcryptStrength(16);
+		List<Runnable> queued = new ArrayList<>();
+
+		BulkUserImportService service = service(queued::add);
+		long started = System.nanoTime();
+		ImportStatus status = service.start(csv("""
+				email,password
+				a@example.com,secret
+				b@example.com,secret
+				"""), ImportFormat.CSV);
+
+		assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+		assertThat(status.state()).isEqualTo(ImportState.RUNNING);
+		assertThat(status.totalRows()).isEqualTo(2);
+		assertThat(service.getStatus(status.jobId())).get().extracting(ImportStatus::state).isEqualTo(ImportState.RUNNING);
+		assertThat(queued).hasSize(1);
+	}
+
+	private BulkUserImportService service() {
+		return service(Runnable::run);
+	}
+
+	private BulkUserImportService service(Executor taskExecutor) {
+		return new BulkUserImportService(firebaseAuth, firestore, mock(UserRoleCache.class), new RoleSourceProperties(),
+				properties, new ObjectMapper(), taskExecutor);
+	}
+
+	private static ByteArrayInputStream csv(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static GetUsersResult existing(UserRecord... users) {
+		GetUsersResult result = mock(GetUsersResult.class);
+		when(result.getUsers()).thenReturn(Set.of(users));
+		return result;
+	}
+
+	private static UserRecord user(String uid, String email) {
+		UserRecord user = mock(UserRecord.class);
+		when(user.getUid()).thenReturn(uid);
+		when(user.getEmail()).thenReturn(email);
+		return user;
+	}
+}
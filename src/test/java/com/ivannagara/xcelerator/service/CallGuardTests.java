@@ -0,0 +1,178 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import io.grpc.Status;
+
+class CallGuardTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void opensOnFailuresAndClosesAfterTrialCalls() {
+		CallGuard guard = new CallGuard("firestore", true, settings(), clock::get);
+		AtomicInteger made = new AtomicInteger();
+
+		// Missing documents are answers, not failures
+		guard.call(() -> failed(Status.NOT_FOUND));
+		guard.call(() -> succeeded(made));
+		guard.call(() -> failed(Status.UNAVAILABLE));
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.CLOSED);
+		guard.call(() -> failed(Status.UNAVAILABLE));
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.OPEN);
+
+		// Rejected without reaching the backend
+		assertThat(guard.call(() -> succeeded(made))).failsWithin(Duration.ZERO)
+				.withThrowableOfType(ExecutionException.class)
+				.withCauseInstanceOf(CallRejectedException.class);
+		assertThat(made).hasValue(1);
+
+		// Two trial calls after the open duration, then closed again
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		CompletableFuture<String> firstTrial = new CompletableFuture<>();
+		CompletableFuture<String> secondTrial = new CompletableFuture<>();
+		guard.call(() -> firstTrial);
+		guard.call(() -> secondTrial);
+		assertThat(guard.call(() -> succeeded(made))).isCompletedExceptionally();
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.HALF_OPEN);
+
+		firstTrial.complete("ok");
+		secondTrial.complete("ok");
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.CLOSED);
+		assertThat(guard.getRejectedOpenCount()).isEqualTo(2);
+	}
+
+	@Test
+	void failedTrialCallReopens() {
+		CallGuard guard = new CallGuard("firestore", true, settings(), clock::get);
+		for (int i = 0; i < 4; i++) {
+			guard.call(() -> failed(Status.UNAVAILABLE));
+		}
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+		guard.call(() -> failed(Status.DEADLINE_EXCEEDED));
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.OPEN);
+	}
+
+	@Test
+	void callsFromBeforeHalfOpenDontDecideTheTrial() {
+		CallGuard guard = new CallGuard("firestore", true, settings(), clock::get);
+		CompletableFuture<String> lateSuccess = new CompletableFuture<>();
+		CompletableFuture<String> lateFailure = new CompletableFuture<>();
+		guard.call(() -> lateSuccess);
+		guard.call(() -> lateFailure);
+		for (int i = 0; i < 4; i++) {
+			guard.call(() -> failed(Status.UNAVAILABLE));
+		}
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.OPEN);
+
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		CompletableFuture<String> trial = new CompletableFuture<>();
+		guard.call(() -> trial);
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.HALF_OPEN);
+
+		// Admitted while the breaker was closed, they finish during the trial
+		lateSuccess.complete("ok");
+		lateFailure.completeExceptionally(FirestoreException.forServerRejection(Status.UNAVAILABLE, "injected"));
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.HALF_OPEN);
+
+		trial.complete("ok");
+		guard.call(() -> CompletableFuture.completedFuture("ok"));
+		assertThat(guard.getState()).isEqualTo(CallGuard.State.CLOSED);
+	}
+
+	@Test
+	void limitsCallsInFlightAndTimesThemOut() {
+		ResilienceProperties.Backend settings = settings();
+		settings.setMaxConcurrentCalls(2);
+		settings.setTimeout(Duration.ofMillis(50));
+		CallGuard guard = new CallGuard("firebase-auth", true, settings, clock::get);
+
+		CompletableFuture<String> first = guard.call(CompletableFuture::new);
+		CompletableFuture<String> second = guard.call(CompletableFuture::new);
+		assertThat(guard.getCallsInFlight()).isEqualTo(2);
+		assertThatThrownBy(() -> guard.call(CompletableFuture::new).join())
+				.hasCauseInstanceOf(CallRejectedException.class)
+				.hasMessageContaining("too many calls in flight");
+
+		assertThat(first).failsWithin(Duration.ofSeconds(5))
+				.withThrowableOfType(ExecutionException.class)
+				.withCauseInstanceOf(TimeoutException.class);
+		assertThat(second).failsWithin(Duration.ofSeconds(5));
+		assertThat(guard.getCallsInFlight()).isZero();
+		assertThat(guard.getTimeoutCount()).isEqualTo(2);
+		assertThat(guard.getRejectedFullCount()).isEqualTo(1);
+	}
+
+	@Test
+	void servesTheLastRoleReadWhileFirestoreIsDown() throws Exception {
+		DocumentSnapshot admin = mock(DocumentSnapshot.class);
+		when(admin.exists()).thenReturn(true);
+		when(admin.contains("role")).thenReturn(true);
+		when(admin.getString("role")).thenReturn("ADMIN");
+		DocumentReference document = mock(DocumentReference.class);
+		when(document.get()).thenReturn(ApiFutures.immediateFuture(admin),
+				ApiFutures.immediateFailedFuture(FirestoreException.forServerRejection(Status.UNAVAILABLE, "down")));
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document("user-1")).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+
+		// Without the listener and with the cache off, every lookup reads Firestore
+		RoleCacheProperties properties = new RoleCacheProperties();
+		properties.setEnabled(false);
+		UserRoleCache roleCache = new UserRoleCache(firestore, new UserDocumentReader(firestore),
+				new ProfileCache(new ProfileCacheProperties()), new FirebaseCallGuards(new ResilienceProperties()),
+				new InProcessInvalidationBus(), properties);
+
+		assertThat(roleCache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(roleCache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(roleCache.getStaleServedCount()).isEqualTo(1);
+
+		// Nothing to fall back to once the user's document was written
+		roleCache.invalidate("user-1");
+		assertThatThrownBy(() -> roleCache.getRole("user-1")).isInstanceOf(ExecutionException.class);
+	}
+
+	private static ResilienceProperties.Backend settings() {
+		ResilienceProperties.Backend settings = new ResilienceProperties.Backend(Duration.ofSeconds(5), 10);
+		settings.setWindowSize(10);
+		settings.setMinimumCalls(4);
+		settings.setFailureRateThreshold(0.5);
+		settings.setOpenDuration(Duration.ofSeconds(10));
+		settings.setHalfOpenCalls(2);
+		return settings;
+	}
+
+	private static CompletableFuture<String> succeeded(AtomicInteger made) {
+		made.incrementAndGet();
+		return CompletableFuture.completedFuture("ok");
+	}
+
+	private static CompletableFuture<String> failed(Status status) {
+		return CompletableFuture.failedFuture(FirestoreException.forServerRejection(status, "injected"));
+	}
+}
@@ -0,0 +1,228 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+/**
+ * Several instances on one machine, each with its own role cache and bus, sharing one "Firestore"
+ */
+class InvalidationBusTests {
+
+	private static final byte[] SECRET = "invalidation-bus-tests-secret".getBytes(StandardCharsets.UTF_8);
+
+	private final Map<String, Role> database = new ConcurrentHashMap<>();
+	private final AtomicInteger reads = new AtomicInteger();
+	private final List<InvalidationBus> buses = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		buses.forEach(InvalidationBus::close);
+	}
+
+	@Test
+	void roleChangesReachEveryInstanceOverUdp() throws Exception {
+		List<InetSocketAddress> addresses = List.of(freeAddress(), freeAddress(), freeAddress());
+		List<UserRoleCache> instances = new ArrayList<>();
+		for (InetSocketAddress address : addresses) {
+			// Every instance gets the same peer list, itself included
+			instances.add(instance(join(new UdpInvalidationBus(address, addresses, SECRET, Duration.ofMillis(100)))));
+		}
+
+		database.put("user-1", Role.ADMIN);
+		for (UserRoleCache instance : instances) {
+			assertThat(instance.getRole("user-1")).isEqualTo(Role.ADMIN);
+			assertThat(instance.getRole("user-1")).isEqualTo(Role.ADMIN);
+		}
+		assertThat(reads).hasValue(3);
+
+		// The instance that wrote the role tells the others
+		database.put("user-1", Role.STAFF);
+		instances.get(0).invalidate("user-1");
+
+		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+			for (UserRoleCache instance : instances) {
+				assertThat(instance.getRole("user-1")).isEqualTo(Role.STAFF);
+			}
+		});
+		assertThat(buses.get(0).getPublishedCount()).isEqualTo(1);
+		assertThat(buses.get(1).getReceivedCount()).isEqualTo(1);
+		assertThat(buses.get(2).getReceivedCount()).isEqualTo(1);
+	}
+
+	@Test
+	void dropsEverythingWhenMessagesWereMissed() throws Exception {
+		InetSocketAddress address = freeAddress();
+		UdpInvalidationBus bus = join(new UdpInvalidationBus(address, List.of(address), SECRET, Duration.ofMillis(100)));
+		List<String> invalidated = record(bus);
+
+		try (DatagramChannel peer = DatagramChannel.open()) {
+			send(peer, address, 1, 1, "user-1");
+			send(peer, address, 1, 2, "user-2");
+			// Message 3 got lost
+			send(peer, address, 1, 4, "user-4");
+			// So did 5, only its heartbeat arrives
+			send(peer, address, 2, 5, "");
+			// Not an invalidation message
+			peer.send(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)), address);
+			send(peer, address, 1, 6, "user-6");
+
+			await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(invalidated)
+					.containsExactly("user-1", "user-2", "*", "user-4", "*", "user-6"));
+		}
+		assertThat(bus.getReceivedCount()).isEqualTo(4);
+		assertThat(bus.getMissedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void ignoresDatagramsWithoutAValidMacOrFromOutsideThePeers() throws Exception {
+		InetSocketAddress address = freeAddress();
+		// The only peer is on another host, so the loopback sender below is a stranger
+		InetSocketAddress elsewhere = new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 11 }), 7600);
+		UdpInvalidationBus strict = join(new UdpInvalidationBus(address, List.of(elsewhere), SECRET, Duration.ofMillis(100)));
+		List<String> strictInvalidated = record(strict);
+
+		InetSocketAddress openAddress = freeAddress();
+		UdpInvalidationBus bus = join(new UdpInvalidationBus(openAddress, List.of(openAddress), SECRET, Duration.ofMillis(100)));
+		List<String> invalidated = record(bus);
+
+		try (DatagramChannel stranger = DatagramChannel.open()) {
+			send(stranger, address, 1, 7, "user-1");
+			// Would make it drop everything, if it were believed
+			send(stranger, openAddress, "not the shared secret".getBytes(StandardCharsets.UTF_8), 1, 7, "user-1");
+			send(stranger, openAddress, 1, 1, "user-2");
+
+			await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+				assertThat(invalidated).containsExactly("user-2");
+				assertThat(strict.getRejectedCount()).isEqualTo(1);
+			});
+		}
+		assertThat(strictInvalidated).isEmpty();
+		assertThat(bus.getRejectedCount()).isEqualTo(1);
+		assertThat(bus.getMissedCount()).isZero();
+	}
+
+	@Test
+	void instancesInOneJvmShareAGroup() throws Exception {
+		String group = "invalidation-bus-tests";
+		UserRoleCache first = instance(join(new InProcessInvalidationBus(group)));
+		UserRoleCache second = instance(join(new InProcessInvalidationBus(group)));
+		UserRoleCache alone = instance(join(new InProcessInvalidationBus()));
+
+		database.put("user-1", Role.ADMIN);
+		for (UserRoleCache instance : List.of(first, second, alone)) {
+			assertThat(instance.getRole("user-1")).isEqualTo(Role.ADMIN);
+		}
+
+		database.put("user-1", Role.SUPER_ADMIN);
+		first.invalidate("user-1");
+		assertThat(second.getRole("user-1")).isEqualTo(Role.SUPER_ADMIN);
+		assertThat(alone.getRole("user-1")).isEqualTo(Role.ADMIN);
+	}
+
+	private <B extends InvalidationBus> B join(B bus) {
+		buses.add(bus);
+		return bus;
+	}
+
+	private static List<String> record(InvalidationBus bus) {
+		List<String> invalidated = new CopyOnWriteArrayList<>();
+		bus.subscribe(new InvalidationBus.Listener() {
+			@Override
+			public void invalidate(String uid) {
+				invalidated.add(uid);
+			}
+
+			@Override
+			public void invalidateAll() {
+				invalidated.add("*");
+			}
+		});
+		return invalidated;
+	}
+
+	private UserRoleCache instance(InvalidationBus bus) {
+		DocumentSnapshot user = mock(DocumentSnapshot.class);
+		when(user.exists()).thenReturn(true);
+		when(user.contains("role")).thenReturn(true);
+		when(user.getString("role")).thenAnswer(invocation -> database.get("user-1").name());
+		DocumentReference document = mock(DocumentReference.class);
+		when(document.get()).thenAnswer(invocation -> {
+			reads.incrementAndGet();
+			return ApiFutures.immediateFuture(user);
+		});
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document(anyString())).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+
+		// No snapshot listener, the bus is the only way to hear about other instances' writes
+		RoleCacheProperties properties = new RoleCacheProperties();
+		properties.setListen(false);
+		UserRoleCache roleCache = new UserRoleCache(firestore, new UserDocumentReader(firestore),
+				new ProfileCache(new ProfileCacheProperties()), new FirebaseCallGuards(new ResilienceProperties()),
+				bus, properties);
+		roleCache.start();
+		return roleCache;
+	}
+
+	private static InetSocketAddress freeAddress() throws IOException {
+		try (DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			return (InetSocketAddress) channel.getLocalAddress();
+		}
+	}
+
+	private static void send(DatagramChannel channel, InetSocketAddress to, int type, long sequence, String uid)
+			throws Exception {
+		send(channel, to, SECRET, type, sequence, uid);
+	}
+
+	// marker, type, node id, sequence, uid length, uid, HMAC-SHA256 of the rest
+	private static void send(DatagramChannel channel, InetSocketAddress to, byte[] secret, int type, long sequence,
+			String uid) throws Exception {
+		byte[] uidBytes = uid.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer message = ByteBuffer.allocate(20 + uidBytes.length + 32)
+				.put((byte) 'X')
+				.put((byte) type)
+				.putLong(42)
+				.putLong(sequence)
+				.putShort((short) uidBytes.length)
+				.put(uidBytes);
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+		mac.update(message.array(), 0, message.position());
+		channel.send(message.put(mac.doFinal()).flip(), to);
+	}
+}
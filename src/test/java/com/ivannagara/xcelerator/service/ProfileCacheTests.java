@@ -0,0 +1,124 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.model.UserProfile;
+
+class ProfileCacheTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void servesStaleProfilesWhileReloadingThem() {
+		ProfileCache cache = new ProfileCache(properties(100), clock::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		assertThat(cache.get("user-1", () -> load(loads, "first")).join().email()).isEqualTo("first");
+		assertThat(cache.get("user-1", () -> load(loads, "second")).join().email()).isEqualTo("first");
+		assertThat(loads).hasValue(1);
+
+		// Past the ttl: the cached profile is answered while one reload runs
+		clock.addAndGet(Duration.ofSeconds(31).toNanos());
+		CompletableFuture<UserProfile> reload = new CompletableFuture<>();
+		assertThat(cache.get("user-1", () -> reload).join().email()).isEqualTo("first");
+		assertThat(cache.get("user-1", () -> load(loads, "not asked for")).join().email()).isEqualTo("first");
+		reload.complete(profile("second"));
+		assertThat(cache.get("user-1", () -> load(loads, "not asked for")).join().email()).isEqualTo("second");
+
+		// Past the stale window too: loaded before answering
+		clock.addAndGet(Duration.ofMinutes(10).toNanos());
+		assertThat(cache.get("user-1", () -> load(loads, "third")).join().email()).isEqualTo("third");
+
+		assertThat(loads).hasValue(2);
+		assertThat(cache.getStaleHitCount()).isEqualTo(2);
+		assertThat(cache.getMissCount()).isEqualTo(2);
+		assertThat(cache.getLoadSuccessCount()).isEqualTo(3);
+	}
+
+	@Test
+	void remembersMissingProfilesForTheNegativeTtl() {
+		ProfileCache cache = new ProfileCache(properties(100), clock::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("ghost", () -> missing(loads)).join();
+		assertThat(cache.get("ghost", () -> missing(loads)).join()).isSameAs(UserProfile.EMPTY);
+		assertThat(loads).hasValue(1);
+
+		// Not served stale, a profile may have been created since
+		clock.addAndGet(Duration.ofSeconds(11).toNanos());
+		cache.get("ghost", () -> missing(loads)).join();
+		assertThat(loads).hasValue(2);
+	}
+
+	@Test
+	void writeDuringALoadKeepsItsResultOutOfTheCache() {
+		ProfileCache cache = new ProfileCache(properties(100), clock::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		CompletableFuture<UserProfile> slowRead = new CompletableFuture<>();
+		CompletableFuture<UserProfile> lookup = cache.get("user-1", () -> slowRead);
+		cache.invalidate("user-1");
+		slowRead.complete(profile("before the write"));
+
+		assertThat(lookup.join().email()).isEqualTo("before the write");
+		assertThat(cache.get("user-1", () -> load(loads, "after the write")).join().email()).isEqualTo("after the write");
+
+		cache.invalidate("user-1");
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	void scanOfUsersReadOnceDoesNotEvictFrequentlyReadOnes() {
+		ProfileCache cache = new ProfileCache(properties(100), clock::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 20; i++) {
+				cache.get("hot-" + i, () -> load(loads, "hot"));
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			cache.get("scanned-" + i, () -> load(loads, "scanned"));
+		}
+
+		loads.set(0);
+		for (int i = 0; i < 20; i++) {
+			cache.get("hot-" + i, () -> load(loads, "hot"));
+		}
+		assertThat(loads).hasValue(0);
+		assertThat(cache.size()).isLessThanOrEqualTo(100);
+		assertThat(cache.getEvictionCount()).isGreaterThanOrEqualTo(920);
+	}
+
+	private static ProfileCacheProperties properties(int maxEntries) {
+		ProfileCacheProperties properties = new ProfileCacheProperties();
+		properties.setMaxEntries(maxEntries);
+		properties.setTtl(Duration.ofSeconds(30));
+		properties.setStaleWhileRevalidate(Duration.ofMinutes(5));
+		properties.setNegativeTtl(Duration.ofSeconds(10));
+		return properties;
+	}
+
+	private static CompletableFuture<UserProfile> load(AtomicInteger loads, String email) {
+		loads.incrementAndGet();
+		return CompletableFuture.completedFuture(profile(email));
+	}
+
+	private static CompletableFuture<UserProfile> missing(AtomicInteger loads) {
+		loads.incrementAndGet();
+		return CompletableFuture.completedFuture(UserProfile.EMPTY);
+	}
+
+	private static UserProfile profile(String email) {
+		return UserProfile.from("user-1", Map.of("email", email));
+	}
+}
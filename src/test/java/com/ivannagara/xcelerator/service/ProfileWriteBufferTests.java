@@ -0,0 +1,149 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.ivannagara.xcelerator.config.ProfileWriteBehindProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.model.UserProfile;
+
+import io.grpc.Status;
+
+class ProfileWriteBufferTests {
+
+	private final AtomicLong clock = new AtomicLong();
+	private final Map<String, DocumentReference> documents = new HashMap<>();
+	private final WriteBatch batch = mock(WriteBatch.class);
+	private final Firestore firestore = firestore();
+
+	@Test
+	void writesAnUpdateFirestoreRejectsOnItsOwnSoTheOthersLand() {
+		ProfileWriteBuffer buffer = buffer();
+		when(batch.commit()).thenReturn(failed(Status.INVALID_ARGUMENT));
+		when(document("good").set(anyMap())).thenReturn(written());
+		when(document("bad").set(anyMap())).thenReturn(failed(Status.INVALID_ARGUMENT));
+
+		CompletableFuture<Void> good = buffer.enqueue("good", Map.of("displayName", "Good"));
+		CompletableFuture<Void> bad = buffer.enqueue("bad", Map.of("displayName", "x".repeat(10)));
+		buffer.flush();
+
+		assertThat(good).isCompleted().isNotCompletedExceptionally();
+		assertThat(bad).isCompletedExceptionally();
+		// Not retried, Firestore would reject it again
+		buffer.flush();
+		verify(document("bad"), times(1)).set(anyMap());
+	}
+
+	@Test
+	void retriesFailedUpdatesWithBackoffThenGivesUp() {
+		ProfileWriteBuffer buffer = buffer();
+		when(batch.commit()).thenReturn(failed(Status.UNAVAILABLE));
+		when(document("user-1").set(anyMap())).thenReturn(failed(Status.UNAVAILABLE));
+
+		CompletableFuture<Void> update = buffer.enqueue("user-1", Map.of("displayName", "New"));
+		buffer.flush();
+		// Still within the backoff of the first attempt
+		buffer.flush();
+		verify(document("user-1"), never()).set(anyMap());
+		assertThat(buffer.overlay("user-1", UserProfile.EMPTY).displayName()).isEqualTo("New");
+
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		buffer.flush();
+		verify(document("user-1"), times(1)).set(anyMap());
+
+		// The backoff doubled
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		buffer.flush();
+		verify(document("user-1"), times(1)).set(anyMap());
+		assertThat(update).isNotDone();
+
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		buffer.flush();
+		verify(document("user-1"), times(2)).set(anyMap());
+		assertThat(update).isCompletedExceptionally();
+		assertThat(buffer.overlay("user-1", UserProfile.EMPTY)).isSameAs(UserProfile.EMPTY);
+	}
+
+	@Test
+	void settleWritesThePendingUpdateBeforeADirectWrite() {
+		ProfileWriteBuffer buffer = buffer();
+		when(document("user-1").set(anyMap())).thenReturn(written());
+
+		CompletableFuture<Void> update = buffer.enqueue("user-1", Map.of("displayName", "Buffered"));
+		assertThat(buffer.settle("user-1")).isCompleted();
+
+		assertThat(update).isCompleted().isNotCompletedExceptionally();
+		verify(document("user-1")).set(Map.of("displayName", "Buffered"));
+		// Nothing left for the next flush to write over the direct one
+		buffer.flush();
+		verify(batch, never()).commit();
+	}
+
+	@Test
+	void writesTheNewestProfileInPlaceOfTheDocumentLikeADirectWrite() {
+		ProfileWriteBuffer buffer = buffer();
+		when(batch.commit()).thenReturn(written());
+
+		CompletableFuture<Void> first = buffer.enqueue("user-1", Map.of("displayName", "Old", "team", "blue"));
+		CompletableFuture<Void> second = buffer.enqueue("user-1", Map.of("displayName", "New"));
+		// "team" was left out of the newest profile, so it is gone, as it would be after a direct set()
+		assertThat(buffer.overlay("user-1", UserProfile.from("user-1", Map.of("team", "red"))).attributes()).isEmpty();
+		buffer.flush();
+
+		verify(batch).set(document("user-1"), Map.of("displayName", "New"));
+		assertThat(first).isCompleted().isNotCompletedExceptionally();
+		assertThat(second).isCompleted().isNotCompletedExceptionally();
+	}
+
+	private ProfileWriteBuffer buffer() {
+		ProfileWriteBehindProperties properties = new ProfileWriteBehindProperties();
+		properties.setEnabled(true);
+		properties.setMaxAttempts(3);
+		return new ProfileWriteBuffer(firestore, mock(UserRoleCache.class),
+				new FirebaseCallGuards(new ResilienceProperties()), properties, clock::get);
+	}
+
+	private Firestore firestore() {
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document(any())).thenAnswer(invocation -> document(invocation.getArgument(0)));
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+		when(firestore.batch()).thenReturn(batch);
+		return firestore;
+	}
+
+	private DocumentReference document(String uid) {
+		return documents.computeIfAbsent(uid, ignored -> mock(DocumentReference.class));
+	}
+
+	private static <T> ApiFuture<T> written() {
+		return ApiFutures.immediateFuture(null);
+	}
+
+	private static <T> ApiFuture<T> failed(Status status) {
+		return ApiFutures.immediateFailedFuture(FirestoreException.forServerRejection(status, "injected"));
+	}
+}
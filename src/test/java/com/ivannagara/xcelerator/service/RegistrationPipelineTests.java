@@ -0,0 +1,91 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.ivannagara.xcelerator.config.RegistrationProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RegistrationPipelineTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final DocumentReference document = mock(DocumentReference.class);
+	private RegistrationPipeline pipeline;
+
+	@AfterEach
+	void tearDown() {
+		pipeline.stop();
+	}
+
+	@Test
+	void retriesFailedWritesUntilTheProfileIsCreated() throws Exception {
+		when(document.create(anyMap())).thenReturn(
+				ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")),
+				ApiFutures.immediateFuture(mock(WriteResult.class)));
+		pipeline = pipeline(3);
+
+		pipeline.submit("user-1", Map.of("email", "user@example.com", "role", "STAFF"));
+
+		awaitTrue(() -> profiles("created") == 1);
+		assertThat(registry.get("xcelerator.registration.retries").counter().count()).isEqualTo(1);
+		assertThat(pipeline.getQueueDepth()).isZero();
+		verify(document, times(2)).create(anyMap());
+	}
+
+	@Test
+	void deadLettersProfilesThatKeepFailing() throws Exception {
+		when(document.create(anyMap())).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+		pipeline = pipeline(2);
+
+		pipeline.submit("user-1", Map.of("email", "user@example.com", "role", "STAFF"));
+
+		awaitTrue(() -> profiles("dead_letter") == 1);
+		assertThat(profiles("created")).isZero();
+		verify(document, times(2)).create(anyMap());
+	}
+
+	private RegistrationPipeline pipeline(int maxAttempts) {
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document("user-1")).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+
+		RegistrationProperties properties = new RegistrationProperties();
+		properties.setWorkers(1);
+		properties.setMaxAttempts(maxAttempts);
+		properties.setInitialBackoff(Duration.ofMillis(1));
+
+		RegistrationPipeline created = new RegistrationPipeline(firestore, mock(UserRoleCache.class), properties, registry);
+		created.start();
+		return created;
+	}
+
+	private double profiles(String outcome) {
+		return registry.get("xcelerator.registration.profiles").tag("outcome", outcome).counter().count();
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+}
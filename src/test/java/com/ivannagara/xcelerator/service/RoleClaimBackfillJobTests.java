@@ -0,0 +1,120 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UserRecord;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+
+class RoleClaimBackfillJobTests {
+
+	private final FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+	private final Firestore firestore = mock(Firestore.class);
+	private final CollectionReference users = mock(CollectionReference.class);
+	private final DocumentReference document = mock(DocumentReference.class);
+	private final UserRoleCache userRoleCache = mock(UserRoleCache.class);
+
+	@Test
+	void writesTheClaimAgainWhenTheRoleChangesWhileItIsWritten() throws Exception {
+		// The page still says ADMIN, the user is demoted right after the job re-read the document
+		page(pageDocument("user-1", "ADMIN"));
+		DocumentSnapshot admin = snapshot("ADMIN", 1);
+		DocumentSnapshot demoted = snapshot("STAFF", 2);
+		when(document.get()).thenReturn(
+				ApiFutures.immediateFuture(admin),
+				ApiFutures.immediateFuture(demoted),
+				ApiFutures.immediateFuture(demoted));
+		UserRecord withoutClaim = user(Map.of());
+		UserRecord withAdminClaim = user(Map.of("role", "ADMIN"));
+		GetUsersResult result = mock(GetUsersResult.class);
+		when(result.getUsers()).thenReturn(Set.of(withoutClaim));
+		when(firebaseAuth.getUsers(any())).thenReturn(result);
+		when(firebaseAuth.getUser("user-1")).thenReturn(withoutClaim, withAdminClaim);
+
+		RoleClaimBackfillJob job = new RoleClaimBackfillJob(firebaseAuth, firestore, userRoleCache,
+				new FirebaseCallGuards(new ResilienceProperties()), new RoleSourceProperties());
+		job.start();
+		await().until(() -> job.getStatus().state() == RoleClaimBackfillJob.State.COMPLETED);
+
+		InOrder order = inOrder(firebaseAuth);
+		order.verify(firebaseAuth).setCustomUserClaims("user-1", Map.of("role", "ADMIN"));
+		order.verify(firebaseAuth).setCustomUserClaims("user-1", Map.of("role", "STAFF"));
+		order.verify(firebaseAuth).revokeRefreshTokens("user-1");
+		verify(userRoleCache, times(2)).invalidate("user-1");
+		assertThat(job.getStatus().updated()).isEqualTo(1);
+	}
+
+	private void page(QueryDocumentSnapshot pageDocument) {
+		Query query = mock(Query.class);
+		Query rest = mock(Query.class);
+		when(firestore.collection("users")).thenReturn(users);
+		when(users.document("user-1")).thenReturn(document);
+		when(users.select("role")).thenReturn(query);
+		when(query.orderBy(any(FieldPath.class))).thenReturn(query);
+		when(query.limit(anyInt())).thenReturn(query);
+		QuerySnapshot first = querySnapshot(List.of(pageDocument));
+		QuerySnapshot last = querySnapshot(List.of());
+		when(query.get()).thenReturn(ApiFutures.immediateFuture(first));
+		when(query.startAfter(any(DocumentSnapshot.class))).thenReturn(rest);
+		when(rest.get()).thenReturn(ApiFutures.immediateFuture(last));
+	}
+
+	private static QuerySnapshot querySnapshot(List<QueryDocumentSnapshot> documents) {
+		QuerySnapshot snapshot = mock(QuerySnapshot.class);
+		when(snapshot.getDocuments()).thenReturn(documents);
+		return snapshot;
+	}
+
+	private static QueryDocumentSnapshot pageDocument(String uid, String role) {
+		QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+		when(document.getId()).thenReturn(uid);
+		when(document.exists()).thenReturn(true);
+		when(document.contains("role")).thenReturn(true);
+		when(document.getString("role")).thenReturn(role);
+		return document;
+	}
+
+	private static DocumentSnapshot snapshot(String role, long updatedAt) {
+		DocumentSnapshot document = mock(DocumentSnapshot.class);
+		when(document.getId()).thenReturn("user-1");
+		when(document.exists()).thenReturn(true);
+		when(document.contains("role")).thenReturn(true);
+		when(document.getString("role")).thenReturn(role);
+		when(document.getUpdateTime()).thenReturn(Timestamp.ofTimeSecondsAndNanos(updatedAt, 0));
+		return document;
+	}
+
+	private static UserRecord user(Map<String, Object> claims) {
+		UserRecord user = mock(UserRecord.class);
+		when(user.getUid()).thenReturn("user-1");
+		when(user.getCustomClaims()).thenReturn(claims);
+		return user;
+	}
+}
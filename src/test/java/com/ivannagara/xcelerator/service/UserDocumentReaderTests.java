@@ -0,0 +1,76 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+
+class UserDocumentReaderTests {
+
+	@Test
+	void concurrentLookupsShareOneRead() throws Exception {
+		SettableApiFuture<DocumentSnapshot> first = SettableApiFuture.create();
+		SettableApiFuture<DocumentSnapshot> second = SettableApiFuture.create();
+		DocumentReference document = document(first, second);
+		UserDocumentReader reader = new UserDocumentReader(firestore(document));
+
+		ApiFuture<DocumentSnapshot> roleRead = reader.read("user-1");
+		ApiFuture<DocumentSnapshot> profileRead = reader.read("user-1");
+
+		// Giving up on one lookup leaves the read to the other
+		roleRead.cancel(true);
+		DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+		first.set(snapshot);
+		assertThat(profileRead.get()).isSameAs(snapshot);
+		assertThat(reader.getReadCount()).isEqualTo(1);
+		assertThat(reader.getCoalescedCount()).isEqualTo(1);
+
+		// Finished reads aren't reused
+		reader.read("user-1");
+		verify(document, times(2)).get();
+	}
+
+	@Test
+	void lookupsAfterAWriteStartANewRead() {
+		SettableApiFuture<DocumentSnapshot> beforeWrite = SettableApiFuture.create();
+		SettableApiFuture<DocumentSnapshot> afterWrite = SettableApiFuture.create();
+		DocumentReference document = document(beforeWrite, afterWrite);
+		UserDocumentReader reader = new UserDocumentReader(firestore(document));
+
+		reader.read("user-1");
+		reader.forget("user-1");
+		reader.read("user-1");
+
+		// The old read completing must not drop the new one
+		beforeWrite.set(mock(DocumentSnapshot.class));
+		reader.read("user-1");
+
+		verify(document, times(2)).get();
+		assertThat(reader.getCoalescedCount()).isEqualTo(1);
+	}
+
+	@SafeVarargs
+	private static DocumentReference document(ApiFuture<DocumentSnapshot> read, ApiFuture<DocumentSnapshot>... nextReads) {
+		DocumentReference document = mock(DocumentReference.class);
+		when(document.get()).thenReturn(read, nextReads);
+		return document;
+	}
+
+	private static Firestore firestore(DocumentReference document) {
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document("user-1")).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+		return firestore;
+	}
+}
@@ -0,0 +1,151 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.model.Role;
+
+import io.grpc.Status;
+
+class UserRoleCacheTests {
+
+	private final CollectionReference users = mock(CollectionReference.class);
+	private final List<EventListener<QuerySnapshot>> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicInteger reads = new AtomicInteger();
+	private UserRoleCache cache;
+
+	@AfterEach
+	void tearDown() {
+		cache.stop();
+	}
+
+	@Test
+	void subscribesAgainAfterTheListenerFails() throws Exception {
+		cache = cache();
+		cache.start();
+		cache.startListening();
+		await().atMost(Duration.ofSeconds(5)).until(() -> listeners.size() == 1);
+		listeners.get(0).onEvent(snapshot(), null);
+
+		assertThat(cache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(cache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(reads).hasValue(1);
+
+		// Bypassed until the listener is back, nothing cached is trusted
+		listeners.get(0).onEvent(null, FirestoreException.forServerRejection(Status.UNAVAILABLE, "listener broke"));
+		assertThat(cache.isListening()).isFalse();
+		assertThat(cache.getListenerFailureCount()).isEqualTo(1);
+
+		await().atMost(Duration.ofSeconds(5)).until(() -> listeners.size() == 2);
+		listeners.get(1).onEvent(snapshot(), null);
+		assertThat(cache.isListening()).isTrue();
+		assertThat(cache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(cache.getRole("user-1")).isEqualTo(Role.ADMIN);
+		assertThat(reads).hasValue(2);
+	}
+
+	@Test
+	void keepsRetryingWhileSubscribingFails() {
+		cache = cache();
+		AtomicInteger attempts = new AtomicInteger();
+		doAnswer(invocation -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new IllegalStateException("Firestore not reachable");
+			}
+			listeners.add(invocation.getArgument(0));
+			return mock(ListenerRegistration.class);
+		}).when(users).addSnapshotListener(any());
+
+		cache.startListening();
+
+		await().atMost(Duration.ofSeconds(5)).until(cache::isListening);
+		assertThat(attempts).hasValue(3);
+		assertThat(cache.getListenerFailureCount()).isEqualTo(2);
+	}
+
+	@Test
+	void editsSeenByTheListenerDistrustEarlierRoleClaims() {
+		cache = cache();
+		cache.startListening();
+		await().atMost(Duration.ofSeconds(5)).until(() -> listeners.size() == 1);
+		long issuedAt = System.currentTimeMillis() / 1000;
+
+		listeners.get(0).onEvent(snapshot(
+				change(DocumentChange.Type.ADDED, "new-user"),
+				change(DocumentChange.Type.MODIFIED, "demoted-user"),
+				change(DocumentChange.Type.REMOVED, "deleted-user")), null);
+
+		assertThat(cache.changedSince("new-user", issuedAt)).isFalse();
+		assertThat(cache.changedSince("demoted-user", issuedAt)).isTrue();
+		assertThat(cache.changedSince("deleted-user", issuedAt)).isTrue();
+	}
+
+	private UserRoleCache cache() {
+		DocumentSnapshot user = mock(DocumentSnapshot.class);
+		when(user.exists()).thenReturn(true);
+		when(user.contains("role")).thenReturn(true);
+		when(user.getString("role")).thenReturn("ADMIN");
+		DocumentReference document = mock(DocumentReference.class);
+		when(document.get()).thenAnswer(invocation -> {
+			reads.incrementAndGet();
+			return ApiFutures.immediateFuture(user);
+		});
+		when(users.document(anyString())).thenReturn(document);
+		when(users.addSnapshotListener(any())).thenAnswer(invocation -> {
+			listeners.add(invocation.getArgument(0));
+			return mock(ListenerRegistration.class);
+		});
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+
+		RoleCacheProperties properties = new RoleCacheProperties();
+		properties.setListenRetryBackoff(Duration.ofMillis(10));
+		return new UserRoleCache(firestore, new UserDocumentReader(firestore), new ProfileCache(new ProfileCacheProperties()),
+				new FirebaseCallGuards(new ResilienceProperties()), new InProcessInvalidationBus(), properties);
+	}
+
+	private static QuerySnapshot snapshot(DocumentChange... changes) {
+		QuerySnapshot snapshot = mock(QuerySnapshot.class);
+		when(snapshot.getDocumentChanges()).thenReturn(List.of(changes));
+		return snapshot;
+	}
+
+	private static DocumentChange change(DocumentChange.Type type, String uid) {
+		QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+		when(document.getId()).thenReturn(uid);
+		when(document.exists()).thenReturn(true);
+		when(document.contains("role")).thenReturn(true);
+		when(document.getString("role")).thenReturn("STAFF");
+		DocumentChange change = mock(DocumentChange.class);
+		when(change.getType()).thenReturn(type);
+		when(change.getDocument()).thenReturn(document);
+		return change;
+	}
+}
@@ -0,0 +1,155 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.google.firebase.auth.UserRecord;
+import com.google.firebase.auth.UserRecord.CreateRequest;
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.config.ProfileLookupProperties;
+import com.ivannagara.xcelerator.config.ProfileWriteBehindProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.model.Role;
+import com.ivannagara.xcelerator.model.RoleSource;
+
+import io.grpc.Status;
+import io.micrometer.tracing.Tracer;
+
+/**
+ * Role changes with the role also kept as a custom claim
+ */
+class UserServiceRoleTests {
+
+	private final FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+	private final DocumentReference document = mock(DocumentReference.class);
+	private final Firestore firestore = firestore();
+	private final RegistrationPipeline registrationPipeline = mock(RegistrationPipeline.class);
+
+	@Test
+	void putsTheClaimBackWhenTheFirestoreWriteFails() throws Exception {
+		existingUser(Map.of("role", "ADMIN", "tenant", "t-1"));
+		when(document.update(anyMap())).thenReturn(
+				ApiFutures.immediateFailedFuture(FirestoreException.forServerRejection(Status.UNAVAILABLE, "down")));
+
+		assertThat(userService().updateUserRole("user-1", Role.STAFF, Role.SUPER_ADMIN)).isFalse();
+
+		InOrder order = inOrder(firebaseAuth, document);
+		order.verify(firebaseAuth).setCustomUserClaims("user-1", Map.of("role", "STAFF", "tenant", "t-1"));
+		order.verify(document).update(Map.of("role", "STAFF"));
+		order.verify(firebaseAuth).setCustomUserClaims("user-1", Map.of("role", "ADMIN", "tenant", "t-1"));
+		verify(firebaseAuth, never()).revokeRefreshTokens(anyString());
+	}
+
+	@Test
+	void revokesTheRefreshTokensOfDemotedUsersOnly() throws Exception {
+		existingUser(Map.of("role", "ADMIN"));
+		when(document.update(anyMap())).thenReturn(ApiFutures.immediateFuture(null));
+		UserService userService = userService();
+
+		assertThat(userService.updateUserRole("user-1", Role.SUPER_ADMIN, Role.SUPER_ADMIN)).isTrue();
+		verify(firebaseAuth, never()).revokeRefreshTokens(anyString());
+
+		assertThat(userService.updateUserRole("user-1", Role.STAFF, Role.SUPER_ADMIN)).isTrue();
+		verify(firebaseAuth).revokeRefreshTokens("user-1");
+	}
+
+	@Test
+	void deletesTheNewUserWhenItsClaimCannotBeSet() throws Exception {
+		UserRecord created = mock(UserRecord.class);
+		when(created.getUid()).thenReturn("new-user");
+		when(firebaseAuth.createUser(any(CreateRequest.class))).thenReturn(created);
+		FirebaseAuthException rejected = mock(FirebaseAuthException.class);
+		doThrow(rejected).when(firebaseAuth).setCustomUserClaims(anyString(), anyMap());
+
+		assertThatThrownBy(() -> userService().createUser("new@example.com", "secret-password", Role.ADMIN))
+				.isSameAs(rejected);
+
+		verify(firebaseAuth).deleteUser("new-user");
+		verify(registrationPipeline, never()).submit(anyString(), anyMap());
+	}
+
+	@Test
+	void tokensIssuedBeforeARoleChangeAreAnsweredFromFirestore() throws Exception {
+		DocumentSnapshot stored = mock(DocumentSnapshot.class);
+		when(stored.exists()).thenReturn(true);
+		when(stored.contains("role")).thenReturn(true);
+		when(stored.getString("role")).thenReturn("STAFF");
+		when(document.get()).thenReturn(ApiFutures.immediateFuture(stored));
+		UserRoleCache roleCache = roleCache();
+		RoleSourceProperties properties = new RoleSourceProperties();
+		properties.setSource(RoleSource.CLAIM);
+		RoleResolver resolver = new RoleResolver(roleCache, properties);
+
+		long now = System.currentTimeMillis() / 1000;
+		FirebaseToken oldToken = token(now - 60);
+		assertThat(resolver.resolve(oldToken)).isEqualTo(Role.ADMIN);
+
+		// Demoted: the claim of the old token is stale, a token issued later carries the new claim
+		roleCache.invalidate("user-1");
+		assertThat(resolver.resolve(oldToken)).isEqualTo(Role.STAFF);
+		assertThat(resolver.resolve(token(now + 1))).isEqualTo(Role.ADMIN);
+	}
+
+	private void existingUser(Map<String, Object> claims) throws FirebaseAuthException {
+		UserRecord user = mock(UserRecord.class);
+		when(user.getCustomClaims()).thenReturn(claims);
+		when(firebaseAuth.getUser("user-1")).thenReturn(user);
+	}
+
+	private static FirebaseToken token(long issuedAt) {
+		FirebaseToken token = mock(FirebaseToken.class);
+		when(token.getUid()).thenReturn("user-1");
+		when(token.getClaims()).thenReturn(Map.of("role", "ADMIN", "iat", issuedAt));
+		return token;
+	}
+
+	private UserService userService() {
+		RoleSourceProperties roleSourceProperties = new RoleSourceProperties();
+		roleSourceProperties.setSource(RoleSource.CLAIM);
+		FirebaseCallGuards callGuards = new FirebaseCallGuards(new ResilienceProperties());
+		return new UserService(firebaseAuth, firestore, roleCache(), new UserDocumentReader(firestore),
+				new ProfileCache(new ProfileCacheProperties()), roleSourceProperties,
+				new ProfileWriteBuffer(firestore, null, callGuards, new ProfileWriteBehindProperties()),
+				registrationPipeline, new ProfileLookupProperties(), callGuards, Tracer.NOOP, Runnable::run);
+	}
+
+	private UserRoleCache roleCache() {
+		RoleCacheProperties properties = new RoleCacheProperties();
+		properties.setListen(false);
+		return new UserRoleCache(firestore, new UserDocumentReader(firestore), new ProfileCache(new ProfileCacheProperties()),
+				new FirebaseCallGuards(new ResilienceProperties()), new InProcessInvalidationBus(), properties);
+	}
+
+	private Firestore firestore() {
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document(anyString())).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+		return firestore;
+	}
+}
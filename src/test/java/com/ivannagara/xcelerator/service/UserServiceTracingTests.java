@@ -0,0 +1,119 @@
+package com.ivannagara.xcelerator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.auth.FirebaseAuth;
+import com.ivannagara.xcelerator.config.ProfileCacheProperties;
+import com.ivannagara.xcelerator.config.ProfileLookupProperties;
+import com.ivannagara.xcelerator.config.ProfileWriteBehindProperties;
+import com.ivannagara.xcelerator.config.ResilienceProperties;
+import com.ivannagara.xcelerator.config.RoleCacheProperties;
+import com.ivannagara.xcelerator.config.RoleSourceProperties;
+import com.ivannagara.xcelerator.config.TracingConfig;
+import com.ivannagara.xcelerator.security.AuthTracing;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.contextpropagation.ObservationAwareSpanThreadLocalAccessor;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+class UserServiceTracingTests {
+
+	private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+	private final ExecutorService taskExecutor = Executors.newSingleThreadExecutor();
+	private final ExecutorService transport = Executors.newSingleThreadExecutor();
+	private Tracer tracer;
+
+	@BeforeEach
+	void setUp() {
+		SdkTracerProvider provider = SdkTracerProvider.builder()
+				.addSpanProcessor(SimpleSpanProcessor.create(exporter))
+				.build();
+		tracer = new OtelTracer(provider.get("test"), new OtelCurrentTraceContext(), event -> {
+		});
+		new TracingConfig().spanThreadLocalAccessor(tracer);
+	}
+
+	@AfterEach
+	void tearDown() {
+		ContextRegistry.getInstance().removeThreadLocalAccessor(ObservationAwareSpanThreadLocalAccessor.KEY);
+		taskExecutor.shutdownNow();
+		transport.shutdownNow();
+	}
+
+	@Test
+	void firestoreCallbacksContinueTheCallersTrace() throws Exception {
+		SettableApiFuture<WriteResult> write = SettableApiFuture.create();
+		UserService userService = userService(write);
+
+		Span request = tracer.nextSpan().name("http post").start();
+		CompletableFuture<Span> seenByCallback;
+		try (Tracer.SpanInScope ignored = tracer.withSpan(request)) {
+			seenByCallback = userService.saveUserProfileAsync("user-1", Map.of("role", "ADMIN"))
+					.thenApply(saved -> tracer.currentSpan());
+		}
+		// Completed from a thread that never saw the request, like the SDK's transport
+		transport.execute(() -> write.set(mock(WriteResult.class)));
+
+		Span current = seenByCallback.get(5, TimeUnit.SECONDS);
+		request.end();
+		assertThat(current).isNotNull();
+		assertThat(current.context().spanId()).isEqualTo(request.context().spanId());
+
+		SpanData set = exporter.getFinishedSpanItems().stream()
+				.filter(span -> span.getName().equals("firestore.set"))
+				.findFirst()
+				.orElseThrow();
+		assertThat(set.getTraceId()).isEqualTo(request.context().traceId());
+		assertThat(set.getParentSpanId()).isEqualTo(request.context().spanId());
+		assertThat(set.getAttributes().get(AttributeKey.stringKey(AuthTracing.UID_HASH)))
+				.isEqualTo(AuthTracing.uidHash("user-1"))
+				.doesNotContain("user-1");
+	}
+
+	private UserService userService(SettableApiFuture<WriteResult> write) {
+		DocumentReference document = mock(DocumentReference.class);
+		when(document.set(Map.of("role", "ADMIN"))).thenReturn(write);
+		CollectionReference users = mock(CollectionReference.class);
+		when(users.document(anyString())).thenReturn(document);
+		Firestore firestore = mock(Firestore.class);
+		when(firestore.collection("users")).thenReturn(users);
+
+		RoleCacheProperties roleCacheProperties = new RoleCacheProperties();
+		roleCacheProperties.setListen(false);
+		UserDocumentReader userDocumentReader = new UserDocumentReader(firestore);
+		ProfileCache profileCache = new ProfileCache(new ProfileCacheProperties());
+		FirebaseCallGuards callGuards = new FirebaseCallGuards(new ResilienceProperties());
+		return new UserService(mock(FirebaseAuth.class), firestore,
+				new UserRoleCache(firestore, userDocumentReader, profileCache, callGuards, new InProcessInvalidationBus(),
+						roleCacheProperties),
+				userDocumentReader, profileCache,
+				new RoleSourceProperties(), new ProfileWriteBuffer(firestore, null, callGuards, new ProfileWriteBehindProperties()),
+				mock(RegistrationPipeline.class), new ProfileLookupProperties(), callGuards, tracer, taskExecutor);
+	}
+}